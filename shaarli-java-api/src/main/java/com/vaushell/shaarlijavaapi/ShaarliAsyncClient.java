@@ -0,0 +1,635 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous Shaarli client. Each operation runs on a bounded pool of threads and returns a Future. A callback could be
+ * given to chain operations without waiting for the result.
+ *
+ * The synchronous client logs errors and returns null or false: here, these results are failures (the Future throws an
+ * ExecutionException and Callback.failed() is called with an IOException). Searches and counts can't tell an error
+ * from an empty result: they return what the synchronous client returns.
+ *
+ * Iterators and parallel scans are not wrapped: they already fetch pages on their own threads (see
+ * ShaarliSettings.setReadAhead() and ShaarliSettings.setParallelism()). Use getClient() for them.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliAsyncClient
+    implements AutoCloseable
+{
+    // PUBLIC
+    /**
+     * Construct the asynchronous client.
+     *
+     * @param client Shaarli client (must be thread-safe, see ShaarliClient constructors)
+     * @param threads Maximum number of concurrent requests (>=1)
+     */
+    public ShaarliAsyncClient( final ShaarliClient client ,
+                               final int threads )
+    {
+        if ( client == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "threads must be greater or equals to 1" );
+        }
+
+        this.client = client;
+        this.executor = new ThreadPoolExecutor( threads ,
+                                                threads ,
+                                                0L ,
+                                                TimeUnit.MILLISECONDS ,
+                                                new LinkedBlockingQueue<Runnable>() ,
+                                                new ShaarliThreadFactory( "shaarli-async" ) );
+    }
+
+    /**
+     * Construct the asynchronous client. Concurrent requests are limited to the connections count by host.
+     *
+     * @param client Shaarli client (must be thread-safe, see ShaarliClient constructors)
+     */
+    public ShaarliAsyncClient( final ShaarliClient client )
+    {
+        this( client ,
+              client.getSettings().getMaxConnectionsPerRoute() );
+    }
+
+    /**
+     * Return the synchronous Shaarli client.
+     *
+     * @return the client
+     */
+    public ShaarliClient getClient()
+    {
+        return client;
+    }
+
+    /**
+     * Login.
+     *
+     * @param login Login (must not be empty)
+     * @param password Password (must not be empty)
+     * @param callback Called when done (could be null)
+     * @return true (fails if not logged)
+     */
+    public Future<Boolean> login( final String login ,
+                                  final String password ,
+                                  final Callback<Boolean> callback )
+    {
+        return submit( new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+                throws Exception
+            {
+                if ( !client.login( login ,
+                                    password ) )
+                {
+                    throw new IOException( "Cannot login" );
+                }
+
+                return true;
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Create a link.
+     *
+     * @param url Link's URL
+     * @param title Link's title
+     * @param description Link's description
+     * @param tags tags (set, no duplicate please)
+     * @param restricted Is the link private ?
+     * @param callback Called when done (could be null)
+     * @return generated id (fails if the link can't be posted)
+     */
+    public Future<String> createLink( final String url ,
+                                      final String title ,
+                                      final String description ,
+                                      final Set<String> tags ,
+                                      final boolean restricted ,
+                                      final Callback<String> callback )
+    {
+        return submit( new Callable<String>()
+        {
+            @Override
+            public String call()
+                throws Exception
+            {
+                return check( client.createLink( url ,
+                                                 title ,
+                                                 description ,
+                                                 tags ,
+                                                 restricted ) ,
+                              "Cannot post link" );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Create or modify a link (to modify, don't forgot the ID !).
+     *
+     * @param ID Link's ID (not the permalink id. Don't be confuse!)
+     * @param url Link's URL
+     * @param title Link's title
+     * @param description Link's description
+     * @param tags Links tags (set, no duplicate please)
+     * @param restricted Is the link private ?
+     * @param callback Called when done (could be null)
+     * @return id Link's ID (fails if the link can't be posted)
+     */
+    public Future<String> createOrUpdateLink( final DateTime ID ,
+                                              final String url ,
+                                              final String title ,
+                                              final String description ,
+                                              final Set<String> tags ,
+                                              final boolean restricted ,
+                                              final Callback<String> callback )
+    {
+        return submit( new Callable<String>()
+        {
+            @Override
+            public String call()
+                throws Exception
+            {
+                return check( client.createOrUpdateLink( ID ,
+                                                         url ,
+                                                         title ,
+                                                         description ,
+                                                         tags ,
+                                                         restricted ) ,
+                              "Cannot post link" );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Create or modify a link (to modify, don't forgot the ID !).
+     *
+     * @param ID Link's ID. You can enforce one or let it be null (not the permalink id. Don't be confuse!)
+     * @param url Link's URL
+     * @param title Link's title
+     * @param description Link's description
+     * @param tags Links tags (set, no duplicate please)
+     * @param restricted Is the link private ?
+     * @param callback Called when done (could be null)
+     * @return id Link's ID (fails if the link can't be posted)
+     */
+    public Future<String> createOrUpdateLink( final String ID ,
+                                              final String url ,
+                                              final String title ,
+                                              final String description ,
+                                              final Set<String> tags ,
+                                              final boolean restricted ,
+                                              final Callback<String> callback )
+    {
+        return submit( new Callable<String>()
+        {
+            @Override
+            public String call()
+                throws Exception
+            {
+                return check( client.createOrUpdateLink( ID ,
+                                                         url ,
+                                                         title ,
+                                                         description ,
+                                                         tags ,
+                                                         restricted ) ,
+                              "Cannot post link" );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Create (or modify) many links. The batch runs on one thread of this client, its requests are sent concurrently by
+     * the synchronous client.
+     *
+     * @param links Links to create (a link with an ID is modified)
+     * @param callback Called when done (could be null)
+     * @return the result of each creation (a failed link doesn't fail the batch, see ShaarliBatchReport)
+     */
+    public Future<ShaarliBatchReport> createLinks( final Collection<ShaarliLink> links ,
+                                                   final Callback<ShaarliBatchReport> callback )
+    {
+        return submit( new Callable<ShaarliBatchReport>()
+        {
+            @Override
+            public ShaarliBatchReport call()
+                throws Exception
+            {
+                return client.createLinks( links );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Import links with Shaarli's import, in one request. The iterator is read by the thread of the operation.
+     *
+     * @param links Links to import
+     * @param overwrite Overwrite existing links with the same ID
+     * @param restricted Import all links as private
+     * @param callback Called when done (could be null)
+     * @return Number of imported links reported by Shaarli (fails if the import failed)
+     */
+    public Future<Integer> importLinks( final Iterator<ShaarliLink> links ,
+                                        final boolean overwrite ,
+                                        final boolean restricted ,
+                                        final Callback<Integer> callback )
+    {
+        return submit( new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+                throws Exception
+            {
+                final int count = client.importLinks( links ,
+                                                      overwrite ,
+                                                      restricted );
+                if ( count < 0 )
+                {
+                    throw new IOException( "Cannot import links" );
+                }
+
+                return count;
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Delete a link.
+     *
+     * @param ID Link's id (not the permalink id. Don't be confuse!)
+     * @param callback Called when done (could be null)
+     * @return true (fails if the link can't be deleted)
+     */
+    public Future<Boolean> delete( final DateTime ID ,
+                                   final Callback<Boolean> callback )
+    {
+        return submit( new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+                throws Exception
+            {
+                if ( !client.delete( ID ) )
+                {
+                    throw new IOException( "Cannot delete link " + ID );
+                }
+
+                return true;
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Delete a link.
+     *
+     * @param ID Link's id (not the permalink id. Don't be confuse!)
+     * @param callback Called when done (could be null)
+     * @return true (fails if the link can't be deleted)
+     */
+    public Future<Boolean> delete( final String ID ,
+                                   final Callback<Boolean> callback )
+    {
+        return submit( new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+                throws Exception
+            {
+                if ( !client.delete( ID ) )
+                {
+                    throw new IOException( "Cannot delete link " + ID );
+                }
+
+                return true;
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Delete all links.
+     *
+     * @param listener Follow the deletions (could be null, called from the deletion threads)
+     * @param callback Called when done (could be null)
+     * @return Number of deleted links
+     */
+    public Future<Integer> deleteAll( final ShaarliProgressListener listener ,
+                                      final Callback<Integer> callback )
+    {
+        return submit( new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+                throws Exception
+            {
+                return client.deleteAll( listener );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Get all used tags.
+     *
+     * @param callback Called when done (could be null)
+     * @return key/value with tag name and tag count (fails if the tags can't be read)
+     */
+    public Future<Map<String , Integer>> getTags( final Callback<Map<String , Integer>> callback )
+    {
+        return submit( new Callable<Map<String , Integer>>()
+        {
+            @Override
+            public Map<String , Integer> call()
+                throws Exception
+            {
+                return check( client.getTags() ,
+                              "Cannot retrieve tags" );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Get all page's links. Warning: ID appears only when logged.
+     *
+     * @param page Page number (>=1)
+     * @param callback Called when done (could be null)
+     * @return List of links
+     */
+    public Future<List<ShaarliLink>> searchAll( final int page ,
+                                                final Callback<List<ShaarliLink>> callback )
+    {
+        return submit( new Callable<List<ShaarliLink>>()
+        {
+            @Override
+            public List<ShaarliLink> call()
+                throws Exception
+            {
+                return client.searchAll( page );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Get all page's links, filter by a term. Warning: ID appears only when logged.
+     *
+     * @param page Page number (>=1)
+     * @param term Term (must not be null)
+     * @param callback Called when done (could be null)
+     * @return List of links
+     */
+    public Future<List<ShaarliLink>> searchTerm( final int page ,
+                                                 final String term ,
+                                                 final Callback<List<ShaarliLink>> callback )
+    {
+        return submit( new Callable<List<ShaarliLink>>()
+        {
+            @Override
+            public List<ShaarliLink> call()
+                throws Exception
+            {
+                return client.searchTerm( page ,
+                                          term );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Get all page's links, filter by tags. Warning: ID appears only when logged.
+     *
+     * @param page Page number (>=1)
+     * @param callback Called when done (could be null)
+     * @param tags Tags array
+     * @return List of links
+     */
+    public Future<List<ShaarliLink>> searchTags( final int page ,
+                                                 final Callback<List<ShaarliLink>> callback ,
+                                                 final String... tags )
+    {
+        return submit( new Callable<List<ShaarliLink>>()
+        {
+            @Override
+            public List<ShaarliLink> call()
+                throws Exception
+            {
+                return client.searchTags( page ,
+                                          tags );
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Set the number of links by page.
+     *
+     * @param count Number of links
+     * @param callback Called when done (could be null)
+     * @return null (fails if the setting can't be sent)
+     */
+    public Future<Void> setLinksByPage( final int count ,
+                                        final Callback<Void> callback )
+    {
+        return submit( new Callable<Void>()
+        {
+            @Override
+            public Void call()
+                throws Exception
+            {
+                client.setLinksByPage( count );
+
+                return null;
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Return the number of links.
+     *
+     * @param callback Called when done (could be null)
+     * @return Links count
+     */
+    public Future<Integer> getLinksCount( final Callback<Integer> callback )
+    {
+        return submit( new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+                throws Exception
+            {
+                return client.getLinksCount();
+            }
+        } ,
+                       callback );
+    }
+
+    /**
+     * Stop the threads once pending operations are done. It doesn't close the Shaarli client.
+     */
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * Called when an asynchronous operation is done, in the thread which executed the operation.
+     *
+     * @param <T> Result type
+     */
+    public interface Callback<T>
+    {
+        /**
+         * The operation succeeds.
+         *
+         * @param result The result (same as the synchronous client)
+         */
+        void completed( T result );
+
+        /**
+         * The operation throws an exception.
+         *
+         * @param ex The exception
+         */
+        void failed( Exception ex );
+    }
+    // PRIVATE
+    private static final Logger LOGGER = LoggerFactory.getLogger( ShaarliAsyncClient.class );
+    private final ShaarliClient client;
+    private final ExecutorService executor;
+
+    /**
+     * Turn the error result of the synchronous client into a failure.
+     */
+    private static <T> T check( final T result ,
+                                final String message )
+        throws IOException
+    {
+        if ( result == null )
+        {
+            throw new IOException( message );
+        }
+
+        return result;
+    }
+
+    private <T> Future<T> submit( final Callable<T> callable ,
+                                  final Callback<T> callback )
+    {
+        final FutureTask<T> task = new FutureTask<T>( callable )
+        {
+            @Override
+            protected void done()
+            {
+                if ( callback == null || isCancelled() )
+                {
+                    return;
+                }
+
+                final T result;
+                try
+                {
+                    result = get();
+                }
+                catch( final ExecutionException ex )
+                {
+                    final Throwable cause = ex.getCause();
+                    if ( cause instanceof Exception )
+                    {
+                        failed( (Exception) cause );
+                    }
+                    else
+                    {
+                        failed( ex );
+                    }
+
+                    return;
+                }
+                catch( final InterruptedException ex )
+                {
+                    failed( ex );
+
+                    return;
+                }
+
+                try
+                {
+                    callback.completed( result );
+                }
+                catch( final RuntimeException ex )
+                {
+                    LOGGER.error( "Callback error" ,
+                                  ex );
+                }
+            }
+
+            private void failed( final Exception cause )
+            {
+                try
+                {
+                    callback.failed( cause );
+                }
+                catch( final RuntimeException ex )
+                {
+                    LOGGER.error( "Callback error" ,
+                                  ex );
+                }
+            }
+        };
+
+        executor.execute( task );
+
+        return task;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a batch operation. Items are in the same order as the submitted links.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliBatchReport
+{
+    // PUBLIC
+    /**
+     * Return the number of items.
+     *
+     * @return the items count
+     */
+    public int size()
+    {
+        return links.length;
+    }
+
+    /**
+     * Return the submitted link.
+     *
+     * @param index Item index
+     * @return the link
+     */
+    public ShaarliLink getLink( final int index )
+    {
+        return links[index];
+    }
+
+    /**
+     * Return the ID of the link.
+     *
+     * @param index Item index
+     * @return the ID, or null if the operation failed
+     */
+    public String getID( final int index )
+    {
+        return IDs[index];
+    }
+
+    /**
+     * Is the operation successful ?
+     *
+     * @param index Item index
+     * @return true if the operation succeeds
+     */
+    public boolean isSuccess( final int index )
+    {
+        return IDs[index] != null;
+    }
+
+    /**
+     * Return the number of successful operations.
+     *
+     * @return the successes count
+     */
+    public int getSuccessCount()
+    {
+        int count = 0;
+        for ( final String ID : IDs )
+        {
+            if ( ID != null )
+            {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Return the links whose operation failed.
+     *
+     * @return the failed links
+     */
+    public List<ShaarliLink> getFailures()
+    {
+        final List<ShaarliLink> failures = new ArrayList<>();
+        for ( int i = 0 ; i < links.length ; ++i )
+        {
+            if ( IDs[i] == null )
+            {
+                failures.add( links[i] );
+            }
+        }
+
+        return failures;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShaarliBatchReport{" + "size=" + size() + ", successes=" + getSuccessCount() + '}';
+    }
+
+    // DEFAULT
+    ShaarliBatchReport( final int size )
+    {
+        this.links = new ShaarliLink[ size ];
+        this.IDs = new String[ size ];
+    }
+
+    void set( final int index ,
+              final ShaarliLink link ,
+              final String ID )
+    {
+        links[index] = link;
+        IDs[index] = ID;
+    }
+
+    // PRIVATE
+    private final ShaarliLink[] links;
+    private final String[] IDs;
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Binary encoding shared by the link codec, the link store and the link table:
+ * <ul>
+ * <li>link IDs (yyyyMMdd_HHmmss) packed in a long (yyyyMMddHHmmss) ;</li>
+ * <li>varints: 7 bits by byte, low bits first, the high bit set when more bytes follow ;</li>
+ * <li>strings: length+1 as varint (0 for null), then UTF-8 bytes.</li>
+ * </ul>
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliBinary
+{
+    // DEFAULT
+    static final Charset UTF8 = Charset.forName( "UTF-8" );
+    static final int MAX_VARINT_SIZE = 10;
+
+    /**
+     * Pack a link ID (yyyyMMdd_HHmmss) in a long (yyyyMMddHHmmss).
+     *
+     * @param ID the link ID
+     * @return the packed ID
+     */
+    static long packID( final String ID )
+    {
+        if ( ID == null || ID.length() != 15 || ID.charAt( 8 ) != '_' )
+        {
+            throw new IllegalArgumentException( "ID must be formatted as yyyyMMdd_HHmmss" );
+        }
+
+        long packed = 0L;
+        for ( int i = 0 ; i < ID.length() ; ++i )
+        {
+            if ( i == 8 )
+            {
+                continue;
+            }
+
+            final char c = ID.charAt( i );
+            if ( c < '0' || c > '9' )
+            {
+                throw new IllegalArgumentException( "ID must be formatted as yyyyMMdd_HHmmss" );
+            }
+
+            packed = packed * 10L + ( c - '0' );
+        }
+
+        return packed;
+    }
+
+    /**
+     * Unpack a link ID.
+     *
+     * @param packed the packed ID (yyyyMMddHHmmss)
+     * @return the link ID (yyyyMMdd_HHmmss)
+     */
+    static String unpackID( final long packed )
+    {
+        final String digits = String.format( "%014d" ,
+                                             packed );
+
+        return digits.substring( 0 ,
+                                 8 ) + '_' + digits.substring( 8 );
+    }
+
+    /**
+     * Write a varint. The buffer must have MAX_VARINT_SIZE bytes remaining.
+     *
+     * @param buffer the buffer
+     * @param value the value
+     */
+    static void putVarint( final ByteBuffer buffer ,
+                           final long value )
+    {
+        long v = value;
+        while ( ( v & ~0x7FL ) != 0L )
+        {
+            buffer.put( (byte) ( ( v & 0x7F ) | 0x80 ) );
+            v >>>= 7;
+        }
+        buffer.put( (byte) v );
+    }
+
+    /**
+     * Read a varint.
+     *
+     * @param buffer the buffer
+     * @return the value
+     * @throws IOException if the varint is truncated or malformed
+     */
+    static long getVarint( final ByteBuffer buffer )
+        throws IOException
+    {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        do
+        {
+            if ( shift > 63 )
+            {
+                throw new IOException( "Malformed varint" );
+            }
+
+            if ( !buffer.hasRemaining() )
+            {
+                throw new EOFException( "Truncated varint" );
+            }
+
+            b = buffer.get();
+            value |= (long) ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        while ( ( b & 0x80 ) != 0 );
+
+        return value;
+    }
+
+    /**
+     * Write the length of a string. The UTF-8 bytes follow.
+     *
+     * @param buffer the buffer (MAX_VARINT_SIZE bytes remaining)
+     * @param bytes the UTF-8 bytes (could be null)
+     */
+    static void putStringLength( final ByteBuffer buffer ,
+                                 final byte[] bytes )
+    {
+        putVarint( buffer ,
+                   bytes == null ? 0L : bytes.length + 1L );
+    }
+
+    /**
+     * Read the length of a string.
+     *
+     * @param buffer the buffer
+     * @return the length of the UTF-8 bytes, or -1 for null
+     * @throws IOException if the length is truncated, malformed or too long
+     */
+    static int getStringLength( final ByteBuffer buffer )
+        throws IOException
+    {
+        final long length = getVarint( buffer ) - 1L;
+        if ( length > Integer.MAX_VALUE )
+        {
+            throw new IOException( "String too long: " + length );
+        }
+
+        return (int) length;
+    }
+
+    /**
+     * Write a string. The buffer must have MAX_VARINT_SIZE bytes remaining, plus the UTF-8 bytes.
+     *
+     * @param buffer the buffer
+     * @param bytes the UTF-8 bytes (could be null)
+     */
+    static void putString( final ByteBuffer buffer ,
+                           final byte[] bytes )
+    {
+        putStringLength( buffer ,
+                         bytes );
+        if ( bytes != null )
+        {
+            buffer.put( bytes );
+        }
+    }
+
+    /**
+     * Read a string.
+     *
+     * @param buffer the buffer
+     * @return the string (could be null)
+     * @throws IOException if the string is truncated or malformed
+     */
+    static String getString( final ByteBuffer buffer )
+        throws IOException
+    {
+        final int length = getStringLength( buffer );
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        if ( length > buffer.remaining() )
+        {
+            throw new EOFException( "Truncated string" );
+        }
+
+        final String str;
+        if ( buffer.hasArray() )
+        {
+            str = new String( buffer.array() ,
+                              buffer.arrayOffset() + buffer.position() ,
+                              length ,
+                              UTF8 );
+            buffer.position( buffer.position() + length );
+        }
+        else
+        {
+            final byte[] bytes = new byte[ length ];
+            buffer.get( bytes );
+
+            str = new String( bytes ,
+                              UTF8 );
+        }
+
+        return str;
+    }
+
+    // PRIVATE
+    private ShaarliBinary()
+    {
+        // Nothing
+    }
+}
@@ -0,0 +1,758 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative ints. Values are grouped by their 16 high bits: a group is a sorted array of the low
+ * bits when it is sparse (up to 4096 values), or a 65536 bits array when it is dense.
+ *
+ * Not thread-safe.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliBitmap
+{
+    // DEFAULT
+    ShaarliBitmap()
+    {
+        this.keys = new char[ 4 ];
+        this.containers = new Container[ 4 ];
+    }
+
+    void add( final int value )
+    {
+        if ( value < 0 )
+        {
+            throw new IllegalArgumentException( "value must be positive" );
+        }
+
+        final char key = (char) ( value >>> 16 );
+
+        int pos = find( key );
+        if ( pos < 0 )
+        {
+            pos = -pos - 1;
+            insert( pos ,
+                    key ,
+                    new ArrayContainer() );
+        }
+
+        containers[pos] = containers[pos].add( (char) value );
+    }
+
+    void remove( final int value )
+    {
+        if ( value < 0 )
+        {
+            return;
+        }
+
+        final int pos = find( (char) ( value >>> 16 ) );
+        if ( pos < 0 )
+        {
+            return;
+        }
+
+        final Container container = containers[pos].remove( (char) value );
+        if ( container.cardinality() <= 0 )
+        {
+            delete( pos );
+        }
+        else
+        {
+            containers[pos] = container;
+        }
+    }
+
+    boolean contains( final int value )
+    {
+        if ( value < 0 )
+        {
+            return false;
+        }
+
+        final int pos = find( (char) ( value >>> 16 ) );
+
+        return pos >= 0 && containers[pos].contains( (char) value );
+    }
+
+    int cardinality()
+    {
+        int cardinality = 0;
+        for ( int i = 0 ; i < size ; ++i )
+        {
+            cardinality += containers[i].cardinality();
+        }
+
+        return cardinality;
+    }
+
+    boolean isEmpty()
+    {
+        return size <= 0;
+    }
+
+    /**
+     * Return the values of both bitmaps.
+     */
+    static ShaarliBitmap and( final ShaarliBitmap a ,
+                              final ShaarliBitmap b )
+    {
+        final ShaarliBitmap result = new ShaarliBitmap();
+
+        int i = 0;
+        int j = 0;
+        while ( i < a.size && j < b.size )
+        {
+            if ( a.keys[i] < b.keys[j] )
+            {
+                ++i;
+            }
+            else if ( a.keys[i] > b.keys[j] )
+            {
+                ++j;
+            }
+            else
+            {
+                final Container container = a.containers[i].and( b.containers[j] );
+                if ( container.cardinality() > 0 )
+                {
+                    result.append( a.keys[i] ,
+                                   container );
+                }
+                ++i;
+                ++j;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Return the number of values of both bitmaps, without building the intersection.
+     */
+    static int andCardinality( final ShaarliBitmap a ,
+                               final ShaarliBitmap b )
+    {
+        int cardinality = 0;
+
+        int i = 0;
+        int j = 0;
+        while ( i < a.size && j < b.size )
+        {
+            if ( a.keys[i] < b.keys[j] )
+            {
+                ++i;
+            }
+            else if ( a.keys[i] > b.keys[j] )
+            {
+                ++j;
+            }
+            else
+            {
+                cardinality += a.containers[i].andCardinality( b.containers[j] );
+                ++i;
+                ++j;
+            }
+        }
+
+        return cardinality;
+    }
+
+    /**
+     * Return the values of any bitmap.
+     */
+    static ShaarliBitmap or( final ShaarliBitmap a ,
+                             final ShaarliBitmap b )
+    {
+        final ShaarliBitmap result = new ShaarliBitmap();
+
+        int i = 0;
+        int j = 0;
+        while ( i < a.size || j < b.size )
+        {
+            if ( j >= b.size || ( i < a.size && a.keys[i] < b.keys[j] ) )
+            {
+                result.append( a.keys[i] ,
+                               a.containers[i].copy() );
+                ++i;
+            }
+            else if ( i >= a.size || a.keys[i] > b.keys[j] )
+            {
+                result.append( b.keys[j] ,
+                               b.containers[j].copy() );
+                ++j;
+            }
+            else
+            {
+                result.append( a.keys[i] ,
+                               a.containers[i].or( b.containers[j] ) );
+                ++i;
+                ++j;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Return the values of the first bitmap which are not in the second.
+     */
+    static ShaarliBitmap andNot( final ShaarliBitmap a ,
+                                 final ShaarliBitmap b )
+    {
+        final ShaarliBitmap result = new ShaarliBitmap();
+
+        int j = 0;
+        for ( int i = 0 ; i < a.size ; ++i )
+        {
+            while ( j < b.size && b.keys[j] < a.keys[i] )
+            {
+                ++j;
+            }
+
+            final Container container;
+            if ( j < b.size && b.keys[j] == a.keys[i] )
+            {
+                container = a.containers[i].andNot( b.containers[j] );
+            }
+            else
+            {
+                container = a.containers[i].copy();
+            }
+
+            if ( container.cardinality() > 0 )
+            {
+                result.append( a.keys[i] ,
+                               container );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Return values in descending order. Whole groups are skipped until the offset is reached.
+     *
+     * @param offset Number of greatest values to skip
+     * @param max Maximum number of values
+     * @return the values
+     */
+    int[] reverseRange( final int offset ,
+                        final int max )
+    {
+        final int[] result = new int[ Math.max( 0 ,
+                                                Math.min( max ,
+                                                          cardinality() - offset ) ) ];
+
+        int skip = offset;
+        int count = 0;
+        for ( int i = size - 1 ; i >= 0 && count < result.length ; --i )
+        {
+            final Container container = containers[i];
+            final int cardinality = container.cardinality();
+            if ( skip >= cardinality )
+            {
+                skip -= cardinality;
+                continue;
+            }
+
+            final char[] values = container.toArray();
+            final int high = keys[i] << 16;
+            for ( int k = values.length - 1 - skip ; k >= 0 && count < result.length ; --k )
+            {
+                result[count++] = high | values[k];
+            }
+            skip = 0;
+        }
+
+        return result;
+    }
+
+    /**
+     * Return values in ascending order.
+     */
+    int[] toArray()
+    {
+        final int[] result = new int[ cardinality() ];
+
+        int count = 0;
+        for ( int i = 0 ; i < size ; ++i )
+        {
+            final int high = keys[i] << 16;
+            for ( final char low : containers[i].toArray() )
+            {
+                result[count++] = high | low;
+            }
+        }
+
+        return result;
+    }
+
+    // PRIVATE
+    private static final int ARRAY_MAX = 4096;
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    private int find( final char key )
+    {
+        // Appends are the common case
+        if ( size > 0 && keys[size - 1] == key )
+        {
+            return size - 1;
+        }
+
+        return Arrays.binarySearch( keys ,
+                                    0 ,
+                                    size ,
+                                    key );
+    }
+
+    private void append( final char key ,
+                         final Container container )
+    {
+        insert( size ,
+                key ,
+                container );
+    }
+
+    private void insert( final int pos ,
+                         final char key ,
+                         final Container container )
+    {
+        if ( size >= keys.length )
+        {
+            keys = Arrays.copyOf( keys ,
+                                  size * 2 );
+            containers = Arrays.copyOf( containers ,
+                                        size * 2 );
+        }
+
+        System.arraycopy( keys ,
+                          pos ,
+                          keys ,
+                          pos + 1 ,
+                          size - pos );
+        System.arraycopy( containers ,
+                          pos ,
+                          containers ,
+                          pos + 1 ,
+                          size - pos );
+        keys[pos] = key;
+        containers[pos] = container;
+        ++size;
+    }
+
+    private void delete( final int pos )
+    {
+        System.arraycopy( keys ,
+                          pos + 1 ,
+                          keys ,
+                          pos ,
+                          size - pos - 1 );
+        System.arraycopy( containers ,
+                          pos + 1 ,
+                          containers ,
+                          pos ,
+                          size - pos - 1 );
+        --size;
+        containers[size] = null;
+    }
+
+    /**
+     * Values sharing the same 16 high bits. Updates return the container to use (it could change of kind).
+     */
+    private abstract static class Container
+    {
+        // DEFAULT
+        abstract Container add( char value );
+
+        abstract Container remove( char value );
+
+        abstract boolean contains( char value );
+
+        abstract int cardinality();
+
+        abstract char[] toArray();
+
+        abstract Container copy();
+
+        Container and( final Container other )
+        {
+            final ArrayContainer sparse;
+            final Container filter;
+            if ( this instanceof ArrayContainer )
+            {
+                sparse = (ArrayContainer) this;
+                filter = other;
+            }
+            else if ( other instanceof ArrayContainer )
+            {
+                sparse = (ArrayContainer) other;
+                filter = this;
+            }
+            else
+            {
+                return ( (BitmapContainer) this ).andBitmap( (BitmapContainer) other );
+            }
+
+            final ArrayContainer result = new ArrayContainer();
+            for ( int i = 0 ; i < sparse.size ; ++i )
+            {
+                if ( filter.contains( sparse.values[i] ) )
+                {
+                    result.append( sparse.values[i] );
+                }
+            }
+
+            return result;
+        }
+
+        int andCardinality( final Container other )
+        {
+            if ( this instanceof BitmapContainer && other instanceof BitmapContainer )
+            {
+                final long[] w1 = ( (BitmapContainer) this ).words;
+                final long[] w2 = ( (BitmapContainer) other ).words;
+
+                int cardinality = 0;
+                for ( int i = 0 ; i < w1.length ; ++i )
+                {
+                    cardinality += Long.bitCount( w1[i] & w2[i] );
+                }
+
+                return cardinality;
+            }
+
+            final ArrayContainer sparse = (ArrayContainer) ( this instanceof ArrayContainer ? this : other );
+            final Container filter = sparse == this ? other : this;
+
+            int cardinality = 0;
+            for ( int i = 0 ; i < sparse.size ; ++i )
+            {
+                if ( filter.contains( sparse.values[i] ) )
+                {
+                    ++cardinality;
+                }
+            }
+
+            return cardinality;
+        }
+
+        Container or( final Container other )
+        {
+            Container result;
+            if ( this instanceof BitmapContainer )
+            {
+                result = copy();
+                for ( final char value : other.toArray() )
+                {
+                    result = result.add( value );
+                }
+            }
+            else
+            {
+                result = other.copy();
+                for ( final char value : toArray() )
+                {
+                    result = result.add( value );
+                }
+            }
+
+            return result;
+        }
+
+        Container andNot( final Container other )
+        {
+            Container result = copy();
+            if ( other.cardinality() < cardinality() )
+            {
+                for ( final char value : other.toArray() )
+                {
+                    result = result.remove( value );
+                }
+
+                return result;
+            }
+
+            final ArrayContainer filtered = new ArrayContainer();
+            for ( final char value : toArray() )
+            {
+                if ( !other.contains( value ) )
+                {
+                    filtered.append( value );
+                }
+            }
+
+            return filtered.cardinality() > ARRAY_MAX ? filtered.toBitmap() : filtered;
+        }
+    }
+
+    /**
+     * Sorted low bits.
+     */
+    private static final class ArrayContainer
+        extends Container
+    {
+        // DEFAULT
+        char[] values;
+        int size;
+
+        ArrayContainer()
+        {
+            this.values = new char[ 4 ];
+        }
+
+        @Override
+        Container add( final char value )
+        {
+            // Appends are the common case
+            if ( size > 0 && values[size - 1] < value )
+            {
+                if ( size >= ARRAY_MAX )
+                {
+                    return toBitmap().add( value );
+                }
+
+                append( value );
+
+                return this;
+            }
+
+            int pos = Arrays.binarySearch( values ,
+                                           0 ,
+                                           size ,
+                                           value );
+            if ( pos >= 0 )
+            {
+                return this;
+            }
+
+            if ( size >= ARRAY_MAX )
+            {
+                return toBitmap().add( value );
+            }
+
+            pos = -pos - 1;
+            grow();
+            System.arraycopy( values ,
+                              pos ,
+                              values ,
+                              pos + 1 ,
+                              size - pos );
+            values[pos] = value;
+            ++size;
+
+            return this;
+        }
+
+        @Override
+        Container remove( final char value )
+        {
+            final int pos = Arrays.binarySearch( values ,
+                                                 0 ,
+                                                 size ,
+                                                 value );
+            if ( pos >= 0 )
+            {
+                System.arraycopy( values ,
+                                  pos + 1 ,
+                                  values ,
+                                  pos ,
+                                  size - pos - 1 );
+                --size;
+            }
+
+            return this;
+        }
+
+        @Override
+        boolean contains( final char value )
+        {
+            return Arrays.binarySearch( values ,
+                                        0 ,
+                                        size ,
+                                        value ) >= 0;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return size;
+        }
+
+        @Override
+        char[] toArray()
+        {
+            return Arrays.copyOf( values ,
+                                  size );
+        }
+
+        @Override
+        Container copy()
+        {
+            final ArrayContainer copy = new ArrayContainer();
+            copy.values = toArray();
+            copy.size = size;
+
+            return copy;
+        }
+
+        void append( final char value )
+        {
+            grow();
+            values[size++] = value;
+        }
+
+        BitmapContainer toBitmap()
+        {
+            final BitmapContainer bitmap = new BitmapContainer();
+            for ( int i = 0 ; i < size ; ++i )
+            {
+                bitmap.add( values[i] );
+            }
+
+            return bitmap;
+        }
+
+        private void grow()
+        {
+            if ( size >= values.length )
+            {
+                values = Arrays.copyOf( values ,
+                                        Math.max( 4 ,
+                                                  size * 2 ) );
+            }
+        }
+    }
+
+    /**
+     * 65536 bits.
+     */
+    private static final class BitmapContainer
+        extends Container
+    {
+        // DEFAULT
+        final long[] words;
+        int cardinality;
+
+        BitmapContainer()
+        {
+            this.words = new long[ 1024 ];
+        }
+
+        @Override
+        Container add( final char value )
+        {
+            final long bit = 1L << value;
+            final int word = value >>> 6;
+            if ( ( words[word] & bit ) == 0L )
+            {
+                words[word] |= bit;
+                ++cardinality;
+            }
+
+            return this;
+        }
+
+        @Override
+        Container remove( final char value )
+        {
+            final long bit = 1L << value;
+            final int word = value >>> 6;
+            if ( ( words[word] & bit ) != 0L )
+            {
+                words[word] &= ~bit;
+                --cardinality;
+            }
+
+            return cardinality <= ARRAY_MAX ? toArrayContainer() : this;
+        }
+
+        @Override
+        boolean contains( final char value )
+        {
+            return ( words[value >>> 6] & ( 1L << value ) ) != 0L;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        char[] toArray()
+        {
+            final char[] values = new char[ cardinality ];
+
+            int count = 0;
+            for ( int i = 0 ; i < words.length ; ++i )
+            {
+                long word = words[i];
+                while ( word != 0L )
+                {
+                    values[count++] = (char) ( ( i << 6 ) + Long.numberOfTrailingZeros( word ) );
+                    word &= word - 1L;
+                }
+            }
+
+            return values;
+        }
+
+        @Override
+        Container copy()
+        {
+            final BitmapContainer copy = new BitmapContainer();
+            System.arraycopy( words ,
+                              0 ,
+                              copy.words ,
+                              0 ,
+                              words.length );
+            copy.cardinality = cardinality;
+
+            return copy;
+        }
+
+        Container andBitmap( final BitmapContainer other )
+        {
+            final BitmapContainer result = new BitmapContainer();
+            for ( int i = 0 ; i < words.length ; ++i )
+            {
+                result.words[i] = words[i] & other.words[i];
+                result.cardinality += Long.bitCount( result.words[i] );
+            }
+
+            return result.cardinality <= ARRAY_MAX ? result.toArrayContainer() : result;
+        }
+
+        private ArrayContainer toArrayContainer()
+        {
+            final ArrayContainer array = new ArrayContainer();
+            array.values = toArray();
+            array.size = array.values.length;
+
+            return array;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+
+/**
+ * Write links in the Netscape bookmark format, the format of Shaarli's import and export.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliBookmarkWriter
+{
+    // DEFAULT
+    ShaarliBookmarkWriter( final Writer writer )
+    {
+        if ( writer == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.writer = writer;
+    }
+
+    /**
+     * Write the beginning of the file.
+     *
+     * @throws IOException
+     */
+    void writeHeader()
+        throws IOException
+    {
+        writer.write( "<!DOCTYPE NETSCAPE-Bookmark-file-1>\n"
+                      + "<META HTTP-EQUIV=\"Content-Type\" CONTENT=\"text/html; charset=UTF-8\">\n"
+                      + "<TITLE>Bookmarks</TITLE>\n"
+                      + "<H1>Bookmarks</H1>\n"
+                      + "<DL><p>\n" );
+    }
+
+    /**
+     * Write a link.
+     *
+     * @param link the link
+     * @param addDate Creation date as epoch second (Shaarli uses it as ID)
+     * @throws IOException
+     */
+    void write( final ShaarliLink link ,
+                final long addDate )
+        throws IOException
+    {
+        if ( link == null || link.getUrl() == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        writer.write( "<DT><A HREF=\"" );
+        writer.write( escape( link.getUrl() ) );
+        writer.write( "\" ADD_DATE=\"" );
+        writer.write( Long.toString( addDate ) );
+        writer.write( "\" PRIVATE=\"" );
+        writer.write( link.isRestricted() ? "1" : "0" );
+        writer.write( "\" TAGS=\"" );
+
+        final Iterator<String> itTags = link.getTags().iterator();
+        while ( itTags.hasNext() )
+        {
+            writer.write( escape( itTags.next() ) );
+
+            if ( itTags.hasNext() )
+            {
+                writer.write( ',' );
+            }
+        }
+
+        writer.write( "\">" );
+        if ( link.getTitle() != null )
+        {
+            writer.write( escape( link.getTitle() ) );
+        }
+        writer.write( "</A>\n" );
+
+        if ( link.getDescription() != null && !link.getDescription().isEmpty() )
+        {
+            writer.write( "<DD>" );
+            writer.write( escape( link.getDescription() ) );
+            writer.write( '\n' );
+        }
+    }
+
+    /**
+     * Write the end of the file.
+     *
+     * @throws IOException
+     */
+    void writeFooter()
+        throws IOException
+    {
+        writer.write( "</DL><p>\n" );
+        writer.flush();
+    }
+
+    // PRIVATE
+    private final Writer writer;
+
+    private static String escape( final String str )
+    {
+        final StringBuilder sb = new StringBuilder( str.length() );
+        for ( int i = 0 ; i < str.length() ; ++i )
+        {
+            final char c = str.charAt( i );
+            switch( c )
+            {
+                case '&':
+                    sb.append( "&amp;" );
+                    break;
+
+                case '<':
+                    sb.append( "&lt;" );
+                    break;
+
+                case '>':
+                    sb.append( "&gt;" );
+                    break;
+
+                case '"':
+                    sb.append( "&quot;" );
+                    break;
+
+                default:
+                    sb.append( c );
+                    break;
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -19,12 +19,23 @@
 
 package com.vaushell.shaarlijavaapi;
 
+import com.vaushell.shaarlijavaapi.ShaarliTemplates.Key;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLEncoder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -32,23 +43,38 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.StatusLine;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.joda.time.DateTime;
-import org.joda.time.Duration;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.jsoup.Jsoup;
@@ -61,6 +87,9 @@ import org.slf4j.LoggerFactory;
 /**
  * Shaarli client. Now we have a JAVA access to Sebsauvage Shaarli (see http://sebsauvage.net/wiki/doku.php?id=php:shaarli)
  *
+ * When built with settings, the client is thread-safe: all threads share the same connection pool and the same session
+ * cookies (login once, use everywhere). Don't modify templates or settings once the client is built.
+ *
  * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
  */
 public class ShaarliClient
@@ -68,7 +97,8 @@ public class ShaarliClient
 {
     // PUBLIC
     /**
-     * Construct the DAO with specifics http client and templates.
+     * Construct the DAO with specifics http client and templates. Thread safety depends on the client's connection
+     * manager.
      *
      * @param client Specific HTTP client
      * @param templates Shaarli templates (if you don't use the default one)
@@ -78,19 +108,30 @@ public class ShaarliClient
                           final ShaarliTemplates templates ,
                           final String endpoint )
     {
-        if ( client == null || endpoint == null )
-        {
-            throw new IllegalArgumentException();
-        }
-
-        this.endpoint = cleanEnding( endpoint );
-
-        this.client = client;
-
-        this.templates = templates;
+        this( client ,
+              null ,
+              new ShaarliSettings() ,
+              new ShaarliTraffic() ,
+              templates ,
+              endpoint );
+    }
 
-        this.fmt = DateTimeFormat.forPattern( templates.get( "id-dateformat" ).cssPath );
-        this.fmtPerma = DateTimeFormat.forPattern( templates.get( "permalink-dateformat" ).cssPath );
+    /**
+     * Construct the DAO with specifics settings and templates. The HTTP client uses a connection pool and the client
+     * could be shared between threads.
+     *
+     * @param settings Client settings (pool size, keep-alive, etc.)
+     * @param templates Shaarli templates (if you don't use the default one)
+     * @param endpoint Shaarli endpoint (like http://fabien.vauchelles.com/~fabien/shaarli)
+     */
+    public ShaarliClient( final ShaarliSettings settings ,
+                          final ShaarliTemplates templates ,
+                          final String endpoint )
+    {
+        this( settings ,
+              createConnectionManager( settings ) ,
+              templates ,
+              endpoint );
     }
 
     /**
@@ -102,11 +143,7 @@ public class ShaarliClient
     public ShaarliClient( final ShaarliTemplates templates ,
                           final String endpoint )
     {
-        this( HttpClientBuilder
-            .create()
-            .setDefaultCookieStore( new BasicCookieStore() )
-            .setUserAgent( "Mozilla/5.0 (Windows NT 5.1; rv:15.0) Gecko/20100101 Firefox/15.0.1" )
-            .build() ,
+        this( new ShaarliSettings() ,
               templates ,
               endpoint );
     }
@@ -132,6 +169,26 @@ public class ShaarliClient
         return endpoint;
     }
 
+    /**
+     * Return client settings.
+     *
+     * @return settings
+     */
+    public ShaarliSettings getSettings()
+    {
+        return settings;
+    }
+
+    /**
+     * Return client traffic counters. Only clients built from settings count their traffic.
+     *
+     * @return traffic
+     */
+    public ShaarliTraffic getTraffic()
+    {
+        return traffic;
+    }
+
     /**
      * Login.
      *
@@ -177,13 +234,34 @@ public class ShaarliClient
             return false;
         }
 
+        if ( tokenPool != null )
+        {
+            // Session has changed
+            tokenPool.clear();
+        }
+
+        loggedIn = true;
+
+        // Cached pages belong to the previous session
+        session.incrementAndGet();
+        if ( responseCache != null )
+        {
+            responseCache.clear();
+        }
+
+        // Private tags are visible now
+        if ( tagCloud != null )
+        {
+            tagCloud.clear();
+        }
+
         setLinksByPage( MAX_LINKS_BY_PAGE );
 
         return true;
     }
 
     /**
-     * Create a link.
+     * Create a link. The ID is the current second, or the next free second if it's already used (no wait).
      *
      * @param url Link's URL
      * @param title Link's title
@@ -198,12 +276,13 @@ public class ShaarliClient
                               final Set<String> tags ,
                               final boolean restricted )
     {
-        return createOrUpdateLink( generateDateID() ,
-                                   url ,
-                                   title ,
-                                   description ,
-                                   tags ,
-                                   restricted );
+        return postLink( convertIDdateToString( generateDateIDs( 1 ).get( 0 ) ) ,
+                         url ,
+                         title ,
+                         description ,
+                         tags ,
+                         restricted ,
+                         true );
     }
 
     /**
@@ -250,7 +329,25 @@ public class ShaarliClient
                                       final Set<String> tags ,
                                       final boolean restricted )
     {
-        if ( url == null || title == null )
+        return postLink( ID ,
+                         url ,
+                         title ,
+                         description ,
+                         tags ,
+                         restricted ,
+                         false );
+    }
+
+    /**
+     * Create (or modify) many links. Requests are sent concurrently (see ShaarliSettings.setMaxConnectionsPerRoute()) and
+     * IDs are allocated at once.
+     *
+     * @param links Links to create (a link with an ID is modified)
+     * @return the result of each creation
+     */
+    public ShaarliBatchReport createLinks( final Collection<ShaarliLink> links )
+    {
+        if ( links == null )
         {
             throw new IllegalArgumentException();
         }
@@ -258,105 +355,189 @@ public class ShaarliClient
         if ( LOGGER.isDebugEnabled() )
         {
             LOGGER.debug(
-                "[" + getClass().getSimpleName() + "] createOrUpdateLink() : ID=" + ID + " / url=" + url + " / title=" + title + " / description=" + description + " / restricted=" + restricted );
+                "[" + getClass().getSimpleName() + "] createLinks() : size=" + links.size() );
         }
 
-        final String token;
-        try
-        {
-            token = getToken( endpoint + "/?post" );
-        }
-        catch( final IOException ex )
+        // Allocate IDs for new links
+        int newLinksCount = 0;
+        for ( final ShaarliLink link : links )
         {
-            LOGGER.error( "Cannot retrieve post token" ,
-                          ex );
-            return null;
+            if ( link.getID() == null )
+            {
+                ++newLinksCount;
+            }
         }
 
-        HttpEntity responseEntity = null;
-        try
-        {
-            // Exec request
-            final HttpPost post = new HttpPost( endpoint + "/?post=" + URLEncoder.encode( url ,
-                                                                                          "UTF-8" ) );
-
-            final List<NameValuePair> nvps = new ArrayList<>();
-
-            nvps.add( new BasicNameValuePair( "lf_linkdate" ,
-                                              ID ) );
-
-            nvps.add( new BasicNameValuePair( "lf_url" ,
-                                              url ) );
-
-            nvps.add( new BasicNameValuePair( "lf_title" ,
-                                              title ) );
+        final Iterator<DateTime> itIDs = generateDateIDs( newLinksCount ).iterator();
 
-            if ( description != null )
+        // Send requests
+        final List<ShaarliLink> submitted = new ArrayList<>( links.size() );
+        final List<Future<String>> creations = new ArrayList<>( links.size() );
+        for ( final ShaarliLink link : links )
+        {
+            final String ID;
+            if ( link.getID() == null )
             {
-                nvps.add( new BasicNameValuePair( "lf_description" ,
-                                                  description ) );
+                ID = convertIDdateToString( itIDs.next() );
             }
-
-            if ( restricted )
+            else
             {
-                nvps.add( new BasicNameValuePair( "lf_private" ,
-                                                  "true" ) );
+                ID = link.getID();
             }
 
-            final StringBuilder sbTags = new StringBuilder();
-            if ( tags != null )
+            final boolean created = link.getID() == null;
+
+            submitted.add( link );
+            creations.add( workers.submit( new Callable<String>()
             {
-                for ( final String tag : tags )
+                @Override
+                public String call()
+                    throws Exception
                 {
-                    if ( sbTags.length() > 0 )
-                    {
-                        sbTags.append( ' ' );
-                    }
-
-                    sbTags.append( tag );
+                    return postLink( ID ,
+                                     link.getUrl() ,
+                                     link.getTitle() ,
+                                     link.getDescription() ,
+                                     link.getTags() ,
+                                     link.isRestricted() ,
+                                     created );
                 }
+            } ) );
+        }
+
+        // Collect results
+        final ShaarliBatchReport report = new ShaarliBatchReport( submitted.size() );
+        for ( int i = 0 ; i < submitted.size() ; ++i )
+        {
+            String ID;
+            try
+            {
+                ID = creations.get( i ).get();
             }
+            catch( final InterruptedException ex )
+            {
+                Thread.currentThread().interrupt();
 
-            if ( sbTags.length() > 0 )
+                creations.get( i ).cancel( true );
+                ID = null;
+            }
+            catch( final ExecutionException ex )
             {
-                nvps.add( new BasicNameValuePair( "lf_tags" ,
-                                                  sbTags.toString() ) );
+                LOGGER.error( "Cannot post" ,
+                              ex.getCause() );
+                ID = null;
             }
 
-            nvps.add( new BasicNameValuePair( "save_edit" ,
-                                              "Save" ) );
+            report.set( i ,
+                        submitted.get( i ) ,
+                        ID );
+        }
+
+        return report;
+    }
+
+    /**
+     * Import links with Shaarli's import, in one request. The bookmark file is generated while it is uploaded: links
+     * are read from the iterator one by one. Links without ID get the next free IDs. IDs are sent as dates in the server
+     * time zone (see ShaarliSettings.setServerTimeZone()).
+     *
+     * @param links Links to import
+     * @param overwrite Overwrite existing links with the same ID
+     * @param restricted Import all links as private
+     * @return Number of imported links reported by Shaarli, or -1 if the import failed
+     */
+    public int importLinks( final Iterator<ShaarliLink> links ,
+                            final boolean overwrite ,
+                            final boolean restricted )
+    {
+        if ( links == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] importLinks() : overwrite=" + overwrite + " / restricted=" + restricted );
+        }
+
+        if ( tagCloud != null )
+        {
+            tagCloud.begin();
+        }
+
+        // The tag cloud change must be ended whatever happens
+        boolean counted = false;
+        HttpEntity responseEntity = null;
+        try
+        {
+            // The upload can't be replayed: always use a fresh token
+            final String token = getToken( endpoint + "/?do=import" );
+
+            final List<NameValuePair> nvps = new ArrayList<>();
             nvps.add( new BasicNameValuePair( "token" ,
                                               token ) );
-            nvps.add( new BasicNameValuePair( "returnurl" ,
-                                              endpoint ) );
+            if ( overwrite )
+            {
+                nvps.add( new BasicNameValuePair( "overwrite" ,
+                                                  "on" ) );
+            }
+            if ( restricted )
+            {
+                nvps.add( new BasicNameValuePair( "private" ,
+                                                  "on" ) );
+            }
 
-            post.setEntity( new UrlEncodedFormEntity( nvps ,
-                                                      "UTF-8" ) );
+            // Exec request
+            final HttpPost post = new HttpPost( endpoint + "/?do=upload" );
+            post.setEntity( new ImportEntity( nvps ,
+                                              links ) );
 
             try( final CloseableHttpResponse response = client.execute( post ) )
             {
                 responseEntity = response.getEntity();
 
                 final StatusLine sl = response.getStatusLine();
-                if ( sl.getStatusCode() != 302 )
+                if ( sl.getStatusCode() != 200 )
                 {
-                    try( final InputStream is = responseEntity.getContent() )
+                    throw new IOException( sl.getReasonPhrase() );
+                }
+
+                try( final InputStream is = responseEntity.getContent() )
+                {
+                    final String content = IOUtils.toString( is ,
+                                                             "UTF-8" );
+
+                    final Matcher m = IMPORT_COUNT.matcher( content );
+                    if ( !m.find() )
                     {
-                        throw new IOException( IOUtils.toString( is ) );
+                        throw new IOException( content );
+                    }
+
+                    if ( tagCloud != null )
+                    {
+                        tagCloud.invalidate();
                     }
+                    counted = true;
+
+                    return Integer.parseInt( m.group( 1 ) );
                 }
             }
-
-            return ID;
         }
         catch( final IOException ex )
         {
-            LOGGER.error( "Cannot post" ,
+            LOGGER.error( "Cannot import links" ,
                           ex );
-            return null;
+
+            return -1;
         }
         finally
         {
+            if ( !counted && tagCloud != null )
+            {
+                tagCloud.abort();
+            }
+
             if ( responseEntity != null )
             {
                 try
@@ -412,24 +593,8 @@ public class ShaarliClient
                 "[" + getClass().getSimpleName() + "] delete() : ID=" + ID );
         }
 
-        final String token;
-        try
-        {
-            token = getToken( endpoint + "/?post" );
-        }
-        catch( final IOException ex )
-        {
-            LOGGER.error( "Cannot retrieve post token" ,
-                          ex );
-            return false;
-        }
-
-        HttpEntity responseEntity = null;
         try
         {
-            // Exec request
-            final HttpPost post = new HttpPost( endpoint + "/?post" );
-
             final List<NameValuePair> nvps = new ArrayList<>();
 
             nvps.add( new BasicNameValuePair( "lf_linkdate" ,
@@ -438,27 +603,35 @@ public class ShaarliClient
             nvps.add( new BasicNameValuePair( "delete_link" ,
                                               "" ) );
 
-            nvps.add( new BasicNameValuePair( "token" ,
-                                              token ) );
-
-            post.setEntity( new UrlEncodedFormEntity( nvps ,
-                                                      "UTF-8" ) );
-
-            try( final CloseableHttpResponse response = client.execute( post ) )
+            if ( tagCloud != null )
             {
-                responseEntity = response.getEntity();
+                tagCloud.begin();
+            }
 
-                final StatusLine sl = response.getStatusLine();
-                if ( sl.getStatusCode() != 302 )
+            // Exec request
+            boolean posted = false;
+            try
+            {
+                postForm( endpoint + "/?post" ,
+                          nvps );
+                posted = true;
+            }
+            finally
+            {
+                if ( tagCloud != null )
                 {
-                    try( final InputStream is = responseEntity.getContent() )
+                    if ( posted )
                     {
-                        throw new IOException( IOUtils.toString( is ) );
+                        tagCloud.delete( ID );
+                    }
+                    else
+                    {
+                        tagCloud.abort();
                     }
                 }
-
-                return true;
             }
+
+            return true;
         }
         catch( final IOException ex )
         {
@@ -466,26 +639,24 @@ public class ShaarliClient
                           ex );
             return false;
         }
-        finally
-        {
-            if ( responseEntity != null )
-            {
-                try
-                {
-                    EntityUtils.consume( responseEntity );
-                }
-                catch( final IOException ex )
-                {
-                    throw new RuntimeException( ex );
-                }
-            }
-        }
     }
 
     /**
      * Delete all links.
      */
     public void deleteAll()
+    {
+        deleteAll( null );
+    }
+
+    /**
+     * Delete all links. IDs are collected first, then links are deleted concurrently (see
+     * ShaarliSettings.setMaxConnectionsPerRoute()).
+     *
+     * @param listener Follow the deletions (could be null)
+     * @return Number of deleted links
+     */
+    public int deleteAll( final ShaarliProgressListener listener )
     {
         if ( LOGGER.isDebugEnabled() )
         {
@@ -496,22 +667,68 @@ public class ShaarliClient
         // Find all IDs
         final HashSet<String> IDs = new HashSet<>();
 
-        final Iterator<ShaarliLink> it = searchAllIterator();
-        while ( it.hasNext() )
+        try( final ShaarliIterator<String> it = searchAllIDsIterator() )
         {
-            final ShaarliLink link = it.next();
-            IDs.add( link.getID() );
+            while ( it.hasNext() )
+            {
+                IDs.add( it.next() );
+            }
         }
 
         // Delete all
+        final int total = IDs.size();
+        final AtomicInteger done = new AtomicInteger();
+        final List<Future<Boolean>> deletions = new ArrayList<>( total );
         for ( final String ID : IDs )
         {
-            delete( ID );
+            deletions.add( workers.submit( new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call()
+                    throws Exception
+                {
+                    final boolean deleted = delete( ID );
+
+                    if ( listener != null )
+                    {
+                        listener.progress( done.incrementAndGet() ,
+                                           total );
+                    }
+
+                    return deleted;
+                }
+            } ) );
+        }
+
+        int deleted = 0;
+        for ( final Future<Boolean> deletion : deletions )
+        {
+            try
+            {
+                if ( deletion.get() )
+                {
+                    ++deleted;
+                }
+            }
+            catch( final InterruptedException ex )
+            {
+                Thread.currentThread().interrupt();
+
+                deletion.cancel( true );
+            }
+            catch( final ExecutionException ex )
+            {
+                LOGGER.error( "Cannot delete" ,
+                              ex.getCause() );
+            }
         }
+
+        return deleted;
     }
 
     /**
-     * Get all used tags.
+     * Get all used tags. With a tag cloud lifetime (see ShaarliSettings.setTagCloudTTL()), tags are served from a cache
+     * updated by the client's changes.
      *
      * @return key/value with tag name and tag count
      */
@@ -523,69 +740,16 @@ public class ShaarliClient
                 "[" + getClass().getSimpleName() + "] getTags()" );
         }
 
-        HttpEntity responseEntity = null;
         try
         {
-            // Exec request
-            final String execURL = endpoint + "/?do=tagcloud";
-            final HttpGet get = new HttpGet( execURL );
-
-            try( final CloseableHttpResponse response = client.execute( get ) )
+            if ( tagCloud != null )
             {
-                responseEntity = response.getEntity();
-
-                final StatusLine sl = response.getStatusLine();
-                if ( sl.getStatusCode() == 200 )
-                {
-                    try( final InputStream is = responseEntity.getContent() )
-                    {
-                        final Map<String , Integer> tags = new TreeMap<>();
-
-                        final Document doc = Jsoup.parse( is ,
-                                                          "UTF-8" ,
-                                                          execURL );
-
-                        final Elements elts = doc.select( templates.get( "cloudtag" ).cssPath );
-                        if ( elts != null )
-                        {
-                            final Iterator<Element> itElts = elts.iterator();
-                            while ( itElts.hasNext() )
-                            {
-                                final String countStr = extract( itElts.next() ,
-                                                                 "cloudtag-count" );
-                                if ( countStr == null )
-                                {
-                                    throw new IOException( "Error during parsing" );
-                                }
-
-                                final String name = extract( itElts.next() ,
-                                                             "cloudtag-name" );
-                                if ( name == null )
-                                {
-                                    throw new IOException( "Error during parsing" );
-                                }
-
-                                try
-                                {
-                                    tags.put( name.toLowerCase( Locale.ENGLISH ) ,
-                                              Integer.parseInt( countStr ) );
-                                }
-                                catch( final NumberFormatException ex )
-                                {
-                                    throw new IOException( "Error during parsing" ,
-                                                           ex );
-                                }
-                            }
-                        }
-
-                        return tags;
-                    }
-                }
-                else
-                {
-                    throw new IOException( sl.getReasonPhrase() );
-                }
+                return tagCloud.get();
             }
+
+            return new TreeMap<>( fetch( endpoint + "/?do=tagcloud" ,
+                                         "tags" ,
+                                         tagsParser ) );
         }
         catch( final IOException ex )
         {
@@ -593,28 +757,15 @@ public class ShaarliClient
                           ex );
             return null;
         }
-        finally
-        {
-            if ( responseEntity != null )
-            {
-                try
-                {
-                    EntityUtils.consume( responseEntity );
-                }
-                catch( final IOException ex )
-                {
-                    throw new RuntimeException( ex );
-                }
-            }
-        }
     }
 
     /**
-     * Iterator to search all links in shaarli. Warning: ID appears only when logged.
+     * Iterator to search all links in shaarli. Warning: ID appears only when logged. When logged and if
+     * ShaarliSettings.setExportScans() is enabled, links are read from the export (see exportAll()).
      *
      * @return the iterator
      */
-    public Iterator<ShaarliLink> searchAllIterator()
+    public ShaarliIterator<ShaarliLink> searchAllIterator()
     {
         if ( LOGGER.isDebugEnabled() )
         {
@@ -622,15 +773,65 @@ public class ShaarliClient
                 "[" + getClass().getSimpleName() + "] searchAllIterator()" );
         }
 
+        if ( useExport() )
+        {
+            return new ExportIterator();
+        }
+
         return iterator( null );
     }
 
+    /**
+     * Iterator to search all links IDs in shaarli. Only IDs are extracted from pages: it's lighter than searchAllIterator.
+     * Warning: ID appears only when logged.
+     *
+     * @return the iterator
+     */
+    public ShaarliIterator<String> searchAllIDsIterator()
+    {
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] searchAllIDsIterator()" );
+        }
+
+        if ( useExport() )
+        {
+            return new LinkIDsIterator( new ExportIterator() );
+        }
+
+        return new PageIterator<>( IDsParser ,
+                                   null ,
+                                   1 ,
+                                   false ,
+                                   settings.getReadAhead() );
+    }
+
+    /**
+     * Iterator on the Shaarli export (all links, in one request). The export is parsed while it is downloaded: only
+     * the current link is held in memory. Must be logged. Warning: the export has no permalink ID (getPermaID() returns
+     * null), descriptions are raw text, and IDs are rebuilt with the server time zone (see
+     * ShaarliSettings.setServerTimeZone()).
+     *
+     * @return the iterator
+     */
+    public ShaarliIterator<ShaarliLink> exportAll()
+    {
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] exportAll()" );
+        }
+
+        return new ExportIterator();
+    }
+
     /**
      * Reverse iterator to search all links in shaarli. Warning: ID appears only when logged.
      *
      * @return the iterator
      */
-    public Iterator<ShaarliLink> searchAllReverseIterator()
+    public ShaarliIterator<ShaarliLink> searchAllReverseIterator()
     {
         if ( LOGGER.isDebugEnabled() )
         {
@@ -671,7 +872,7 @@ public class ShaarliClient
      * @param term Term (must not be null)
      * @return an iterator
      */
-    public Iterator<ShaarliLink> searchTermIterator( final String term )
+    public ShaarliIterator<ShaarliLink> searchTermIterator( final String term )
     {
         if ( term == null )
         {
@@ -701,7 +902,7 @@ public class ShaarliClient
      * @param term Term (must not be null)
      * @return an iterator
      */
-    public Iterator<ShaarliLink> searchTermReverseIterator( final String term )
+    public ShaarliIterator<ShaarliLink> searchTermReverseIterator( final String term )
     {
         if ( term == null )
         {
@@ -770,7 +971,7 @@ public class ShaarliClient
      * @param tags Tags array
      * @return an iterator
      */
-    public Iterator<ShaarliLink> searchTagsIterator( final String... tags )
+    public ShaarliIterator<ShaarliLink> searchTagsIterator( final String... tags )
     {
         if ( tags == null || tags.length <= 0 )
         {
@@ -811,7 +1012,7 @@ public class ShaarliClient
      * @param tags Tags array
      * @return an iterator
      */
-    public Iterator<ShaarliLink> searchTagsReverseIterator( final String... tags )
+    public ShaarliIterator<ShaarliLink> searchTagsReverseIterator( final String... tags )
     {
         if ( tags == null || tags.length <= 0 )
         {
@@ -891,6 +1092,125 @@ public class ShaarliClient
         }
     }
 
+    /**
+     * Scan all links in shaarli. Pages are fetched in parallel (see ShaarliSettings.setParallelism()). Warning: ID
+     * appears only when logged. When logged and if ShaarliSettings.setExportScans() is enabled, links are read from the
+     * export (see exportAll()).
+     *
+     * @param visitor Receive links (from several threads, in no particular order)
+     * @return Number of visited links
+     */
+    public int searchAllParallel( final ShaarliLinkVisitor visitor )
+    {
+        if ( visitor == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] searchAllParallel()" );
+        }
+
+        if ( useExport() )
+        {
+            int count = 0;
+            try( final ShaarliIterator<ShaarliLink> it = new ExportIterator() )
+            {
+                while ( it.hasNext() )
+                {
+                    visitor.visit( it.next() );
+                    ++count;
+                }
+            }
+
+            return count;
+        }
+
+        return scanParallel( null ,
+                             visitor );
+    }
+
+    /**
+     * Scan links, filter by a term. Pages are fetched in parallel (see ShaarliSettings.setParallelism()). Warning: ID
+     * appears only when logged.
+     *
+     * @param term Term (must not be null)
+     * @param visitor Receive links (from several threads, in no particular order)
+     * @return Number of visited links
+     */
+    public int searchTermParallel( final String term ,
+                                   final ShaarliLinkVisitor visitor )
+    {
+        if ( term == null || visitor == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] searchTermParallel() : term=" + term );
+        }
+
+        try
+        {
+            return scanParallel( "searchterm=" + URLEncoder.encode( term ,
+                                                                    "UTF-8" ) ,
+                                 visitor );
+        }
+        catch( final UnsupportedEncodingException ex )
+        {
+            throw new RuntimeException( ex );
+        }
+    }
+
+    /**
+     * Scan links, filter by tags. Pages are fetched in parallel (see ShaarliSettings.setParallelism()). Warning: ID
+     * appears only when logged.
+     *
+     * @param visitor Receive links (from several threads, in no particular order)
+     * @param tags Tags array
+     * @return Number of visited links
+     */
+    public int searchTagsParallel( final ShaarliLinkVisitor visitor ,
+                                   final String... tags )
+    {
+        if ( visitor == null || tags == null || tags.length <= 0 )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for ( final String tag : tags )
+        {
+            if ( sb.length() > 0 )
+            {
+                sb.append( ' ' );
+            }
+
+            sb.append( tag );
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] searchTagsParallel() : tags=" + sb.toString() );
+        }
+
+        try
+        {
+            return scanParallel( "searchtags=" + URLEncoder.encode( sb.toString() ,
+                                                                    "UTF-8" ) ,
+                                 visitor );
+        }
+        catch( final UnsupportedEncodingException ex )
+        {
+            throw new RuntimeException( ex );
+        }
+    }
+
     /**
      * Set the number of links by page.
      *
@@ -961,45 +1281,23 @@ public class ShaarliClient
                 "[" + getClass().getSimpleName() + "] getLinksCount()" );
         }
 
-        HttpEntity responseEntity = null;
         try
         {
-            // Exec request
-            final HttpGet get = new HttpGet( endpoint );
-
-            try( final CloseableHttpResponse response = client.execute( get ) )
+            final String countStr = readValue( endpoint ,
+                                               Key.LINKS_COUNT );
+            if ( countStr == null )
             {
-                responseEntity = response.getEntity();
-
-                final StatusLine sl = response.getStatusLine();
-                if ( sl.getStatusCode() != 200 )
+                return 0;
+            }
+            else
+            {
+                try
                 {
-                    throw new IOException();
+                    return Integer.parseInt( countStr );
                 }
-
-                try( final InputStream is = responseEntity.getContent() )
+                catch( final NumberFormatException ex )
                 {
-                    final Document doc = Jsoup.parse( is ,
-                                                      "UTF-8" ,
-                                                      endpoint );
-
-                    final String countStr = extract( doc ,
-                                                     "links-count" );
-                    if ( countStr == null )
-                    {
-                        return 0;
-                    }
-                    else
-                    {
-                        try
-                        {
-                            return Integer.parseInt( countStr );
-                        }
-                        catch( final NumberFormatException ex )
-                        {
-                            return 0;
-                        }
-                    }
+                    return 0;
                 }
             }
         }
@@ -1010,20 +1308,6 @@ public class ShaarliClient
 
             return 0;
         }
-        finally
-        {
-            if ( responseEntity != null )
-            {
-                try
-                {
-                    EntityUtils.consume( responseEntity );
-                }
-                catch( final IOException ex )
-                {
-                    throw new RuntimeException( ex );
-                }
-            }
-        }
     }
 
     /**
@@ -1035,6 +1319,19 @@ public class ShaarliClient
     public void close()
         throws IOException
     {
+        if ( tokenPool != null )
+        {
+            tokenPool.close();
+        }
+
+        workers.shutdownNow();
+        forkJoinPool.shutdownNow();
+
+        if ( evictor != null )
+        {
+            evictor.shutdown();
+        }
+
         if ( client != null )
         {
             client.close();
@@ -1085,112 +1382,478 @@ public class ShaarliClient
     }
     // PRIVATE
     private static final int MAX_LINKS_BY_PAGE = 100;
+    private static final String WRONG_TOKEN = "Wrong token";
+    private static final Pattern IMPORT_COUNT = Pattern.compile( "(\\d+) links imported" );
+    private static final int PREFIX_SCAN_CHUNK = 8192;
+    // Values near the top of the page (the paging is at the bottom: a scan would read the whole page twice)
+    private static final Set<Key> PREFIX_SCAN_KEYS = EnumSet.of( Key.TOKEN ,
+                                                                 Key.LINKS_COUNT );
     private static final Logger LOGGER = LoggerFactory.getLogger( ShaarliClient.class );
     private final CloseableHttpClient client;
+    private final IdleConnectionEvictor evictor;
+    private final ShaarliTokenPool tokenPool;
+    private final ThreadPoolExecutor workers;
+    private final ForkJoinPool forkJoinPool;
+    private final ShaarliSettings settings;
+    private final ShaarliTraffic traffic;
     private final String endpoint;
-    private final ShaarliTemplates templates;
-    private final DateTimeFormatter fmt;
-    private final DateTimeFormatter fmtPerma;
-
-    private String getToken( final String execURL )
-        throws IOException
+    private final ShaarliTemplates.Compiled compiled;
+    private final ShaarliLinkExtractor linkExtractor;
+    private final ListTemplate linksList;
+    private volatile boolean loggedIn;
+    private final ShaarliResponseCache responseCache;
+    private final ShaarliTagCloud tagCloud;
+    // Tags of the links read by this client: released with the client and its links
+    private final ShaarliTagDictionary dictionary = new ShaarliTagDictionary();
+    private final AtomicInteger session = new AtomicInteger();
+    private final BodyParser<List<ShaarliLink>> linksBodyParser = new BodyParser<List<ShaarliLink>>()
     {
-        HttpEntity responseEntity = null;
-        try
+        @Override
+        public List<ShaarliLink> parse( final InputStream is ,
+                                        final String execURL )
+            throws IOException
         {
-            // Exec request
-            final HttpGet get = new HttpGet( execURL );
+            final List<ShaarliLink> links = new ArrayList<>();
 
-            try( final CloseableHttpResponse response = client.execute( get ) )
+            parseItems( is ,
+                        execURL ,
+                        settings.isStreaming() ,
+                        new ItemVisitor()
             {
-                responseEntity = response.getEntity();
-
-                final StatusLine sl = response.getStatusLine();
-                if ( sl.getStatusCode() != 200 )
+                @Override
+                public void visit( final Element item )
                 {
-                    throw new IOException( sl.getReasonPhrase() );
+                    links.add( toLink( item ) );
                 }
+            } );
 
-                try( final InputStream is = responseEntity.getContent() )
+            return Collections.unmodifiableList( links );
+        }
+    };
+    private final BodyParser<Map<String , Integer>> tagsParser = new BodyParser<Map<String , Integer>>()
+    {
+        @Override
+        public Map<String , Integer> parse( final InputStream is ,
+                                            final String execURL )
+            throws IOException
+        {
+            final Map<String , Integer> tags = new TreeMap<>();
+
+            final Document doc = Jsoup.parse( is ,
+                                              "UTF-8" ,
+                                              execURL );
+
+            final Elements elts = compiled.get( Key.CLOUDTAG ).select( doc );
+            if ( elts != null )
+            {
+                final Iterator<Element> itElts = elts.iterator();
+                while ( itElts.hasNext() )
                 {
-                    final Document doc = Jsoup.parse( is ,
-                                                      "UTF-8" ,
-                                                      execURL );
+                    final String countStr = extract( itElts.next() ,
+                                                     Key.CLOUDTAG_COUNT );
+                    if ( countStr == null )
+                    {
+                        throw new IOException( "Error during parsing" );
+                    }
 
-                    return extract( doc ,
-                                    "token" );
+                    final String name = extract( itElts.next() ,
+                                                 Key.CLOUDTAG_NAME );
+                    if ( name == null )
+                    {
+                        throw new IOException( "Error during parsing" );
+                    }
+
+                    try
+                    {
+                        tags.put( name.toLowerCase( Locale.ENGLISH ) ,
+                                  Integer.parseInt( countStr ) );
+                    }
+                    catch( final NumberFormatException ex )
+                    {
+                        throw new IOException( "Error during parsing" ,
+                                               ex );
+                    }
                 }
             }
+
+            return Collections.unmodifiableMap( tags );
         }
-        finally
+    };
+    private final DateTimeFormatter fmt;
+    private final DateTimeFormatter fmtPerma;
+    private final ShaarliIDAllocator idAllocator = new ShaarliIDAllocator();
+    private final PageParser<ShaarliLink> linksParser = new PageParser<ShaarliLink>()
+    {
+        @Override
+        public List<ShaarliLink> parse( final String execURL )
         {
-            if ( responseEntity != null )
-            {
-                EntityUtils.consume( responseEntity );
-            }
+            return parseLinks( execURL );
         }
-    }
 
-    private void loginImpl( final String login ,
-                            final String password ,
-                            final String token )
-        throws IOException
+        @Override
+        public String getID( final ShaarliLink element )
+        {
+            return element.getID();
+        }
+    };
+    private final PageParser<String> IDsParser = new PageParser<String>()
     {
-        HttpEntity responseEntity = null;
-        try
+        @Override
+        public List<String> parse( final String execURL )
         {
-            // Exec request
-            final HttpPost post = new HttpPost( endpoint + "/?do=login" );
+            return parseIDs( execURL );
+        }
 
-            final List<NameValuePair> nvps = new ArrayList<>();
-            nvps.add( new BasicNameValuePair( "login" ,
-                                              login ) );
-            nvps.add( new BasicNameValuePair( "password" ,
-                                              password ) );
-            nvps.add( new BasicNameValuePair( "token" ,
-                                              token ) );
+        @Override
+        public String getID( final String element )
+        {
+            return element;
+        }
+    };
+
+    private ShaarliClient( final ShaarliSettings settings ,
+                           final PoolingHttpClientConnectionManager connectionManager ,
+                           final ShaarliTemplates templates ,
+                           final String endpoint )
+    {
+        this( settings ,
+              connectionManager ,
+              new ShaarliTraffic() ,
+              templates ,
+              endpoint );
+    }
+
+    private ShaarliClient( final ShaarliSettings settings ,
+                           final PoolingHttpClientConnectionManager connectionManager ,
+                           final ShaarliTraffic traffic ,
+                           final ShaarliTemplates templates ,
+                           final String endpoint )
+    {
+        this( createClient( settings ,
+                            connectionManager ,
+                            traffic ) ,
+              connectionManager ,
+              settings ,
+              traffic ,
+              templates ,
+              endpoint );
+    }
+
+    private ShaarliClient( final CloseableHttpClient client ,
+                           final PoolingHttpClientConnectionManager connectionManager ,
+                           final ShaarliSettings settings ,
+                           final ShaarliTraffic traffic ,
+                           final ShaarliTemplates templates ,
+                           final String endpoint )
+    {
+        if ( client == null || settings == null || traffic == null || templates == null || endpoint == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.endpoint = cleanEnding( endpoint );
+
+        this.client = client;
+
+        this.settings = settings;
+
+        this.traffic = traffic;
+
+        this.compiled = templates.compile();
+        this.linkExtractor = new ShaarliLinkExtractor( compiled );
+        this.linksList = ListTemplate.parse( compiled.get( Key.LINKS ).cssPath );
+
+        if ( settings.getResponseCacheSize() > 0 )
+        {
+            this.responseCache = new ShaarliResponseCache( settings.getResponseCacheSize() );
+        }
+        else
+        {
+            this.responseCache = null;
+        }
+
+        this.fmt = DateTimeFormat.forPattern( compiled.get( Key.ID_DATEFORMAT ).cssPath );
+        this.fmtPerma = DateTimeFormat.forPattern( compiled.get( Key.PERMALINK_DATEFORMAT ).cssPath );
+
+        if ( connectionManager != null && settings.getIdleTimeout() > 0L )
+        {
+            this.evictor = new IdleConnectionEvictor( connectionManager ,
+                                                      settings.getIdleTimeout() );
+            this.evictor.start();
+        }
+        else
+        {
+            this.evictor = null;
+        }
+
+        // Background fetches can't use more threads than connections
+        this.workers = new ThreadPoolExecutor( settings.getMaxConnectionsPerRoute() ,
+                                               settings.getMaxConnectionsPerRoute() ,
+                                               60L ,
+                                               TimeUnit.SECONDS ,
+                                               new LinkedBlockingQueue<Runnable>() ,
+                                               new ShaarliThreadFactory( "shaarli-worker" ) );
+        this.workers.allowCoreThreadTimeOut( true );
+        this.forkJoinPool = new ForkJoinPool( settings.getParallelism() );
+
+        if ( settings.getTagCloudTTL() > 0L )
+        {
+            this.tagCloud = new ShaarliTagCloud( settings.getTagCloudTTL() ,
+                                                 new Callable<Map<String , Integer>>()
+            {
+                @Override
+                public Map<String , Integer> call()
+                    throws Exception
+                {
+                    return fetch( ShaarliClient.this.endpoint + "/?do=tagcloud" ,
+                                  "tags" ,
+                                  tagsParser );
+                }
+            } ,
+                                                 workers );
+        }
+        else
+        {
+            this.tagCloud = null;
+        }
+
+        if ( settings.getTokenPoolSize() > 0 )
+        {
+            this.tokenPool = new ShaarliTokenPool( settings.getTokenPoolSize() ,
+                                                   settings.getTokenMaxAge() ,
+                                                   new Callable<String>()
+            {
+                @Override
+                public String call()
+                    throws Exception
+                {
+                    return getToken( ShaarliClient.this.endpoint + "/?post" );
+                }
+            } );
+        }
+        else
+        {
+            this.tokenPool = null;
+        }
+    }
+
+    /**
+     * Post a link.
+     *
+     * @param created true if the ID was allocated by the client (the link is new)
+     */
+    private String postLink( final String ID ,
+                             final String url ,
+                             final String title ,
+                             final String description ,
+                             final Set<String> tags ,
+                             final boolean restricted ,
+                             final boolean created )
+    {
+        if ( url == null || title == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] createOrUpdateLink() : ID=" + ID + " / url=" + url + " / title=" + title + " / description=" + description + " / restricted=" + restricted );
+        }
+
+        // Generated IDs must not collide with this one
+        final DateTime IDdate = convertIDstringToDate( ID );
+        if ( IDdate != null )
+        {
+            idAllocator.observe( IDdate.getMillis() / 1000L );
+        }
+
+        try
+        {
+            final List<NameValuePair> nvps = new ArrayList<>();
+
+            nvps.add( new BasicNameValuePair( "lf_linkdate" ,
+                                              ID ) );
+
+            nvps.add( new BasicNameValuePair( "lf_url" ,
+                                              url ) );
+
+            nvps.add( new BasicNameValuePair( "lf_title" ,
+                                              title ) );
+
+            if ( description != null )
+            {
+                nvps.add( new BasicNameValuePair( "lf_description" ,
+                                                  description ) );
+            }
+
+            if ( restricted )
+            {
+                nvps.add( new BasicNameValuePair( "lf_private" ,
+                                                  "true" ) );
+            }
+
+            final StringBuilder sbTags = new StringBuilder();
+            if ( tags != null )
+            {
+                for ( final String tag : tags )
+                {
+                    if ( sbTags.length() > 0 )
+                    {
+                        sbTags.append( ' ' );
+                    }
+
+                    sbTags.append( tag );
+                }
+            }
+
+            if ( sbTags.length() > 0 )
+            {
+                nvps.add( new BasicNameValuePair( "lf_tags" ,
+                                                  sbTags.toString() ) );
+            }
+
+            nvps.add( new BasicNameValuePair( "save_edit" ,
+                                              "Save" ) );
             nvps.add( new BasicNameValuePair( "returnurl" ,
                                               endpoint ) );
-            post.setEntity( new UrlEncodedFormEntity( nvps ,
-                                                      "UTF-8" ) );
 
-            try( final CloseableHttpResponse response = client.execute( post ) )
+            if ( tagCloud != null )
             {
-                responseEntity = response.getEntity();
+                tagCloud.begin();
+            }
 
-                final StatusLine sl = response.getStatusLine();
-                if ( sl.getStatusCode() != 302 )
+            // Exec request
+            boolean posted = false;
+            try
+            {
+                postForm( endpoint + "/?post=" + URLEncoder.encode( url ,
+                                                                    "UTF-8" ) ,
+                          nvps );
+                posted = true;
+            }
+            finally
+            {
+                if ( tagCloud != null )
                 {
-                    try( final InputStream is = responseEntity.getContent() )
+                    if ( posted )
                     {
-                        throw new IOException( IOUtils.toString( is ) );
+                        tagCloud.update( ID ,
+                                         tags ,
+                                         created );
+                    }
+                    else
+                    {
+                        tagCloud.abort();
                     }
                 }
             }
+
+            return ID;
         }
-        finally
+        catch( final IOException ex )
         {
-            if ( responseEntity != null )
-            {
-                EntityUtils.consume( responseEntity );
-            }
+            LOGGER.error( "Cannot post" ,
+                          ex );
+            return null;
         }
     }
 
-    private List<ShaarliLink> parseLinks( final String execURL )
+    private static PoolingHttpClientConnectionManager createConnectionManager( final ShaarliSettings settings )
     {
-        if ( execURL == null )
+        if ( settings == null )
         {
             throw new IllegalArgumentException();
         }
 
-        if ( LOGGER.isDebugEnabled() )
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal( settings.getMaxConnections() );
+        connectionManager.setDefaultMaxPerRoute( settings.getMaxConnectionsPerRoute() );
+
+        return connectionManager;
+    }
+
+    private static CloseableHttpClient createClient( final ShaarliSettings settings ,
+                                                     final PoolingHttpClientConnectionManager connectionManager ,
+                                                     final ShaarliTraffic traffic )
+    {
+        final long keepAlive = settings.getKeepAlive();
+
+        final HttpClientBuilder builder = HttpClientBuilder.create();
+        if ( !settings.isCompression() )
         {
-            LOGGER.debug(
-                "[" + getClass().getSimpleName() + "] parseLinks() : execURL=" + execURL );
+            builder.disableContentCompression();
         }
 
-        final List<ShaarliLink> links = new ArrayList<>();
+        // Interceptors around the decompression
+        builder.addInterceptorFirst( traffic.wireCounter() );
+        builder.addInterceptorLast( traffic.decodedCounter() );
+
+        return builder
+            .setConnectionManager( connectionManager )
+            .setKeepAliveStrategy( new ConnectionKeepAliveStrategy()
+            {
+                @Override
+                public long getKeepAliveDuration( final HttpResponse response ,
+                                                  final HttpContext context )
+                {
+                    // Use the server value if it sends one
+                    final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration( response ,
+                                                                                                            context );
+                    if ( duration > 0L || keepAlive <= 0L )
+                    {
+                        return duration;
+                    }
+
+                    return keepAlive;
+                }
+            } )
+            .setDefaultCookieStore( new BasicCookieStore() )
+            .setUserAgent( settings.getUserAgent() )
+            .build();
+    }
+
+    private String getToken( final String execURL )
+        throws IOException
+    {
+        return readValue( execURL ,
+                          Key.TOKEN );
+    }
+
+    /**
+     * Read a single value in a page. With prefix scans, the page is read until the value is found and the connection
+     * is aborted (only for values near the top of the page).
+     *
+     * @param execURL URL of the page
+     * @param key Template of the value
+     * @return the value, or null if not found
+     * @throws IOException
+     */
+    private String readValue( final String execURL ,
+                              final Key key )
+        throws IOException
+    {
+        if ( responseCache != null && key != Key.TOKEN )
+        {
+            // Tokens are used once: they are never cached
+            return fetch( execURL ,
+                          key.name() ,
+                          new BodyParser<String>()
+            {
+                @Override
+                public String parse( final InputStream is ,
+                                     final String execURL )
+                    throws IOException
+                {
+                    final Document doc = Jsoup.parse( is ,
+                                                      "UTF-8" ,
+                                                      execURL );
+
+                    return extract( doc ,
+                                    key );
+                }
+            } );
+        }
 
         HttpEntity responseEntity = null;
         try
@@ -1203,437 +1866,1463 @@ public class ShaarliClient
                 responseEntity = response.getEntity();
 
                 final StatusLine sl = response.getStatusLine();
-                if ( sl.getStatusCode() == 200 )
+                if ( sl.getStatusCode() != 200 )
                 {
-                    try( final InputStream is = responseEntity.getContent() )
-                    {
-                        final Document doc = Jsoup.parse( is ,
-                                                          "UTF-8" ,
-                                                          execURL );
-
-                        final String linkCSSpath = templates.get( "links" ).cssPath;
-                        final Elements elts = doc.select( linkCSSpath );
-                        if ( elts != null )
-                        {
-                            for ( final Element elt : elts )
-                            {
-                                final String restrictedStr = extract( elt ,
-                                                                      "links-private" );
-
-                                final boolean restricted = restrictedStr != null;
-
-                                String ID;
-                                final String dateStr = extract( elt ,
-                                                                "links-id" );
-                                if ( dateStr == null )
-                                {
-                                    ID = null;
-                                }
-                                else
-                                {
-                                    try
-                                    {
-                                        ID = convertIDdateToString( fmtPerma.parseDateTime( dateStr ) );
-                                    }
-                                    catch( final IllegalArgumentException ex )
-                                    {
-                                        ID = null;
-                                    }
-                                }
-
-                                final String permaID = extract( elt ,
-                                                                "links-permalink-id" );
-
-                                final String title = extract( elt ,
-                                                              "links-title" );
-
-                                final String description = extract( elt ,
-                                                                    "links-description" );
-
-                                final String url = extract( elt ,
-                                                            "links-url" );
-
-                                final ShaarliLink link = new ShaarliLink( ID ,
-                                                                          permaID ,
-                                                                          title ,
-                                                                          description ,
-                                                                          url ,
-                                                                          restricted );
-
-                                final Elements eltsTag = elt.select( templates.get( "tags" ).cssPath );
-                                if ( eltsTag != null )
-                                {
-                                    for ( final Element eltTag : eltsTag )
-                                    {
-                                        final String tag = extract( eltTag ,
-                                                                    "tags-tag" );
-                                        if ( tag != null )
-                                        {
-                                            link.addTag( tag.toLowerCase( Locale.ENGLISH ) );
-                                        }
-                                    }
-                                }
-
-                                links.add( link );
-                            }
-                        }
+                    throw new IOException( sl.getReasonPhrase() );
+                }
 
-                        return links;
+                if ( settings.isPrefixScan() && PREFIX_SCAN_KEYS.contains( key ) )
+                {
+                    final ShaarliPrefixScanner scanner = new ShaarliPrefixScanner( compiled.get( key ) ,
+                                                                                   PREFIX_SCAN_CHUNK );
+
+                    final InputStream is = responseEntity.getContent();
+                    final String value = scanner.scan( new InputStreamReader( is ,
+                                                                              "UTF-8" ) ,
+                                                       execURL );
+                    if ( scanner.isFullyRead() )
+                    {
+                        is.close();
+                    }
+                    else
+                    {
+                        // Don't download the rest of the page
+                        get.abort();
+                        responseEntity = null;
                     }
+
+                    return value;
                 }
-                else
+
+                try( final InputStream is = responseEntity.getContent() )
                 {
-                    throw new IOException( sl.getReasonPhrase() );
+                    final Document doc = Jsoup.parse( is ,
+                                                      "UTF-8" ,
+                                                      execURL );
+
+                    return extract( doc ,
+                                    key );
                 }
             }
         }
-        catch( final IOException ex )
-        {
-            LOGGER.error( "Cannot links" ,
-                          ex );
-            return links;
-        }
         finally
         {
             if ( responseEntity != null )
             {
-                try
-                {
-                    EntityUtils.consume( responseEntity );
-                }
-                catch( final IOException ex )
-                {
-                    throw new RuntimeException( ex );
-                }
+                EntityUtils.consume( responseEntity );
+            }
+        }
+    }
+
+    private String takeToken()
+        throws IOException
+    {
+        if ( tokenPool == null )
+        {
+            return getToken( endpoint + "/?post" );
+        }
+        else
+        {
+            return tokenPool.take();
+        }
+    }
+
+    private void postForm( final String execURL ,
+                           final List<NameValuePair> nvps )
+        throws IOException
+    {
+        String token = takeToken();
+        try
+        {
+            postFormImpl( execURL ,
+                          nvps ,
+                          token );
+        }
+        catch( final TokenRejectedException ex )
+        {
+            if ( tokenPool == null )
+            {
+                throw ex;
             }
+
+            // The pooled token is too old: retry once with a new one
+            LOGGER.warn( "Token rejected, retry with a new token" );
+
+            token = getToken( endpoint + "/?post" );
+
+            postFormImpl( execURL ,
+                          nvps ,
+                          token );
+        }
+    }
+
+    private void postFormImpl( final String execURL ,
+                               final List<NameValuePair> nvps ,
+                               final String token )
+        throws IOException
+    {
+        HttpEntity responseEntity = null;
+        try
+        {
+            // Exec request
+            final HttpPost post = new HttpPost( execURL );
+
+            final List<NameValuePair> nvpsWithToken = new ArrayList<>( nvps );
+            nvpsWithToken.add( new BasicNameValuePair( "token" ,
+                                                       token ) );
+
+            post.setEntity( new UrlEncodedFormEntity( nvpsWithToken ,
+                                                      "UTF-8" ) );
+
+            try( final CloseableHttpResponse response = client.execute( post ) )
+            {
+                responseEntity = response.getEntity();
+
+                final StatusLine sl = response.getStatusLine();
+                if ( sl.getStatusCode() != 302 )
+                {
+                    try( final InputStream is = responseEntity.getContent() )
+                    {
+                        final String content = IOUtils.toString( is );
+                        if ( content.contains( WRONG_TOKEN ) )
+                        {
+                            throw new TokenRejectedException( content );
+                        }
+
+                        throw new IOException( content );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if ( responseEntity != null )
+            {
+                EntityUtils.consume( responseEntity );
+            }
+        }
+    }
+
+    private void loginImpl( final String login ,
+                            final String password ,
+                            final String token )
+        throws IOException
+    {
+        HttpEntity responseEntity = null;
+        try
+        {
+            // Exec request
+            final HttpPost post = new HttpPost( endpoint + "/?do=login" );
+
+            final List<NameValuePair> nvps = new ArrayList<>();
+            nvps.add( new BasicNameValuePair( "login" ,
+                                              login ) );
+            nvps.add( new BasicNameValuePair( "password" ,
+                                              password ) );
+            nvps.add( new BasicNameValuePair( "token" ,
+                                              token ) );
+            nvps.add( new BasicNameValuePair( "returnurl" ,
+                                              endpoint ) );
+            post.setEntity( new UrlEncodedFormEntity( nvps ,
+                                                      "UTF-8" ) );
+
+            try( final CloseableHttpResponse response = client.execute( post ) )
+            {
+                responseEntity = response.getEntity();
+
+                final StatusLine sl = response.getStatusLine();
+                if ( sl.getStatusCode() != 302 )
+                {
+                    try( final InputStream is = responseEntity.getContent() )
+                    {
+                        throw new IOException( IOUtils.toString( is ) );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if ( responseEntity != null )
+            {
+                EntityUtils.consume( responseEntity );
+            }
+        }
+    }
+
+    private List<ShaarliLink> parseLinks( final String execURL )
+    {
+        if ( responseCache != null )
+        {
+            try
+            {
+                // Cached links are shared
+                final List<ShaarliLink> links = new ArrayList<>();
+                for ( final ShaarliLink link : fetch( execURL ,
+                                                      "links" ,
+                                                      linksBodyParser ) )
+                {
+                    links.add( copyLink( link ) );
+                }
+
+                return links;
+            }
+            catch( final IOException ex )
+            {
+                LOGGER.error( "Cannot links" ,
+                              ex );
+                return new ArrayList<>();
+            }
+        }
+
+        final List<ShaarliLink> links = new ArrayList<>();
+
+        parseLinks( execURL ,
+                    new ShaarliLinkVisitor()
+        {
+            @Override
+            public void visit( final ShaarliLink link )
+            {
+                links.add( link );
+            }
+        } );
+
+        return links;
+    }
+
+    private int parseLinks( final String execURL ,
+                            final ShaarliLinkVisitor visitor )
+    {
+        if ( execURL == null || visitor == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] parseLinks() : execURL=" + execURL );
+        }
+
+        // Links visited before an error are counted
+        final AtomicInteger count = new AtomicInteger();
+        try
+        {
+            readItems( execURL ,
+                       settings.isStreaming() ,
+                       new ItemVisitor()
+            {
+                @Override
+                public void visit( final Element item )
+                {
+                    visitor.visit( toLink( item ) );
+                    count.incrementAndGet();
+                }
+            } );
+        }
+        catch( final IOException ex )
+        {
+            LOGGER.error( "Cannot links" ,
+                          ex );
+        }
+
+        return count.get();
+    }
+
+    /**
+     * Get a links page and visit its items.
+     *
+     * @param execURL URL of the page
+     * @param streaming Parse the page in streaming mode (if the links template can be streamed)
+     * @param visitor Receive the items
+     * @throws IOException
+     */
+    private void readItems( final String execURL ,
+                            final boolean streaming ,
+                            final ItemVisitor visitor )
+        throws IOException
+    {
+        HttpEntity responseEntity = null;
+        try
+        {
+            // Exec request
+            final HttpGet get = new HttpGet( execURL );
+
+            try( final CloseableHttpResponse response = client.execute( get ) )
+            {
+                responseEntity = response.getEntity();
+
+                final StatusLine sl = response.getStatusLine();
+                if ( sl.getStatusCode() != 200 )
+                {
+                    throw new IOException( sl.getReasonPhrase() );
+                }
+
+                try( final InputStream is = responseEntity.getContent() )
+                {
+                    parseItems( is ,
+                                execURL ,
+                                streaming ,
+                                visitor );
+                }
+            }
+        }
+        finally
+        {
+            if ( responseEntity != null )
+            {
+                EntityUtils.consume( responseEntity );
+            }
+        }
+    }
+
+    /**
+     * Visit the items of a links page.
+     *
+     * @param is Page body
+     * @param execURL URL of the page
+     * @param streaming Parse the page in streaming mode (if the links template can be streamed)
+     * @param visitor Receive the items
+     * @throws IOException
+     */
+    private void parseItems( final InputStream is ,
+                             final String execURL ,
+                             final boolean streaming ,
+                             final ItemVisitor visitor )
+        throws IOException
+    {
+        if ( streaming && linksList != null )
+        {
+            final ShaarliListScanner scanner = new ShaarliListScanner(
+                new BufferedReader( new InputStreamReader( is ,
+                                                           "UTF-8" ) ) ,
+                linksList.itemTag ,
+                linksList.listTag );
+
+            String item;
+            while ( ( item = scanner.next() ) != null )
+            {
+                // The item is parsed alone, in its list
+                final Document doc = Jsoup.parseBodyFragment( "<" + linksList.listTag + ">" + item + "</" + linksList.listTag + ">" ,
+                                                              execURL );
+
+                for ( final Element elt : linksList.items.select( doc ) )
+                {
+                    visitor.visit( elt );
+                }
+            }
+        }
+        else
+        {
+            final Document doc = Jsoup.parse( is ,
+                                              "UTF-8" ,
+                                              execURL );
+
+            for ( final Element elt : compiled.get( Key.LINKS ).select( doc ) )
+            {
+                visitor.visit( elt );
+            }
+        }
+    }
+
+    /**
+     * Get and parse a page. With the response cache, the page is revalidated with a conditional request and the
+     * cached value is reused if the page hasn't changed.
+     *
+     * @param execURL URL of the page
+     * @param kind What the parser extracts: values of several kinds are cached for the same page
+     * @param parser Parse the page
+     * @return the parsed page (shared if the cache is used)
+     * @throws IOException
+     */
+    @SuppressWarnings( "unchecked" )
+    private <T> T fetch( final String execURL ,
+                         final String kind ,
+                         final BodyParser<T> parser )
+        throws IOException
+    {
+        final String cacheKey;
+        final ShaarliResponseCache.Entry cached;
+        if ( responseCache == null )
+        {
+            cacheKey = null;
+            cached = null;
+        }
+        else
+        {
+            cacheKey = session.get() + " " + kind + " " + execURL;
+            cached = responseCache.get( cacheKey );
+        }
+
+        HttpEntity responseEntity = null;
+        try
+        {
+            // Exec request
+            final HttpGet get = new HttpGet( execURL );
+            if ( cached != null )
+            {
+                if ( cached.etag != null )
+                {
+                    get.setHeader( "If-None-Match" ,
+                                   cached.etag );
+                }
+
+                if ( cached.lastModified != null )
+                {
+                    get.setHeader( "If-Modified-Since" ,
+                                   cached.lastModified );
+                }
+            }
+
+            try( final CloseableHttpResponse response = client.execute( get ) )
+            {
+                responseEntity = response.getEntity();
+
+                final StatusLine sl = response.getStatusLine();
+                if ( sl.getStatusCode() == 304 && cached != null )
+                {
+                    return (T) cached.value;
+                }
+
+                if ( sl.getStatusCode() != 200 )
+                {
+                    throw new IOException( sl.getReasonPhrase() );
+                }
+
+                final T value;
+                try( final InputStream is = responseEntity.getContent() )
+                {
+                    value = parser.parse( is ,
+                                          execURL );
+                }
+
+                if ( cacheKey != null )
+                {
+                    final Header etag = response.getFirstHeader( "ETag" );
+                    final Header lastModified = response.getFirstHeader( "Last-Modified" );
+                    if ( etag != null || lastModified != null )
+                    {
+                        responseCache.put( cacheKey ,
+                                           new ShaarliResponseCache.Entry( etag == null ? null : etag.getValue() ,
+                                                                           lastModified == null ? null : lastModified.getValue() ,
+                                                                           value ) );
+                    }
+                }
+
+                return value;
+            }
+        }
+        finally
+        {
+            if ( responseEntity != null )
+            {
+                EntityUtils.consume( responseEntity );
+            }
+        }
+    }
+
+    private static ShaarliLink copyLink( final ShaarliLink link )
+    {
+        final ShaarliLink copy = new ShaarliLink( link.getID() ,
+                                                  link.getPermaID() ,
+                                                  link.getTitle() ,
+                                                  link.getDescription() ,
+                                                  link.getUrl() ,
+                                                  link.isRestricted() ,
+                                                  link.getDictionary() );
+        for ( final int code : link.getTagCodes() )
+        {
+            copy.addTagCode( code );
+        }
+
+        return copy;
+    }
+
+    /**
+     * Convert the date shown in a links page to an ID. Generated IDs must not collide with it.
+     *
+     * @param dateStr the date (could be null)
+     * @return the ID, or null if the date is missing or invalid
+     */
+    private String parseID( final String dateStr )
+    {
+        if ( dateStr == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            final DateTime date = fmtPerma.parseDateTime( dateStr );
+
+            idAllocator.observe( date.getMillis() / 1000L );
+
+            return convertIDdateToString( date );
+        }
+        catch( final IllegalArgumentException ex )
+        {
+            return null;
+        }
+    }
+
+    private ShaarliLink toLink( final Element elt )
+    {
+        final ShaarliLinkExtractor.Result fields = linkExtractor.extract( elt );
+
+        final boolean restricted = fields.values[ShaarliLinkExtractor.PRIVATE] != null;
+
+        final ShaarliLink link = new ShaarliLink( parseID( fields.values[ShaarliLinkExtractor.ID] ) ,
+                                                  fields.values[ShaarliLinkExtractor.PERMALINK_ID] ,
+                                                  fields.values[ShaarliLinkExtractor.TITLE] ,
+                                                  fields.values[ShaarliLinkExtractor.DESCRIPTION] ,
+                                                  fields.values[ShaarliLinkExtractor.URL] ,
+                                                  restricted ,
+                                                  dictionary );
+
+        for ( final String tag : fields.tags )
+        {
+            link.addTag( tag.toLowerCase( Locale.ENGLISH ) );
+        }
+
+        return link;
+    }
+
+    /**
+     * Convert a link ID to the timestamp used by the export and the import. Shaarli reads the ID as a date in its own
+     * time zone (see ShaarliSettings.setServerTimeZone()).
+     *
+     * @param ID the link ID
+     * @return the epoch second, or -1 if the ID is null or invalid
+     */
+    private long convertIDtoTimestamp( final String ID )
+    {
+        if ( ID == null )
+        {
+            return -1L;
+        }
+
+        try
+        {
+            return fmt.withZone( settings.getServerTimeZone() ).parseMillis( ID ) / 1000L;
+        }
+        catch( final IllegalArgumentException ex )
+        {
+            return -1L;
+        }
+    }
+
+    /**
+     * Convert a timestamp of the export or the import to a link ID, in the server time zone.
+     *
+     * @param second the epoch second
+     * @return the link ID
+     */
+    private String convertTimestampToID( final long second )
+    {
+        return fmt.withZone( settings.getServerTimeZone() ).print( second * 1000L );
+    }
+
+    private boolean useExport()
+    {
+        return loggedIn && settings.isExportScans();
+    }
+
+    /**
+     * Parse a link of the export.
+     *
+     * @param item HTML of the link (DT and DD)
+     * @return the link, or null if it isn't a link
+     */
+    private ShaarliLink parseExportItem( final String item )
+    {
+        final Document doc = Jsoup.parseBodyFragment( item ,
+                                                      endpoint );
+
+        final Element a = doc.select( "a[href]" ).first();
+        if ( a == null )
+        {
+            return null;
+        }
+
+        String ID;
+        try
+        {
+            final long second = Long.parseLong( a.attr( "add_date" ).trim() );
+
+            idAllocator.observe( second );
+
+            ID = convertTimestampToID( second );
+        }
+        catch( final NumberFormatException ex )
+        {
+            ID = null;
+        }
+
+        final String title = a.text().trim();
+
+        final Element dd = doc.select( "dd" ).first();
+        final String description = dd == null ? "" : dd.text().trim();
+
+        final ShaarliLink link = new ShaarliLink( ID ,
+                                                  null ,
+                                                  title.isEmpty() ? null : title ,
+                                                  description.isEmpty() ? null : description ,
+                                                  a.attr( "href" ) ,
+                                                  "1".equals( a.attr( "private" ).trim() ) ,
+                                                  dictionary );
+
+        for ( final String tag : a.attr( "tags" ).split( "[, ]" ) )
+        {
+            if ( !tag.isEmpty() )
+            {
+                link.addTag( tag.toLowerCase( Locale.ENGLISH ) );
+            }
+        }
+
+        return link;
+    }
+
+    private List<String> parseIDs( final String execURL )
+    {
+        if ( execURL == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug(
+                "[" + getClass().getSimpleName() + "] parseIDs() : execURL=" + execURL );
+        }
+
+        final List<String> IDs = new ArrayList<>();
+        try
+        {
+            // Items are streamed: the page is never built, and only the ID is extracted
+            readItems( execURL ,
+                       true ,
+                       new ItemVisitor()
+            {
+                @Override
+                public void visit( final Element item )
+                {
+                    final String ID = parseID( extract( item ,
+                                                        Key.LINKS_ID ) );
+                    if ( ID != null )
+                    {
+                        IDs.add( ID );
+                    }
+                }
+            } );
+        }
+        catch( final IOException ex )
+        {
+            LOGGER.error( "Cannot get IDs" ,
+                          ex );
+        }
+
+        return IDs;
+    }
+
+    private ShaarliIterator<ShaarliLink> iterator( final String query )
+    {
+        return new PageIterator<>( linksParser ,
+                                   query ,
+                                   1 ,
+                                   false ,
+                                   settings.getReadAhead() );
+    }
+
+    private ShaarliIterator<ShaarliLink> iteratorReverse( final String query )
+    {
+        final int maxPage;
+
+        if ( query != null && query.length() > 0 )
+        {
+            maxPage = getMaxPages( endpoint + "/?" + query );
+        }
+        else
+        {
+            maxPage = getMaxPages( endpoint );
+        }
+
+        // Pages range is known: fetch them in parallel
+        return new PageIterator<>( linksParser ,
+                                   query ,
+                                   maxPage ,
+                                   true ,
+                                   settings.getParallelism() - 1 );
+    }
+
+    private int scanParallel( final String query ,
+                              final ShaarliLinkVisitor visitor )
+    {
+        final int maxPage;
+        if ( query != null && query.length() > 0 )
+        {
+            maxPage = getMaxPages( endpoint + "/?" + query );
+        }
+        else
+        {
+            maxPage = getMaxPages( endpoint );
+        }
+
+        // No paging means only one page
+        return forkJoinPool.invoke( new PageRangeTask( query ,
+                                                       1 ,
+                                                       Math.max( 1 ,
+                                                                 maxPage ) ,
+                                                       visitor ) );
+    }
+
+    private static String cleanEnding( final String url )
+    {
+        if ( url.endsWith( "/" ) )
+        {
+            return url.substring( 0 ,
+                                  url.length() - 1 );
+        }
+        else
+        {
+            return url;
+        }
+    }
+
+    /**
+     * Generate free IDs, from the current second onward (never in the past: Shaarli overwrites existing IDs).
+     */
+    private List<DateTime> generateDateIDs( final int count )
+    {
+        final List<DateTime> IDs = new ArrayList<>( count );
+        if ( count <= 0 )
+        {
+            return IDs;
+        }
+
+        final long first = idAllocator.allocate( count );
+        for ( int i = 0 ; i < count ; ++i )
+        {
+            IDs.add( new DateTime( ( first + i ) * 1000L ) );
+        }
+
+        return IDs;
+    }
+
+    private String extract( final Element source ,
+                            final Key key )
+    {
+        if ( source == null || key == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        return compiled.get( key ).extract( source );
+    }
+
+    private int getMaxPages( final String query )
+    {
+        try
+        {
+            final String maxStr = readValue( query ,
+                                             Key.PAGE_MAX );
+            if ( maxStr == null )
+            {
+                return 0;
+            }
+            else
+            {
+                try
+                {
+                    return Integer.parseInt( maxStr );
+                }
+                catch( final NumberFormatException ex )
+                {
+                    return 0;
+                }
+            }
+        }
+        catch( final IOException ex )
+        {
+            LOGGER.error( "Cannot get max page count" ,
+                          ex );
+
+            return 0;
+        }
+    }
+
+    /**
+     * Iterate the links of the export. The connection is held until the end of the export or until the iterator is
+     * closed.
+     */
+    private final class ExportIterator
+        implements ShaarliIterator<ShaarliLink>
+    {
+        // PUBLIC
+        @Override
+        public boolean hasNext()
+        {
+            if ( current == null && !closed )
+            {
+                current = readNext();
+            }
+
+            return current != null;
+        }
+
+        @Override
+        public ShaarliLink next()
+        {
+            final ShaarliLink link = current;
+            current = null;
+
+            return link;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            if ( closed )
+            {
+                return;
+            }
+
+            closed = true;
+
+            if ( get != null )
+            {
+                // Don't download the rest of the export
+                get.abort();
+            }
+
+            release();
+        }
+
+        // PRIVATE
+        private HttpGet get;
+        private CloseableHttpResponse response;
+        private ShaarliListScanner scanner;
+        private ShaarliLink current;
+        private boolean closed;
+
+        private ShaarliLink readNext()
+        {
+            try
+            {
+                if ( scanner == null )
+                {
+                    get = new HttpGet( endpoint + "/?do=export&what=all" );
+                    response = client.execute( get );
+
+                    final StatusLine sl = response.getStatusLine();
+                    if ( sl.getStatusCode() != 200 )
+                    {
+                        throw new IOException( sl.getReasonPhrase() );
+                    }
+
+                    scanner = new ShaarliListScanner( new BufferedReader( new InputStreamReader( response.getEntity().getContent() ,
+                                                                                                 "UTF-8" ) ) ,
+                                                      "dt" ,
+                                                      "dl" );
+                }
+
+                String item;
+                while ( ( item = scanner.next() ) != null )
+                {
+                    final ShaarliLink link = parseExportItem( item );
+                    if ( link != null )
+                    {
+                        return link;
+                    }
+                }
+
+                // End of the export: the connection is reusable
+                get = null;
+                close();
+            }
+            catch( final IOException ex )
+            {
+                LOGGER.error( "Cannot export links" ,
+                              ex );
+
+                close();
+            }
+
+            return null;
+        }
+
+        private void release()
+        {
+            if ( response != null )
+            {
+                try
+                {
+                    EntityUtils.consume( response.getEntity() );
+                    response.close();
+                }
+                catch( final IOException ex )
+                {
+                    // Aborted
+                }
+
+                response = null;
+            }
+        }
+    }
+
+    /**
+     * Multipart form of the import. The bookmark file is generated while it is written (the length is unknown, so the
+     * entity is chunked).
+     */
+    private final class ImportEntity
+        extends AbstractHttpEntity
+    {
+        // PUBLIC
+        ImportEntity( final List<NameValuePair> fields ,
+                      final Iterator<ShaarliLink> links )
+        {
+            this.fields = fields;
+            this.links = links;
+            this.boundary = "----shaarli" + Long.toHexString( System.nanoTime() ) + Long.toHexString( Double.doubleToLongBits( Math.random() ) );
+
+            setContentType( "multipart/form-data; boundary=" + boundary );
+            setChunked( true );
+        }
+
+        @Override
+        public boolean isRepeatable()
+        {
+            return false;
+        }
+
+        @Override
+        public long getContentLength()
+        {
+            return -1L;
         }
-    }
 
-    private Iterator<ShaarliLink> iterator( final String query )
-    {
-        return new Iterator<ShaarliLink>()
+        @Override
+        public InputStream getContent()
+            throws IOException
         {
-            // PUBLIC
-            @Override
-            public boolean hasNext()
-            {
-                if ( bufferCursor < buffer.size() )
-                {
-                    return true;
-                }
-                else
-                {
-                    buffer.clear();
-                    bufferCursor = 0;
+            throw new UnsupportedOperationException( "Import entity can only be written" );
+        }
 
-                    final List<ShaarliLink> links;
-                    if ( query != null && query.length() > 0 )
-                    {
-                        links = parseLinks( endpoint + "/?page=" + ( page++ ) + "&" + query );
-                    }
-                    else
-                    {
-                        links = parseLinks( endpoint + "/?page=" + ( page++ ) );
-                    }
+        @Override
+        public void writeTo( final OutputStream outstream )
+            throws IOException
+        {
+            final Writer writer = new BufferedWriter( new OutputStreamWriter( outstream ,
+                                                                              "UTF-8" ) );
 
-                    if ( links.isEmpty() )
-                    {
-                        return false;
-                    }
-                    else
-                    {
-                        final String linksLastID = links.get( links.size() - 1 ).getID();
-                        if ( lastID != null && lastID.equals( linksLastID ) )
-                        {
-                            return false;
-                        }
-                        else
-                        {
-                            lastID = linksLastID;
+            for ( final NameValuePair field : fields )
+            {
+                writer.write( "--" + boundary + "\r\n" );
+                writer.write( "Content-Disposition: form-data; name=\"" + field.getName() + "\"\r\n\r\n" );
+                writer.write( field.getValue() + "\r\n" );
+            }
 
-                            buffer.addAll( links );
+            writer.write( "--" + boundary + "\r\n" );
+            writer.write( "Content-Disposition: form-data; name=\"filetoupload\"; filename=\"bookmarks.html\"\r\n" );
+            writer.write( "Content-Type: text/html; charset=UTF-8\r\n\r\n" );
 
-                            return true;
-                        }
-                    }
+            final ShaarliBookmarkWriter bookmarks = new ShaarliBookmarkWriter( writer );
+            bookmarks.writeHeader();
+            while ( links.hasNext() )
+            {
+                final ShaarliLink link = links.next();
+
+                long addDate = convertIDtoTimestamp( link.getID() );
+                if ( addDate < 0L )
+                {
+                    addDate = idAllocator.allocate( 1 );
                 }
-            }
 
-            @Override
-            public ShaarliLink next()
-            {
-                return buffer.get( bufferCursor++ );
+                bookmarks.write( link ,
+                                 addDate );
             }
+            bookmarks.writeFooter();
 
-            @Override
-            public void remove()
-            {
-                throw new UnsupportedOperationException();
-            }
+            writer.write( "\r\n--" + boundary + "--\r\n" );
+            writer.flush();
+        }
+
+        @Override
+        public boolean isStreaming()
+        {
+            return true;
+        }
 
-            // PRIVATE
-            private final List<ShaarliLink> buffer = new ArrayList<>();
-            private int bufferCursor;
-            private int page = 1;
-            private String lastID;
-        };
+        // PRIVATE
+        private final List<NameValuePair> fields;
+        private final Iterator<ShaarliLink> links;
+        private final String boundary;
     }
 
-    private Iterator<ShaarliLink> iteratorReverse( final String query )
+    /**
+     * Iterate the IDs of links.
+     */
+    private static final class LinkIDsIterator
+        implements ShaarliIterator<String>
     {
-        final int maxPage;
+        // PUBLIC
+        LinkIDsIterator( final ShaarliIterator<ShaarliLink> links )
+        {
+            this.links = links;
+        }
 
-        if ( query != null && query.length() > 0 )
+        @Override
+        public boolean hasNext()
         {
-            maxPage = getMaxPages( endpoint + "&" + query );
+            return links.hasNext();
         }
-        else
+
+        @Override
+        public String next()
         {
-            maxPage = getMaxPages( endpoint );
+            return links.next().getID();
         }
 
-        return new Iterator<ShaarliLink>()
+        @Override
+        public void remove()
         {
-            // PUBLIC
-            @Override
-            public boolean hasNext()
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            links.close();
+        }
+
+        // PRIVATE
+        private final ShaarliIterator<ShaarliLink> links;
+    }
+
+    /**
+     * Iterate pages from the first one, or from the last one to the first one (reverse). The next pages could be fetched
+     * in advance: pages are fetched concurrently and are read in order.
+     */
+    private final class PageIterator<T>
+        implements ShaarliIterator<T>
+    {
+        // PUBLIC
+        PageIterator( final PageParser<T> parser ,
+                      final String query ,
+                      final int firstPage ,
+                      final boolean reverse ,
+                      final int readAhead )
+        {
+            this.parser = parser;
+            this.query = query;
+            this.reverse = reverse;
+            this.readAhead = readAhead;
+            this.buffer = new ArrayList<>();
+            this.pending = new ArrayDeque<>();
+            this.page = firstPage;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if ( bufferCursor < buffer.size() )
+            {
+                return true;
+            }
+            else
             {
-                if ( bufferCursor < buffer.size() )
+                buffer.clear();
+                bufferCursor = 0;
+
+                if ( closed )
                 {
-                    return true;
+                    return false;
+                }
+
+                final List<T> elements = nextPage();
+                if ( elements == null || elements.isEmpty() )
+                {
+                    close();
+
+                    return false;
                 }
                 else
                 {
-                    if ( page < 1 )
+                    if ( reverse )
                     {
-                        return false;
+                        Collections.reverse( elements );
                     }
                     else
                     {
-                        buffer.clear();
-                        bufferCursor = 0;
-
-                        final List<ShaarliLink> links;
-                        if ( query != null && query.length() > 0 )
-                        {
-                            links = parseLinks( endpoint + "/?page=" + ( page-- ) + "&" + query );
-                        }
-                        else
+                        // Shaarli returns the last page when we go too far
+                        final String lastPageID = parser.getID( elements.get( elements.size() - 1 ) );
+                        if ( lastID != null && lastID.equals( lastPageID ) )
                         {
-                            links = parseLinks( endpoint + "/?page=" + ( page-- ) );
-                        }
+                            close();
 
-                        if ( links.isEmpty() )
-                        {
                             return false;
                         }
-                        else
-                        {
-                            Collections.reverse( links );
 
-                            buffer.addAll( links );
-
-                            return true;
-                        }
+                        lastID = lastPageID;
                     }
+
+                    buffer.addAll( elements );
+
+                    return true;
                 }
             }
+        }
 
-            @Override
-            public ShaarliLink next()
-            {
-                return buffer.get( bufferCursor++ );
-            }
+        @Override
+        public T next()
+        {
+            return buffer.get( bufferCursor++ );
+        }
 
-            @Override
-            public void remove()
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+
+            Future<List<T>> future = pending.poll();
+            while ( future != null )
             {
-                throw new UnsupportedOperationException();
+                future.cancel( true );
+
+                future = pending.poll();
             }
+        }
 
-            // PRIVATE
-            private final List<ShaarliLink> buffer = new ArrayList<>();
-            private int bufferCursor;
-            private int page = maxPage;
-        };
-    }
+        // PRIVATE
+        private final PageParser<T> parser;
+        private final String query;
+        private final boolean reverse;
+        private final int readAhead;
+        private final List<T> buffer;
+        private final Deque<Future<List<T>>> pending;
+        private int bufferCursor;
+        private int page;
+        private String lastID;
+        private boolean closed;
 
-    private static String cleanEnding( final String url )
-    {
-        if ( url.endsWith( "/" ) )
+        private boolean hasMorePages()
         {
-            return url.substring( 0 ,
-                                  url.length() - 1 );
+            return !reverse || page >= 1;
         }
-        else
+
+        private String nextPageURL()
         {
-            return url;
-        }
-    }
+            final int current = page;
+            if ( reverse )
+            {
+                --page;
+            }
+            else
+            {
+                ++page;
+            }
 
-    private DateTime lastGeneratedDate;
+            if ( query != null && query.length() > 0 )
+            {
+                return endpoint + "/?page=" + current + "&" + query;
+            }
+            else
+            {
+                return endpoint + "/?page=" + current;
+            }
+        }
 
-    private DateTime generateDateID()
-    {
-        synchronized( this )
+        private List<T> nextPage()
         {
-            DateTime now = new DateTime();
+            if ( readAhead <= 0 )
+            {
+                if ( !hasMorePages() )
+                {
+                    return null;
+                }
+
+                return parser.parse( nextPageURL() );
+            }
 
-            if ( lastGeneratedDate != null )
+            // Keep the current page and the next ones in progress (futures are kept in the pages order)
+            while ( pending.size() <= readAhead && hasMorePages() )
             {
-                Duration diff = new Duration( lastGeneratedDate ,
-                                              now );
-                while ( diff.getMillis() < 1000L )
+                final String execURL = nextPageURL();
+
+                pending.add( workers.submit( new Callable<List<T>>()
                 {
-                    try
-                    {
-                        // It's better than a Thread.sleep in a synchronized block
-                        wait( 1000L - diff.getMillis() );
-                    }
-                    catch( final InterruptedException ex )
+                    @Override
+                    public List<T> call()
+                        throws Exception
                     {
-                        // Ignore
+                        return parser.parse( execURL );
                     }
+                } ) );
+            }
 
-                    now = new DateTime();
-                    diff = new Duration( lastGeneratedDate ,
-                                         now );
-                }
+            final Future<List<T>> future = pending.poll();
+            if ( future == null )
+            {
+                return null;
             }
 
-            lastGeneratedDate = now;
+            try
+            {
+                return future.get();
+            }
+            catch( final InterruptedException ex )
+            {
+                Thread.currentThread().interrupt();
 
-            return lastGeneratedDate;
+                return null;
+            }
+            catch( final ExecutionException ex )
+            {
+                throw new RuntimeException( ex.getCause() );
+            }
         }
     }
 
-    private String extract( final Element source ,
-                            final String templateName )
+    /**
+     * Parse a page body.
+     */
+    private interface BodyParser<T>
     {
-        if ( source == null )
-        {
-            throw new IllegalArgumentException();
-        }
+        T parse( InputStream is ,
+                 String execURL )
+            throws IOException;
+    }
 
-        final ShaarliTemplates.Template template = templates.get( templateName );
-        if ( template == null )
-        {
-            throw new IllegalArgumentException( "template '" + templateName + "' not found" );
-        }
+    /**
+     * Receive the items of a links page.
+     */
+    private interface ItemVisitor
+    {
+        void visit( Element item );
+    }
+
+    /**
+     * Parse a page into elements.
+     */
+    private interface PageParser<T>
+    {
+        List<T> parse( String execURL );
+
+        String getID( T element );
+    }
 
-        final Element elt;
-        if ( template.cssPath.isEmpty() )
+    /**
+     * Fetch a range of pages. The range is split in two until there is only one page to fetch.
+     */
+    private final class PageRangeTask
+        extends RecursiveTask<Integer>
+    {
+        // PUBLIC
+        PageRangeTask( final String query ,
+                       final int firstPage ,
+                       final int lastPage ,
+                       final ShaarliLinkVisitor visitor )
         {
-            elt = source;
+            this.query = query;
+            this.firstPage = firstPage;
+            this.lastPage = lastPage;
+            this.visitor = visitor;
         }
-        else
+
+        // PROTECTED
+        @Override
+        protected Integer compute()
         {
-            final Elements elts = source.select( template.cssPath );
-            if ( elts.isEmpty() )
+            if ( firstPage < lastPage )
             {
-                return null;
+                final int middle = ( firstPage + lastPage ) >>> 1;
+
+                final PageRangeTask left = new PageRangeTask( query ,
+                                                              firstPage ,
+                                                              middle ,
+                                                              visitor );
+                final PageRangeTask right = new PageRangeTask( query ,
+                                                               middle + 1 ,
+                                                               lastPage ,
+                                                               visitor );
+
+                right.fork();
+
+                return left.compute() + right.join();
             }
 
-            elt = elts.first();
+            if ( query != null && query.length() > 0 )
+            {
+                return parseLinks( endpoint + "/?page=" + firstPage + "&" + query ,
+                                   visitor );
+            }
+            else
+            {
+                return parseLinks( endpoint + "/?page=" + firstPage ,
+                                   visitor );
+            }
         }
 
-        String content;
-        if ( template.attribut.isEmpty() )
-        {
-            content = elt.text();
-        }
-        else
-        {
-            content = elt.attr( template.attribut );
-        }
-        if ( content == null )
+        // PRIVATE
+        private static final long serialVersionUID = 7284561093847561234L;
+        private final String query;
+        private final int firstPage;
+        private final int lastPage;
+        private final transient ShaarliLinkVisitor visitor;
+    }
+
+    /**
+     * Close expired and idle connections of the pool, in background.
+     */
+    private static final class IdleConnectionEvictor
+        extends Thread
+    {
+        // PUBLIC
+        IdleConnectionEvictor( final PoolingHttpClientConnectionManager connectionManager ,
+                               final long idleTimeout )
         {
-            return null;
+            super( "shaarli-connection-evictor" );
+
+            this.connectionManager = connectionManager;
+            this.idleTimeout = idleTimeout;
+            this.interval = Math.max( 1000L ,
+                                      idleTimeout / 2L );
+
+            setDaemon( true );
         }
-        content = content.trim();
 
-        if ( !template.regex.isEmpty() )
+        @Override
+        public void run()
         {
-            final Pattern p = Pattern.compile( template.regex );
-            final Matcher m = p.matcher( content );
-            if ( m.find() )
+            try
+            {
+                while ( !isInterrupted() )
+                {
+                    Thread.sleep( interval );
+
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections( idleTimeout ,
+                                                            TimeUnit.MILLISECONDS );
+                }
+            }
+            catch( final InterruptedException ex )
             {
-                content = m.group().trim();
+                // Stop
             }
         }
 
-        if ( content.isEmpty() )
+        void shutdown()
         {
-            return null;
+            interrupt();
         }
 
-        return content;
+        // PRIVATE
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final long idleTimeout;
+        private final long interval;
     }
 
-    private int getMaxPages( final String query )
+    /**
+     * The links template, for streaming: the item and its list are the last steps of the CSS path (like "ul li" or
+     * "div#links ol > li.link"). An item is parsed alone in its list, so the steps above the list are not checked.
+     */
+    private static final class ListTemplate
     {
-        HttpEntity responseEntity = null;
-        try
-        {
-            // Exec request
-            final HttpGet get = new HttpGet( query );
-
-            try( final CloseableHttpResponse response = client.execute( get ) )
+        // DEFAULT
+        final String itemTag;
+        final String listTag;
+        final ShaarliTemplates.Template items;
+
+        /**
+         * Read the item and its list in a CSS path.
+         *
+         * @param cssPath the links CSS path
+         * @return the template, or null if the CSS path can't be streamed (items are then read in the full page)
+         */
+        static ListTemplate parse( final String cssPath )
+        {
+            if ( cssPath.indexOf( ',' ) >= 0 )
             {
-                responseEntity = response.getEntity();
+                return null;
+            }
 
-                final StatusLine sl = response.getStatusLine();
-                if ( sl.getStatusCode() != 200 )
-                {
-                    throw new IOException();
-                }
+            final String[] steps = cssPath.trim().replaceAll( "\\s*([>+~])\\s*" ,
+                                                              " $1 " ).split( "\\s+" );
+            if ( steps.length < 2 )
+            {
+                return null;
+            }
 
-                try( final InputStream is = responseEntity.getContent() )
-                {
-                    final Document doc = Jsoup.parse( is ,
-                                                      "UTF-8" ,
-                                                      endpoint );
+            final String item = steps[steps.length - 1];
+            String combinator = " ";
+            String list = steps[steps.length - 2];
+            if ( ">".equals( list ) && steps.length >= 3 )
+            {
+                combinator = " > ";
+                list = steps[steps.length - 3];
+            }
 
-                    final String maxStr = extract( doc ,
-                                                   "page-max" );
-                    if ( maxStr == null )
-                    {
-                        return 0;
-                    }
-                    else
-                    {
-                        try
-                        {
-                            return Integer.parseInt( maxStr );
-                        }
-                        catch( final NumberFormatException ex )
-                        {
-                            return 0;
-                        }
-                    }
-                }
+            final String itemTag = tagName( item );
+            final String listTag = tagName( list );
+            if ( itemTag == null || listTag == null )
+            {
+                return null;
             }
+
+            return new ListTemplate( itemTag ,
+                                     listTag ,
+                                     new ShaarliTemplates.Template( listTag + combinator + item ,
+                                                                    "" ,
+                                                                    "" ) );
         }
-        catch( final IOException ex )
-        {
-            LOGGER.error( "Cannot get max page count" ,
-                          ex );
 
-            return 0;
+        // PRIVATE
+        private static final Pattern TAG_NAME = Pattern.compile( "^[a-zA-Z][a-zA-Z0-9]*" );
+
+        private ListTemplate( final String itemTag ,
+                              final String listTag ,
+                              final ShaarliTemplates.Template items )
+        {
+            this.itemTag = itemTag;
+            this.listTag = listTag;
+            this.items = items;
         }
-        finally
+
+        private static String tagName( final String step )
         {
-            if ( responseEntity != null )
+            final Matcher m = TAG_NAME.matcher( step );
+            if ( !m.find() )
             {
-                try
-                {
-                    EntityUtils.consume( responseEntity );
-                }
-                catch( final IOException ex )
-                {
-                    throw new RuntimeException( ex );
-                }
+                return null;
             }
+
+            return m.group().toLowerCase( Locale.ENGLISH );
         }
     }
+
+    /**
+     * Shaarli refuses the form token.
+     */
+    private static final class TokenRejectedException
+        extends IOException
+    {
+        // DEFAULT
+        TokenRejectedException( final String message )
+        {
+            super( message );
+        }
+
+        // PRIVATE
+        private static final long serialVersionUID = 4561238751459870012L;
+    }
 }
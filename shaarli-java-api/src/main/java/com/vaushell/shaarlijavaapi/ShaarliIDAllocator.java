@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Allocate link IDs. A Shaarli ID is a date with a second precision, so 2 links can't be created in the same second.
+ * Instead of waiting, the allocator hands out the next free seconds (an allocation never blocks). Seconds are epoch
+ * seconds.
+ *
+ * The last allocated second and the known IDs form one immutable state, replaced by compare-and-set: an ID observed
+ * during an allocation makes the allocation retry.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliIDAllocator
+{
+    // DEFAULT
+    ShaarliIDAllocator()
+    {
+        this.state = new AtomicReference<>( new State( Long.MIN_VALUE / 2L ,
+                                                       new long[ 0 ] ) );
+    }
+
+    /**
+     * Allocate a block of consecutive free seconds. The block starts now if this second is free, otherwise it starts
+     * after the last allocated second (and could be in the future). It never starts in the past: Shaarli would
+     * overwrite the links posted in these seconds.
+     *
+     * @param count Number of seconds (>=1)
+     * @return the first second of the block
+     */
+    long allocate( final int count )
+    {
+        if ( count < 1 )
+        {
+            throw new IllegalArgumentException( "count must be greater or equals to 1" );
+        }
+
+        while ( true )
+        {
+            final State previous = state.get();
+
+            long first = Math.max( System.currentTimeMillis() / 1000L ,
+                                   previous.last + 1L );
+
+            // Skip IDs already used on the server (known IDs are sorted)
+            for ( final long conflict : previous.known )
+            {
+                if ( conflict >= first + count )
+                {
+                    break;
+                }
+
+                if ( conflict >= first )
+                {
+                    first = conflict + 1L;
+                }
+            }
+
+            final long end = first + count - 1L;
+
+            // Older known IDs can't be allocated anymore
+            int keep = 0;
+            while ( keep < previous.known.length && previous.known[keep] <= end )
+            {
+                ++keep;
+            }
+
+            if ( state.compareAndSet( previous ,
+                                      new State( end ,
+                                                 Arrays.copyOfRange( previous.known ,
+                                                                     keep ,
+                                                                     previous.known.length ) ) ) )
+            {
+                return first;
+            }
+        }
+    }
+
+    /**
+     * Declare a used ID, which must not be allocated.
+     *
+     * @param second the ID as epoch second
+     * @return true if the ID is reserved, false if it is already allocated or in the past
+     */
+    boolean observe( final long second )
+    {
+        // Blocks never start in the past
+        if ( second < System.currentTimeMillis() / 1000L )
+        {
+            return false;
+        }
+
+        while ( true )
+        {
+            final State previous = state.get();
+            if ( second <= previous.last )
+            {
+                return false;
+            }
+
+            final int pos = Arrays.binarySearch( previous.known ,
+                                                 second );
+            if ( pos >= 0 )
+            {
+                return true;
+            }
+
+            final int insert = -pos - 1;
+            final long[] known = new long[ previous.known.length + 1 ];
+            System.arraycopy( previous.known ,
+                              0 ,
+                              known ,
+                              0 ,
+                              insert );
+            known[insert] = second;
+            System.arraycopy( previous.known ,
+                              insert ,
+                              known ,
+                              insert + 1 ,
+                              previous.known.length - insert );
+
+            if ( state.compareAndSet( previous ,
+                                      new State( previous.last ,
+                                                 known ) ) )
+            {
+                return true;
+            }
+        }
+    }
+
+    // PRIVATE
+    private final AtomicReference<State> state;
+
+    /**
+     * Last allocated second and known IDs after it (sorted).
+     */
+    private static final class State
+    {
+        // DEFAULT
+        final long last;
+        final long[] known;
+
+        State( final long last ,
+               final long[] known )
+        {
+            this.last = last;
+            this.known = known;
+        }
+    }
+}
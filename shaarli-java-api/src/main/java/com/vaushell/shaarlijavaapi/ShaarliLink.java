@@ -19,7 +19,15 @@
 
 package com.vaushell.shaarlijavaapi;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
@@ -27,6 +35,10 @@ import java.util.TreeSet;
 /**
  * Shaarli link.
  *
+ * Tags are stored as a sorted array of codes from a tag dictionary (see ShaarliTagDictionary): getTags() is a view on
+ * this array. Links built by the application use the default dictionary, links read by a client, a table or a codec
+ * use the dictionary of their source.
+ *
  * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
  */
 public class ShaarliLink
@@ -50,13 +62,13 @@ public class ShaarliLink
                         final String url ,
                         final boolean restricted )
     {
-        this.ID = ID;
-        this.permaID = permaID;
-        this.title = title;
-        this.description = description;
-        this.url = url;
-        this.restricted = restricted;
-        this.tags = null;
+        this( ID ,
+              permaID ,
+              title ,
+              description ,
+              url ,
+              restricted ,
+              ShaarliTagDictionary.getDefault() );
     }
 
     /**
@@ -205,28 +217,31 @@ public class ShaarliLink
     }
 
     /**
-     * Get all the link's tags (lazy initialization).
+     * Get all the link's tags. The set is a modifiable view, sorted by name.
      *
      * @return the tags
      */
     public Set<String> getTags()
     {
-        if ( tags == null )
-        {
-            tags = new TreeSet<>();
-        }
-
-        return tags;
+        return new Tags();
     }
 
     /**
-     * Set all the link's tags.
+     * Set all the link's tags. The tags are copied.
      *
      * @param tags The tags
      */
     public void setTags( final Set<String> tags )
     {
-        this.tags = tags;
+        tagCodes = NO_TAGS;
+
+        if ( tags != null )
+        {
+            for ( final String tag : tags )
+            {
+                addTag( tag );
+            }
+        }
     }
 
     /**
@@ -236,7 +251,7 @@ public class ShaarliLink
      */
     public void addTag( final String tag )
     {
-        getTags().add( tag );
+        addTagCode( dictionary.intern( tag ) );
     }
 
     @Override
@@ -249,7 +264,13 @@ public class ShaarliLink
         hash = 97 * hash + Objects.hashCode( this.description );
         hash = 97 * hash + Objects.hashCode( this.url );
         hash = 97 * hash + ( this.restricted ? 1 : 0 );
-        hash = 97 * hash + Objects.hashCode( this.tags );
+        // Same hash whatever the dictionary
+        int tagsHash = 0;
+        for ( final int code : this.tagCodes )
+        {
+            tagsHash += dictionary.getName( code ).hashCode();
+        }
+        hash = 97 * hash + tagsHash;
         return hash;
     }
 
@@ -302,8 +323,15 @@ public class ShaarliLink
             return false;
         }
 
-        if ( !Objects.equals( this.tags ,
-                              other.tags ) )
+        if ( this.dictionary == other.dictionary )
+        {
+            if ( !Arrays.equals( this.tagCodes ,
+                                 other.tagCodes ) )
+            {
+                return false;
+            }
+        }
+        else if ( !getTags().equals( other.getTags() ) )
         {
             return false;
         }
@@ -314,15 +342,295 @@ public class ShaarliLink
     @Override
     public String toString()
     {
-        return "Link{" + "ID=" + ID + ", permaID=" + permaID + ", title=" + title + ", description=" + description + ", url=" + url + ", restricted=" + restricted + ", tags=" + tags + '}';
+        return "Link{" + "ID=" + ID + ", permaID=" + permaID + ", title=" + title + ", description=" + description + ", url=" + url + ", restricted=" + restricted + ", tags=" + getTags() + '}';
+    }
+
+    // DEFAULT
+    /**
+     * Construct a link which uses a tag dictionary.
+     *
+     * @param ID Link's ID
+     * @param permaID ID of permalink
+     * @param title Link's title
+     * @param description Link's description
+     * @param url Link's URL
+     * @param restricted Is the link private ?
+     * @param dictionary Dictionary of the tags
+     */
+    ShaarliLink( final String ID ,
+                 final String permaID ,
+                 final String title ,
+                 final String description ,
+                 final String url ,
+                 final boolean restricted ,
+                 final ShaarliTagDictionary dictionary )
+    {
+        if ( dictionary == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.ID = ID;
+        this.permaID = permaID;
+        this.title = title;
+        this.description = description;
+        this.url = url;
+        this.restricted = restricted;
+        this.dictionary = dictionary;
+        this.tagCodes = NO_TAGS;
+    }
+
+    /**
+     * Get the dictionary of the tag codes.
+     *
+     * @return the dictionary
+     */
+    ShaarliTagDictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+    /**
+     * Get the codes of the link's tags in its dictionary.
+     *
+     * @return the codes, sorted (the array is not copied: don't modify it)
+     */
+    int[] getTagCodes()
+    {
+        return tagCodes;
     }
+
+    /**
+     * Add a tag by its code in the link's dictionary.
+     *
+     * @param code the tag code
+     */
+    void addTagCode( final int code )
+    {
+        final int pos = Arrays.binarySearch( tagCodes ,
+                                             code );
+        if ( pos >= 0 )
+        {
+            return;
+        }
+
+        final int insert = -pos - 1;
+        final int[] codes = new int[ tagCodes.length + 1 ];
+        System.arraycopy( tagCodes ,
+                          0 ,
+                          codes ,
+                          0 ,
+                          insert );
+        codes[insert] = code;
+        System.arraycopy( tagCodes ,
+                          insert ,
+                          codes ,
+                          insert + 1 ,
+                          tagCodes.length - insert );
+
+        tagCodes = codes;
+    }
+
     // PRIVATE
     private static final long serialVersionUID = 12392964032234123L;
+    private static final int[] NO_TAGS = new int[ 0 ];
+    // Same serialized form as before the tag dictionary: tags are a set of names
+    private static final ObjectStreamField[] serialPersistentFields =
+    {
+        new ObjectStreamField( "ID" ,
+                               String.class ) ,
+        new ObjectStreamField( "permaID" ,
+                               String.class ) ,
+        new ObjectStreamField( "title" ,
+                               String.class ) ,
+        new ObjectStreamField( "description" ,
+                               String.class ) ,
+        new ObjectStreamField( "url" ,
+                               String.class ) ,
+        new ObjectStreamField( "restricted" ,
+                               boolean.class ) ,
+        new ObjectStreamField( "tags" ,
+                               Set.class )
+    };
     private String ID;
     private String permaID;
     private String title;
     private String description;
     private String url;
     private boolean restricted;
-    private Set<String> tags;
+    private ShaarliTagDictionary dictionary;
+    private int[] tagCodes;
+
+    private void writeObject( final ObjectOutputStream out )
+        throws IOException
+    {
+        final ObjectOutputStream.PutField fields = out.putFields();
+        fields.put( "ID" ,
+                    ID );
+        fields.put( "permaID" ,
+                    permaID );
+        fields.put( "title" ,
+                    title );
+        fields.put( "description" ,
+                    description );
+        fields.put( "url" ,
+                    url );
+        fields.put( "restricted" ,
+                    restricted );
+        fields.put( "tags" ,
+                    tagCodes.length > 0 ? new TreeSet<>( getTags() ) : null );
+        out.writeFields();
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void readObject( final ObjectInputStream in )
+        throws IOException , ClassNotFoundException
+    {
+        final ObjectInputStream.GetField fields = in.readFields();
+        ID = (String) fields.get( "ID" ,
+                                  null );
+        permaID = (String) fields.get( "permaID" ,
+                                       null );
+        title = (String) fields.get( "title" ,
+                                     null );
+        description = (String) fields.get( "description" ,
+                                           null );
+        url = (String) fields.get( "url" ,
+                                   null );
+        restricted = fields.get( "restricted" ,
+                                 false );
+
+        dictionary = ShaarliTagDictionary.getDefault();
+        setTags( (Set<String>) fields.get( "tags" ,
+                                           null ) );
+    }
+
+    /**
+     * View of the tag codes, sorted by name.
+     */
+    private final class Tags
+        extends AbstractSet<String>
+    {
+        // PUBLIC
+        @Override
+        public int size()
+        {
+            return tagCodes.length;
+        }
+
+        @Override
+        public boolean contains( final Object o )
+        {
+            if ( !( o instanceof String ) )
+            {
+                return false;
+            }
+
+            final int code = dictionary.lookup( (String) o );
+
+            return code >= 0 && Arrays.binarySearch( tagCodes ,
+                                                     code ) >= 0;
+        }
+
+        @Override
+        public boolean add( final String tag )
+        {
+            final int size = tagCodes.length;
+
+            addTag( tag );
+
+            return tagCodes.length != size;
+        }
+
+        @Override
+        public boolean remove( final Object o )
+        {
+            if ( !( o instanceof String ) )
+            {
+                return false;
+            }
+
+            final int pos = Arrays.binarySearch( tagCodes ,
+                                                 dictionary.lookup( (String) o ) );
+            if ( pos < 0 )
+            {
+                return false;
+            }
+
+            removeAt( pos );
+
+            return true;
+        }
+
+        @Override
+        public void clear()
+        {
+            tagCodes = NO_TAGS;
+        }
+
+        @Override
+        public Iterator<String> iterator()
+        {
+            // Names are sorted once: tags are few
+            final String[] names = new String[ tagCodes.length ];
+            for ( int i = 0 ; i < names.length ; ++i )
+            {
+                names[i] = dictionary.getName( tagCodes[i] );
+            }
+            Arrays.sort( names );
+
+            return new Iterator<String>()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return next < names.length;
+                }
+
+                @Override
+                public String next()
+                {
+                    if ( next >= names.length )
+                    {
+                        throw new NoSuchElementException();
+                    }
+
+                    return names[next++];
+                }
+
+                @Override
+                public void remove()
+                {
+                    if ( next <= 0 || names[next - 1] == null )
+                    {
+                        throw new IllegalStateException();
+                    }
+
+                    Tags.this.remove( names[next - 1] );
+                    names[next - 1] = null;
+                }
+
+                // PRIVATE
+                private int next;
+            };
+        }
+
+        // PRIVATE
+        private void removeAt( final int pos )
+        {
+            final int[] codes = new int[ tagCodes.length - 1 ];
+            System.arraycopy( tagCodes ,
+                              0 ,
+                              codes ,
+                              0 ,
+                              pos );
+            System.arraycopy( tagCodes ,
+                              pos + 1 ,
+                              codes ,
+                              pos ,
+                              codes.length - pos );
+
+            tagCodes = codes;
+        }
+    }
 }
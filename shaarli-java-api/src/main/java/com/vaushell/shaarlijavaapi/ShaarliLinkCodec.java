@@ -0,0 +1,775 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary codec of links, faster and smaller than Java serialization. A stream is:
+ * <ul>
+ * <li>a header: magic number and version ;</li>
+ * <li>links: flags (private, has ID), ID as packed varint (yyyyMMddHHmmss), permalink ID, title, description and URL
+ * as strings, tags (see ShaarliBinary) ;</li>
+ * <li>an end marker.</li>
+ * </ul>
+ * A tag is written once by stream: then it is a varint reference. References are local to the stream, so streams don't
+ * depend on the dictionaries of the process which wrote them.
+ *
+ * The link store keeps each link as a link record alone (see encodeLink()).
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public final class ShaarliLinkCodec
+{
+    // PUBLIC
+    /**
+     * Encode links in a buffer.
+     *
+     * @param links the links
+     * @return the buffer, ready to be read
+     */
+    public static ByteBuffer encode( final Iterable<ShaarliLink> links )
+    {
+        if ( links == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try( final Writer writer = new Writer( Channels.newChannel( bos ) ) )
+        {
+            writer.write( links.iterator() );
+        }
+        catch( final IOException ex )
+        {
+            // Not possible in memory
+            throw new IllegalStateException( ex );
+        }
+
+        return ByteBuffer.wrap( bos.toByteArray() );
+    }
+
+    /**
+     * Decode links from a buffer.
+     *
+     * @param buffer the buffer (read from its position)
+     * @return the links
+     * @throws IOException if the buffer is not a complete links stream
+     */
+    public static List<ShaarliLink> decode( final ByteBuffer buffer )
+        throws IOException
+    {
+        if ( buffer == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final List<ShaarliLink> links = new ArrayList<>();
+        try( final Reader reader = new Reader( buffer ) )
+        {
+            while ( reader.hasNext() )
+            {
+                links.add( reader.next() );
+            }
+
+            if ( reader.getError() != null )
+            {
+                throw reader.getError();
+            }
+
+            if ( !reader.isComplete() )
+            {
+                throw new IOException( "Truncated links stream" );
+            }
+        }
+
+        return links;
+    }
+
+    /**
+     * Encode a link alone: a link record, without header nor end marker. Its tags are written by name.
+     *
+     * @param link the link
+     * @return the record
+     */
+    static byte[] encodeLink( final ShaarliLink link )
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream( 256 );
+        try
+        {
+            final Writer writer = new Writer( Channels.newChannel( bos ) ,
+                                              LINK_BUFFER_SIZE );
+            writer.write( link );
+            writer.flush();
+        }
+        catch( final IOException ex )
+        {
+            // Not possible in memory
+            throw new IllegalStateException( ex );
+        }
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * Decode a link encoded by encodeLink().
+     *
+     * @param buffer the record (read from its position)
+     * @param dictionary Dictionary of the link's tags
+     * @return the link
+     * @throws IOException if the buffer is not a link record
+     */
+    static ShaarliLink decodeLink( final ByteBuffer buffer ,
+                                   final ShaarliTagDictionary dictionary )
+        throws IOException
+    {
+        final ShaarliLink link = new Reader( null ,
+                                             Reader.slice( buffer ) ,
+                                             dictionary ).readLink();
+        if ( link == null )
+        {
+            throw new IOException( "Not a link record" );
+        }
+
+        return link;
+    }
+
+    /**
+     * Write links to a channel. Close the writer to write the end marker. If a write failed, the end marker is not
+     * written: the stream is read as truncated.
+     */
+    public static final class Writer
+        implements AutoCloseable
+    {
+        // PUBLIC
+        /**
+         * Construct a writer and write the header.
+         *
+         * @param channel Output channel (not closed by the writer)
+         * @throws IOException
+         */
+        public Writer( final WritableByteChannel channel )
+            throws IOException
+        {
+            this( channel ,
+                  BUFFER_SIZE );
+
+            buffer.putInt( MAGIC );
+            buffer.put( VERSION );
+        }
+
+        /**
+         * Write a link.
+         *
+         * @param link the link
+         * @throws IOException
+         */
+        public void write( final ShaarliLink link )
+            throws IOException
+        {
+            if ( link == null )
+            {
+                throw new IllegalArgumentException();
+            }
+
+            // Checked before anything is written
+            final long packedID = link.getID() == null ? -1L : ShaarliBinary.packID( link.getID() );
+
+            try
+            {
+                writeLink( link ,
+                           packedID );
+            }
+            catch( final IOException | RuntimeException ex )
+            {
+                failed = true;
+
+                throw ex;
+            }
+        }
+
+        /**
+         * Write links.
+         *
+         * @param links the links
+         * @return Number of written links
+         * @throws IOException
+         */
+        public int write( final Iterator<ShaarliLink> links )
+            throws IOException
+        {
+            if ( links == null )
+            {
+                throw new IllegalArgumentException();
+            }
+
+            int count = 0;
+            try
+            {
+                while ( links.hasNext() )
+                {
+                    write( links.next() );
+                    ++count;
+                }
+            }
+            catch( final IOException | RuntimeException ex )
+            {
+                failed = true;
+
+                throw ex;
+            }
+
+            return count;
+        }
+
+        /**
+         * Write the end marker (if all writes succeeded) and flush.
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close()
+            throws IOException
+        {
+            if ( closed )
+            {
+                return;
+            }
+            closed = true;
+
+            if ( !failed )
+            {
+                writeByte( RECORD_END );
+            }
+            flush();
+        }
+
+        // PRIVATE
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+        // Tag names to stream references (links may use different dictionaries)
+        private final Map<String , Integer> tags;
+        private boolean closed;
+        private boolean failed;
+
+        private Writer( final WritableByteChannel channel ,
+                        final int bufferSize )
+        {
+            if ( channel == null )
+            {
+                throw new IllegalArgumentException();
+            }
+
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate( bufferSize );
+            this.tags = new HashMap<>();
+        }
+
+        private void writeLink( final ShaarliLink link ,
+                                final long packedID )
+            throws IOException
+        {
+            int flags = 0;
+            if ( link.isRestricted() )
+            {
+                flags |= FLAG_RESTRICTED;
+            }
+            if ( link.getID() != null )
+            {
+                flags |= FLAG_ID;
+            }
+
+            writeByte( RECORD_LINK );
+            writeByte( flags );
+
+            if ( link.getID() != null )
+            {
+                writeVarlong( packedID );
+            }
+
+            writeString( link.getPermaID() );
+            writeString( link.getTitle() );
+            writeString( link.getDescription() );
+            writeString( link.getUrl() );
+
+            final ShaarliTagDictionary dictionary = link.getDictionary();
+            final int[] codes = link.getTagCodes();
+            writeVarlong( codes.length );
+            for ( final int code : codes )
+            {
+                final String name = dictionary.getName( code );
+                final Integer ref = tags.get( name );
+                if ( ref == null )
+                {
+                    // New tag: 0 then its name
+                    tags.put( name ,
+                              tags.size() );
+                    writeVarlong( 0L );
+                    writeString( name );
+                }
+                else
+                {
+                    writeVarlong( ref + 1L );
+                }
+            }
+        }
+
+        private void flush()
+            throws IOException
+        {
+            buffer.flip();
+            while ( buffer.hasRemaining() )
+            {
+                channel.write( buffer );
+            }
+            buffer.clear();
+        }
+
+        private void writeByte( final int b )
+            throws IOException
+        {
+            if ( !buffer.hasRemaining() )
+            {
+                flush();
+            }
+
+            buffer.put( (byte) b );
+        }
+
+        private void writeVarlong( final long value )
+            throws IOException
+        {
+            if ( buffer.remaining() < ShaarliBinary.MAX_VARINT_SIZE )
+            {
+                flush();
+            }
+
+            ShaarliBinary.putVarint( buffer ,
+                                     value );
+        }
+
+        private void writeString( final String str )
+            throws IOException
+        {
+            final byte[] bytes = str == null ? null : str.getBytes( ShaarliBinary.UTF8 );
+
+            if ( buffer.remaining() < ShaarliBinary.MAX_VARINT_SIZE )
+            {
+                flush();
+            }
+            ShaarliBinary.putStringLength( buffer ,
+                                           bytes );
+            if ( bytes == null )
+            {
+                return;
+            }
+
+            // Strings could be larger than the buffer
+            int offset = 0;
+            while ( offset < bytes.length )
+            {
+                if ( !buffer.hasRemaining() )
+                {
+                    flush();
+                }
+
+                final int length = Math.min( buffer.remaining() ,
+                                              bytes.length - offset );
+                buffer.put( bytes ,
+                            offset ,
+                            length );
+                offset += length;
+            }
+        }
+    }
+
+    /**
+     * Read links from a channel or a buffer, one by one.
+     */
+    public static final class Reader
+        implements ShaarliIterator<ShaarliLink>
+    {
+        // PUBLIC
+        /**
+         * Construct a reader and read the header.
+         *
+         * @param channel Input channel (closed with the reader)
+         * @throws IOException if the stream is not a links stream
+         */
+        public Reader( final ReadableByteChannel channel )
+            throws IOException
+        {
+            this( channel ,
+                  ByteBuffer.allocate( BUFFER_SIZE ) ,
+                  new ShaarliTagDictionary() );
+
+            buffer.flip();
+            readHeader();
+        }
+
+        /**
+         * Construct a reader over a buffer and read the header.
+         *
+         * @param buffer the buffer (read from its position)
+         * @throws IOException if the buffer is not a links stream
+         */
+        public Reader( final ByteBuffer buffer )
+            throws IOException
+        {
+            this( null ,
+                  slice( buffer ) ,
+                  new ShaarliTagDictionary() );
+
+            readHeader();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if ( next == null && !finished )
+            {
+                try
+                {
+                    next = readLink();
+                }
+                catch( final IOException ex )
+                {
+                    LOGGER.error( "Cannot read links" ,
+                                  ex );
+
+                    error = ex;
+                    close();
+                }
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public ShaarliLink next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+
+            final ShaarliLink link = next;
+            next = null;
+
+            return link;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Is the end marker read ? A stream which ends without it is truncated.
+         *
+         * @return true if all links are read
+         */
+        public boolean isComplete()
+        {
+            return complete;
+        }
+
+        /**
+         * Return the error which stopped the reading.
+         *
+         * @return the error, or null if the stream was read without error
+         */
+        public IOException getError()
+        {
+            return error;
+        }
+
+        @Override
+        public void close()
+        {
+            finished = true;
+            next = null;
+
+            if ( channel != null )
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch( final IOException ex )
+                {
+                    LOGGER.error( "Cannot close links stream" ,
+                                  ex );
+                }
+            }
+        }
+
+        // PRIVATE
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+        // Tags of the links read: released with them
+        private final ShaarliTagDictionary dictionary;
+        // Stream references to dictionary codes
+        private final List<Integer> tags;
+        private ShaarliLink next;
+        private boolean finished;
+        private boolean complete;
+        private IOException error;
+
+        private Reader( final ReadableByteChannel channel ,
+                        final ByteBuffer buffer ,
+                        final ShaarliTagDictionary dictionary )
+        {
+            if ( buffer == null || dictionary == null )
+            {
+                throw new IllegalArgumentException();
+            }
+
+            this.channel = channel;
+            this.buffer = buffer;
+            this.dictionary = dictionary;
+            this.tags = new ArrayList<>();
+        }
+
+        private static ByteBuffer slice( final ByteBuffer buffer )
+        {
+            if ( buffer == null )
+            {
+                throw new IllegalArgumentException();
+            }
+
+            return buffer.slice();
+        }
+
+        private void readHeader()
+            throws IOException
+        {
+            fill( 5 );
+
+            if ( buffer.getInt() != MAGIC )
+            {
+                throw new IOException( "Not a links stream" );
+            }
+
+            final byte version = buffer.get();
+            if ( version != VERSION )
+            {
+                throw new IOException( "Unsupported links stream version: " + version );
+            }
+        }
+
+        private ShaarliLink readLink()
+            throws IOException
+        {
+            fill( 1 );
+            final byte record = buffer.get();
+            if ( record == RECORD_END )
+            {
+                complete = true;
+                close();
+
+                return null;
+            }
+            else if ( record != RECORD_LINK )
+            {
+                throw new IOException( "Unknown record: " + record );
+            }
+
+            fill( 1 );
+            final byte flags = buffer.get();
+
+            final String ID;
+            if ( ( flags & FLAG_ID ) != 0 )
+            {
+                ID = ShaarliBinary.unpackID( readVarlong() );
+            }
+            else
+            {
+                ID = null;
+            }
+
+            final ShaarliLink link = new ShaarliLink( ID ,
+                                                      readString() ,
+                                                      readString() ,
+                                                      readString() ,
+                                                      readString() ,
+                                                      ( flags & FLAG_RESTRICTED ) != 0 ,
+                                                      dictionary );
+
+            final long tagsCount = readVarlong();
+            for ( long i = 0 ; i < tagsCount ; ++i )
+            {
+                final long ref = readVarlong();
+                if ( ref == 0L )
+                {
+                    final int code = dictionary.intern( readString() );
+                    tags.add( code );
+                    link.addTagCode( code );
+                }
+                else if ( ref <= tags.size() )
+                {
+                    link.addTagCode( tags.get( (int) ( ref - 1L ) ) );
+                }
+                else
+                {
+                    throw new IOException( "Unknown tag reference: " + ref );
+                }
+            }
+
+            return link;
+        }
+
+        /**
+         * Make sure the buffer contains some bytes.
+         */
+        private void fill( final int length )
+            throws IOException
+        {
+            if ( !fetch( length ) )
+            {
+                throw new EOFException( "Truncated links stream" );
+            }
+        }
+
+        /**
+         * Read from the channel until the buffer contains some bytes.
+         *
+         * @return false if the stream ends before
+         */
+        private boolean fetch( final int length )
+            throws IOException
+        {
+            if ( buffer.remaining() >= length )
+            {
+                return true;
+            }
+
+            if ( channel == null )
+            {
+                return false;
+            }
+
+            buffer.compact();
+            try
+            {
+                while ( buffer.position() < length )
+                {
+                    if ( channel.read( buffer ) < 0 )
+                    {
+                        return false;
+                    }
+                }
+            }
+            finally
+            {
+                buffer.flip();
+            }
+
+            return true;
+        }
+
+        private long readVarlong()
+            throws IOException
+        {
+            // A varint could be shorter, at the end of the stream
+            fetch( ShaarliBinary.MAX_VARINT_SIZE );
+
+            return ShaarliBinary.getVarint( buffer );
+        }
+
+        private String readString()
+            throws IOException
+        {
+            fetch( ShaarliBinary.MAX_VARINT_SIZE );
+
+            if ( channel == null )
+            {
+                return ShaarliBinary.getString( buffer );
+            }
+
+            final int length = ShaarliBinary.getStringLength( buffer );
+            if ( length < 0 )
+            {
+                return null;
+            }
+
+            // Decode in place when the string is in the buffer
+            if ( buffer.remaining() >= length )
+            {
+                final String str = new String( buffer.array() ,
+                                               buffer.arrayOffset() + buffer.position() ,
+                                               length ,
+                                               ShaarliBinary.UTF8 );
+                buffer.position( buffer.position() + length );
+
+                return str;
+            }
+
+            final byte[] bytes = new byte[ length ];
+
+            int offset = 0;
+            while ( offset < bytes.length )
+            {
+                fill( 1 );
+
+                final int chunk = Math.min( buffer.remaining() ,
+                                            bytes.length - offset );
+                buffer.get( bytes ,
+                            offset ,
+                            chunk );
+                offset += chunk;
+            }
+
+            return new String( bytes ,
+                               ShaarliBinary.UTF8 );
+        }
+    }
+
+    // PRIVATE
+    private static final Logger LOGGER = LoggerFactory.getLogger( ShaarliLinkCodec.class );
+    private static final int MAGIC = 0x53484C43;
+    private static final byte VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LINK_BUFFER_SIZE = 1024;
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_LINK = 1;
+    private static final int FLAG_RESTRICTED = 0x01;
+    private static final int FLAG_ID = 0x02;
+
+    private ShaarliLinkCodec()
+    {
+        // Nothing
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.vaushell.shaarlijavaapi.ShaarliTemplates.Key;
+import com.vaushell.shaarlijavaapi.ShaarliTemplates.Template;
+import java.util.ArrayList;
+import java.util.List;
+import org.jsoup.nodes.Element;
+
+/**
+ * Extract all the fields of a link element. The links-* templates are resolved once, when the extractor is built, and
+ * each field is selected with its CSS path.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliLinkExtractor
+{
+    // DEFAULT
+    static final int PRIVATE = 0;
+    static final int ID = 1;
+    static final int PERMALINK_ID = 2;
+    static final int TITLE = 3;
+    static final int DESCRIPTION = 4;
+    static final int URL = 5;
+
+    ShaarliLinkExtractor( final ShaarliTemplates.Compiled compiled )
+    {
+        if ( compiled == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.fields = new Template[ FIELDS.length ];
+        for ( int i = 0 ; i < FIELDS.length ; ++i )
+        {
+            fields[i] = compiled.get( FIELDS[i] );
+        }
+
+        this.tags = compiled.get( Key.TAGS );
+        this.tag = compiled.get( Key.TAGS_TAG );
+    }
+
+    /**
+     * Extract the fields of a link.
+     *
+     * @param root The link element
+     * @return the fields (indexed by PRIVATE, ID, etc.) and the tags
+     */
+    Result extract( final Element root )
+    {
+        if ( root == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final String[] values = new String[ fields.length ];
+        for ( int i = 0 ; i < fields.length ; ++i )
+        {
+            values[i] = fields[i].extract( root );
+        }
+
+        final List<String> tagValues = new ArrayList<>();
+        for ( final Element eltTag : tags.select( root ) )
+        {
+            final String value = tag.extract( eltTag );
+            if ( value != null )
+            {
+                tagValues.add( value );
+            }
+        }
+
+        return new Result( values ,
+                           tagValues );
+    }
+
+    /**
+     * Fields of a link.
+     */
+    static final class Result
+    {
+        // DEFAULT
+        final String[] values;
+        final List<String> tags;
+
+        Result( final String[] values ,
+                final List<String> tags )
+        {
+            this.values = values;
+            this.tags = tags;
+        }
+    }
+
+    // PRIVATE
+    private static final Key[] FIELDS =
+    {
+        Key.LINKS_PRIVATE , Key.LINKS_ID , Key.LINKS_PERMALINK_ID , Key.LINKS_TITLE , Key.LINKS_DESCRIPTION , Key.LINKS_URL
+    };
+    private final Template[] fields;
+    private final Template tags;
+    private final Template tag;
+}
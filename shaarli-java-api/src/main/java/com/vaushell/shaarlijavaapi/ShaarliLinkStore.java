@@ -0,0 +1,518 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent store of links, in an append-only memory-mapped file. Each put or delete appends a record: the file is
+ * reopened by reading the record headers only. The index maps the link ID (yyyyMMdd_HHmmss, packed in a long) to the
+ * offset of its last record. Replaced and deleted records stay in the file until compact() is called.
+ *
+ * A record is its size, its type, the packed ID and, for a put, the link encoded by ShaarliLinkCodec.
+ *
+ * Writes are serialized. A write copies the record beyond the end of the file, then publishes the mapping and the index
+ * under a write lock: readers hold the read lock and always see a mapping that contains every indexed offset.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliLinkStore
+    implements AutoCloseable
+{
+    // PUBLIC
+    /**
+     * Open the store (created if it doesn't exist).
+     *
+     * @param file Store file
+     * @throws IOException
+     */
+    public ShaarliLinkStore( final File file )
+        throws IOException
+    {
+        if ( file == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.file = file;
+        this.lock = new ReentrantReadWriteLock();
+        this.dictionary = new ShaarliTagDictionary();
+        this.appendLock = new Object();
+
+        open();
+    }
+
+    /**
+     * Store a link (replace the link with the same ID).
+     *
+     * @param link the link (with an ID)
+     * @throws IOException
+     */
+    public void put( final ShaarliLink link )
+        throws IOException
+    {
+        if ( link == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final long ID = ShaarliBinary.packID( link.getID() );
+
+        append( encode( TYPE_PUT ,
+                        ID ,
+                        link ) ,
+                ID ,
+                true );
+    }
+
+    /**
+     * Delete a link.
+     *
+     * @param ID the link ID
+     * @return true if the link was stored
+     * @throws IOException
+     */
+    public boolean delete( final String ID )
+        throws IOException
+    {
+        final long packed = ShaarliBinary.packID( ID );
+
+        return append( encode( TYPE_DELETE ,
+                               packed ,
+                               null ) ,
+                       packed ,
+                       false );
+    }
+
+    /**
+     * Read a link.
+     *
+     * @param ID the link ID
+     * @return the link, or null if not stored
+     */
+    public ShaarliLink get( final String ID )
+    {
+        final long packed = ShaarliBinary.packID( ID );
+
+        lock.readLock().lock();
+        try
+        {
+            final Long offset = index.get( packed );
+            if ( offset == null )
+            {
+                return null;
+            }
+
+            return decode( mapped ,
+                           offset );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read all links, newest first.
+     *
+     * @return the links
+     */
+    public List<ShaarliLink> getLinks()
+    {
+        lock.readLock().lock();
+        try
+        {
+            final List<ShaarliLink> links = new ArrayList<>( index.size() );
+            for ( final Long offset : index.values() )
+            {
+                links.add( decode( mapped ,
+                                   offset ) );
+            }
+
+            return links;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the stored IDs, newest first.
+     *
+     * @return the IDs
+     */
+    public List<String> getIDs()
+    {
+        lock.readLock().lock();
+        try
+        {
+            final List<String> IDs = new ArrayList<>( index.size() );
+            for ( final Long ID : index.keySet() )
+            {
+                IDs.add( ShaarliBinary.unpackID( ID ) );
+            }
+
+            return IDs;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of links.
+     *
+     * @return the links count
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return index.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of bytes used by replaced and deleted records.
+     *
+     * @return the garbage size
+     */
+    public long getGarbage()
+    {
+        synchronized( appendLock )
+        {
+            return garbage;
+        }
+    }
+
+    /**
+     * Rewrite the file with the live records only. Readers wait during the file swap.
+     *
+     * @throws IOException
+     */
+    public void compact()
+        throws IOException
+    {
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug( "[" + getClass().getSimpleName() + "] compact() : garbage=" + getGarbage() );
+        }
+
+        synchronized( appendLock )
+        {
+            final File compacted = new File( file.getPath() + ".compact" );
+
+            try( final RandomAccessFile raf = new RandomAccessFile( compacted ,
+                                                                    "rw" ) )
+            {
+                raf.setLength( 0L );
+
+                final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+                header.putInt( MAGIC ).putInt( VERSION ).putLong( 0L ).flip();
+                raf.getChannel().write( header );
+
+                long position = HEADER_SIZE;
+                final ByteBuffer source = mapped.duplicate();
+                for ( final Long value : index.values() )
+                {
+                    final int offset = (int) (long) value;
+                    final int length = RECORD_HEADER_SIZE + source.getInt( offset );
+
+                    source.limit( offset + length ).position( offset );
+                    while ( source.hasRemaining() )
+                    {
+                        raf.getChannel().write( source );
+                    }
+                    source.limit( source.capacity() );
+                    position += length;
+                }
+
+                raf.seek( 8L );
+                raf.writeLong( position );
+                raf.getChannel().force( true );
+            }
+
+            lock.writeLock().lock();
+            try
+            {
+                channel.close();
+
+                Files.move( compacted.toPath() ,
+                            file.toPath() ,
+                            StandardCopyOption.REPLACE_EXISTING );
+
+                open();
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Write the changes to the disk.
+     */
+    public void flush()
+    {
+        synchronized( appendLock )
+        {
+            mapped.force();
+        }
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        synchronized( appendLock )
+        {
+            mapped.force();
+            channel.close();
+        }
+    }
+
+    // PRIVATE
+    private static final Logger LOGGER = LoggerFactory.getLogger( ShaarliLinkStore.class );
+    private static final int MAGIC = 0x53484C53;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 4;
+    // Type and packed ID
+    private static final int RECORD_KEY_SIZE = 9;
+    private static final int INITIAL_CAPACITY = 1024 * 1024;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private final File file;
+    private final ReadWriteLock lock;
+    private final Object appendLock;
+    // Tags of the links read from the store
+    private final ShaarliTagDictionary dictionary;
+    private TreeMap<Long , Long> index;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long end;
+    private long garbage;
+
+    /**
+     * Map the file and read the records headers to build a new index. The index and the mapping are replaced at the
+     * end: the caller holds the write lock if readers could be running.
+     *
+     * @throws IOException
+     */
+    private void open()
+        throws IOException
+    {
+        channel = new RandomAccessFile( file ,
+                                        "rw" ).getChannel();
+
+        final boolean created = channel.size() < HEADER_SIZE;
+
+        final MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_WRITE ,
+                                                     0L ,
+                                                     Math.max( channel.size() ,
+                                                               INITIAL_CAPACITY ) );
+        if ( created )
+        {
+            buffer.putInt( 0 ,
+                           MAGIC );
+            buffer.putInt( 4 ,
+                           VERSION );
+            buffer.putLong( 8 ,
+                            HEADER_SIZE );
+        }
+        else if ( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION )
+        {
+            channel.close();
+
+            throw new IOException( "Not a link store: " + file );
+        }
+
+        final TreeMap<Long , Long> newIndex = new TreeMap<>( Collections.<Long>reverseOrder() );
+        long newGarbage = 0L;
+
+        final long last = buffer.getLong( 8 );
+        long offset = HEADER_SIZE;
+        while ( offset < last )
+        {
+            final int size = buffer.getInt( (int) offset );
+            final byte type = buffer.get( (int) offset + RECORD_HEADER_SIZE );
+            final long ID = buffer.getLong( (int) offset + RECORD_HEADER_SIZE + 1 );
+            final long length = RECORD_HEADER_SIZE + size;
+
+            final Long previous;
+            if ( type == TYPE_PUT )
+            {
+                previous = newIndex.put( ID ,
+                                         offset );
+            }
+            else
+            {
+                previous = newIndex.remove( ID );
+                newGarbage += length;
+            }
+
+            if ( previous != null )
+            {
+                newGarbage += RECORD_HEADER_SIZE + buffer.getInt( (int) (long) previous );
+            }
+
+            offset += length;
+        }
+
+        index = newIndex;
+        garbage = newGarbage;
+        end = last;
+        mapped = buffer;
+    }
+
+    /**
+     * Append a record. The index is updated once the record is written.
+     *
+     * @return false if the link to delete isn't stored
+     */
+    private boolean append( final byte[] record ,
+                            final long ID ,
+                            final boolean put )
+        throws IOException
+    {
+        synchronized( appendLock )
+        {
+            // Only writers change the index, and they hold the append lock
+            if ( !put && !index.containsKey( ID ) )
+            {
+                return false;
+            }
+
+            final long newEnd = end + record.length;
+            if ( newEnd > Integer.MAX_VALUE )
+            {
+                throw new IOException( "Link store is full: compact it" );
+            }
+
+            MappedByteBuffer buffer = mapped;
+            if ( newEnd > buffer.capacity() )
+            {
+                // Readers keep the previous mapping until the new one is published
+                buffer = channel.map( FileChannel.MapMode.READ_WRITE ,
+                                      0L ,
+                                      Math.min( Integer.MAX_VALUE ,
+                                                Math.max( newEnd ,
+                                                          2L * buffer.capacity() ) ) );
+            }
+
+            // Beyond the end: no reader looks at it yet
+            final ByteBuffer target = buffer.duplicate();
+            target.position( (int) end );
+            target.put( record );
+
+            lock.writeLock().lock();
+            try
+            {
+                mapped = buffer;
+
+                buffer.putLong( 8 ,
+                                newEnd );
+                end = newEnd;
+
+                final Long previous;
+                if ( put )
+                {
+                    previous = index.put( ID ,
+                                          newEnd - record.length );
+                }
+                else
+                {
+                    previous = index.remove( ID );
+                    garbage += record.length;
+                }
+
+                if ( previous != null )
+                {
+                    garbage += RECORD_HEADER_SIZE + buffer.getInt( (int) (long) previous );
+                }
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+
+            return true;
+        }
+    }
+
+    private static byte[] encode( final byte type ,
+                                  final long ID ,
+                                  final ShaarliLink link )
+    {
+        final byte[] body = link == null ? new byte[ 0 ] : ShaarliLinkCodec.encodeLink( link );
+
+        final ByteBuffer record = ByteBuffer.allocate( RECORD_HEADER_SIZE + RECORD_KEY_SIZE + body.length );
+        record.putInt( RECORD_KEY_SIZE + body.length );
+        record.put( type );
+        record.putLong( ID );
+        record.put( body );
+
+        return record.array();
+    }
+
+    private ShaarliLink decode( final ByteBuffer source ,
+                                final long offset )
+    {
+        final int start = (int) offset + RECORD_HEADER_SIZE;
+
+        final ByteBuffer buffer = source.duplicate();
+        buffer.limit( start + source.getInt( (int) offset ) );
+        buffer.position( start + RECORD_KEY_SIZE );
+
+        try
+        {
+            return ShaarliLinkCodec.decodeLink( buffer ,
+                                                dictionary );
+        }
+        catch( final IOException ex )
+        {
+            throw new IllegalStateException( "Corrupted link store: " + file ,
+                                             ex );
+        }
+    }
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar table of links, for very large collections. Rows are stored in primitive columns:
+ * <ul>
+ * <li>IDs as packed longs (see ShaarliBinary) ;</li>
+ * <li>private flags in a bitset ;</li>
+ * <li>tags as codes of the table's tag dictionary (see getDictionary()), in one int array ;</li>
+ * <li>permalink IDs, titles, descriptions and URLs as strings (see ShaarliBinary), in one byte array.</li>
+ * </ul>
+ * Links are only built when they are read (get() or iterator()). Rows are appended: the table is filled by a scan,
+ * directly from an iterator or as a visitor of a parallel scan.
+ *
+ * Thread-safe.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliLinkTable
+    implements ShaarliLinkVisitor , Iterable<ShaarliLink>
+{
+    // PUBLIC
+    /**
+     * Construct a table for 1024 links (it grows when needed).
+     */
+    public ShaarliLinkTable()
+    {
+        this( 1024 );
+    }
+
+    /**
+     * Construct a table.
+     *
+     * @param capacity Expected number of links
+     */
+    public ShaarliLinkTable( final int capacity )
+    {
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException( "capacity must be greater or equals to 1" );
+        }
+
+        this.IDs = new long[ capacity ];
+        this.restricted = new BitSet( capacity );
+        this.tagStarts = new int[ capacity + 1 ];
+        this.tags = new int[ capacity * 4 ];
+        this.strings = new int[ capacity * STRINGS ];
+        this.bytes = new byte[ capacity * 64 ];
+        this.rowsByID = new int[ indexLength( capacity ) ];
+        this.dictionary = new ShaarliTagDictionary();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Append a link.
+     *
+     * @param link the link
+     * @return the row index
+     */
+    public int add( final ShaarliLink link )
+    {
+        if ( link == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final long ID = link.getID() == null ? NO_ID : ShaarliBinary.packID( link.getID() );
+        final int[] linkTags = tagCodes( link );
+
+        final byte[][] linkStrings = new byte[ STRINGS ][];
+        linkStrings[PERMA_ID] = encode( link.getPermaID() );
+        linkStrings[TITLE] = encode( link.getTitle() );
+        linkStrings[DESCRIPTION] = encode( link.getDescription() );
+        linkStrings[URL] = encode( link.getUrl() );
+
+        lock.writeLock().lock();
+        try
+        {
+            final int row = size;
+            ensureRows( row + 1 );
+
+            IDs[row] = ID;
+            if ( ID != NO_ID && findRow( ID ) < 0 )
+            {
+                indexRow( row );
+            }
+
+            restricted.set( row ,
+                            link.isRestricted() );
+
+            final int tagStart = tagStarts[row];
+            ensureTags( tagStart + linkTags.length );
+            System.arraycopy( linkTags ,
+                              0 ,
+                              tags ,
+                              tagStart ,
+                              linkTags.length );
+            tagStarts[row + 1] = tagStart + linkTags.length;
+
+            for ( int i = 0 ; i < STRINGS ; ++i )
+            {
+                strings[row * STRINGS + i] = append( linkStrings[i] );
+            }
+
+            size = row + 1;
+
+            return row;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append all links of an iterator (it is closed at the end if it is a ShaarliIterator).
+     *
+     * @param links the links
+     * @return Number of added links
+     */
+    public int addAll( final Iterator<ShaarliLink> links )
+    {
+        if ( links == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        int count = 0;
+        try
+        {
+            while ( links.hasNext() )
+            {
+                add( links.next() );
+                ++count;
+            }
+        }
+        finally
+        {
+            if ( links instanceof ShaarliIterator )
+            {
+                ( (ShaarliIterator<ShaarliLink>) links ).close();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Append a link found by a scan.
+     *
+     * @param link the link
+     */
+    @Override
+    public void visit( final ShaarliLink link )
+    {
+        add( link );
+    }
+
+    /**
+     * Return the number of links.
+     *
+     * @return the links count
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return size;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Build the link of a row.
+     *
+     * @param row Row index
+     * @return a new link
+     */
+    public ShaarliLink get( final int row )
+    {
+        lock.readLock().lock();
+        try
+        {
+            checkRow( row );
+
+            final ShaarliLink link = new ShaarliLink( IDs[row] == NO_ID ? null : ShaarliBinary.unpackID( IDs[row] ) ,
+                                                      readString( row ,
+                                                                  PERMA_ID ) ,
+                                                      readString( row ,
+                                                                  TITLE ) ,
+                                                      readString( row ,
+                                                                  DESCRIPTION ) ,
+                                                      readString( row ,
+                                                                  URL ) ,
+                                                      restricted.get( row ) ,
+                                                      dictionary );
+
+            for ( int i = tagStarts[row] ; i < tagStarts[row + 1] ; ++i )
+            {
+                link.addTagCode( tags[i] );
+            }
+
+            return link;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the ID of a row.
+     *
+     * @param row Row index
+     * @return the ID (or null)
+     */
+    public String getID( final int row )
+    {
+        lock.readLock().lock();
+        try
+        {
+            checkRow( row );
+
+            return IDs[row] == NO_ID ? null : ShaarliBinary.unpackID( IDs[row] );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the permalink ID of a row.
+     *
+     * @param row Row index
+     * @return the permalink ID
+     */
+    public String getPermaID( final int row )
+    {
+        return getString( row ,
+                          PERMA_ID );
+    }
+
+    /**
+     * Return the title of a row.
+     *
+     * @param row Row index
+     * @return the title
+     */
+    public String getTitle( final int row )
+    {
+        return getString( row ,
+                          TITLE );
+    }
+
+    /**
+     * Return the description of a row.
+     *
+     * @param row Row index
+     * @return the description
+     */
+    public String getDescription( final int row )
+    {
+        return getString( row ,
+                          DESCRIPTION );
+    }
+
+    /**
+     * Return the URL of a row.
+     *
+     * @param row Row index
+     * @return the URL
+     */
+    public String getUrl( final int row )
+    {
+        return getString( row ,
+                          URL );
+    }
+
+    /**
+     * Is the link of a row private ?
+     *
+     * @param row Row index
+     * @return true if private
+     */
+    public boolean isRestricted( final int row )
+    {
+        lock.readLock().lock();
+        try
+        {
+            checkRow( row );
+
+            return restricted.get( row );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the tag codes of a row.
+     *
+     * @param row Row index
+     * @return the codes (sorted)
+     * @see #getDictionary()
+     */
+    public int[] getTagCodes( final int row )
+    {
+        lock.readLock().lock();
+        try
+        {
+            checkRow( row );
+
+            return Arrays.copyOfRange( tags ,
+                                       tagStarts[row] ,
+                                       tagStarts[row + 1] );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the dictionary of the tag codes. It holds the tags of all the links added to the table.
+     *
+     * @return the dictionary
+     */
+    public ShaarliTagDictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+    /**
+     * Find the row of a link, in constant time (IDs are indexed in an open addressing hash table of rows).
+     *
+     * @param ID the link ID
+     * @return the first row index of the link, or -1 if not found
+     */
+    public int indexOf( final String ID )
+    {
+        final long packed = ShaarliBinary.packID( ID );
+
+        lock.readLock().lock();
+        try
+        {
+            return findRow( packed );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Iterate over the rows. Each link is built when it is read.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<ShaarliLink> iterator()
+    {
+        return new Iterator<ShaarliLink>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return row < size();
+            }
+
+            @Override
+            public ShaarliLink next()
+            {
+                if ( !hasNext() )
+                {
+                    throw new NoSuchElementException();
+                }
+
+                return get( row++ );
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            // PRIVATE
+            private int row;
+        };
+    }
+
+    /**
+     * Release the unused capacity.
+     */
+    public void trimToSize()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            IDs = Arrays.copyOf( IDs ,
+                                 size );
+            tagStarts = Arrays.copyOf( tagStarts ,
+                                       size + 1 );
+            tags = Arrays.copyOf( tags ,
+                                  tagStarts[size] );
+            strings = Arrays.copyOf( strings ,
+                                     size * STRINGS );
+            bytes = Arrays.copyOf( bytes ,
+                                   bytesSize );
+            resizeIndex( indexLength( indexedIDs ) );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the size of the columns.
+     *
+     * @return the size in bytes
+     */
+    public long getByteSize()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return 8L * IDs.length + restricted.size() / 8L + 4L * tagStarts.length + 4L * tags.length + 4L * strings.length + bytes.length + 4L * rowsByID.length;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShaarliLinkTable{" + "size=" + size() + ", byteSize=" + getByteSize() + '}';
+    }
+
+    // PRIVATE
+    private static final long NO_ID = Long.MIN_VALUE;
+    private static final int PERMA_ID = 0;
+    private static final int TITLE = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int URL = 3;
+    private static final int STRINGS = 4;
+    private final BitSet restricted;
+    private final ShaarliTagDictionary dictionary;
+    private final ReadWriteLock lock;
+    private long[] IDs;
+    private int[] tagStarts;
+    private int[] tags;
+    private int[] strings;
+    private byte[] bytes;
+    private int bytesSize;
+    private int size;
+    // Row+1 by ID hash, 0 for an empty slot
+    private int[] rowsByID;
+    private int indexedIDs;
+
+    /**
+     * Return the codes of the link's tags in the table's dictionary.
+     */
+    private int[] tagCodes( final ShaarliLink link )
+    {
+        final int[] linkTags = link.getTagCodes();
+        if ( link.getDictionary() == dictionary )
+        {
+            return linkTags;
+        }
+
+        final ShaarliTagDictionary linkDictionary = link.getDictionary();
+        final int[] codes = new int[ linkTags.length ];
+        for ( int i = 0 ; i < codes.length ; ++i )
+        {
+            codes[i] = dictionary.intern( linkDictionary.getName( linkTags[i] ) );
+        }
+        Arrays.sort( codes );
+
+        return codes;
+    }
+
+    private String getString( final int row ,
+                              final int column )
+    {
+        lock.readLock().lock();
+        try
+        {
+            checkRow( row );
+
+            return readString( row ,
+                               column );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the length of an index for a number of IDs: a power of two, at most half full.
+     */
+    private static int indexLength( final int count )
+    {
+        return Integer.highestOneBit( Math.max( 1 ,
+                                                count * 2 - 1 ) ) << 1;
+    }
+
+    private static int hash( final long ID )
+    {
+        return (int) ( ID ^ ( ID >>> 32 ) ) * 0x9E3779B9;
+    }
+
+    private int findRow( final long ID )
+    {
+        final int mask = rowsByID.length - 1;
+        for ( int slot = hash( ID ) & mask ; ; slot = ( slot + 1 ) & mask )
+        {
+            final int entry = rowsByID[slot];
+            if ( entry == 0 )
+            {
+                return -1;
+            }
+
+            if ( IDs[entry - 1] == ID )
+            {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void indexRow( final int row )
+    {
+        if ( ( indexedIDs + 1 ) * 2 > rowsByID.length )
+        {
+            resizeIndex( rowsByID.length * 2 );
+        }
+
+        insertRow( rowsByID ,
+                   row );
+        ++indexedIDs;
+    }
+
+    private void resizeIndex( final int length )
+    {
+        final int[] index = new int[ length ];
+        for ( final int entry : rowsByID )
+        {
+            if ( entry != 0 )
+            {
+                insertRow( index ,
+                           entry - 1 );
+            }
+        }
+
+        rowsByID = index;
+    }
+
+    private void insertRow( final int[] index ,
+                            final int row )
+    {
+        final int mask = index.length - 1;
+        int slot = hash( IDs[row] ) & mask;
+        while ( index[slot] != 0 )
+        {
+            slot = ( slot + 1 ) & mask;
+        }
+
+        index[slot] = row + 1;
+    }
+
+    private void checkRow( final int row )
+    {
+        if ( row < 0 || row >= size )
+        {
+            throw new IndexOutOfBoundsException( "row: " + row + ", size: " + size );
+        }
+    }
+
+    /**
+     * Read a string at its offset.
+     */
+    private String readString( final int row ,
+                               final int column )
+    {
+        final int offset = strings[row * STRINGS + column];
+
+        try
+        {
+            return ShaarliBinary.getString( ByteBuffer.wrap( bytes ,
+                                                             offset ,
+                                                             bytesSize - offset ) );
+        }
+        catch( final IOException ex )
+        {
+            // Written by append()
+            throw new IllegalStateException( ex );
+        }
+    }
+
+    /**
+     * Append a string.
+     *
+     * @return its offset
+     */
+    private int append( final byte[] str )
+    {
+        final int offset = bytesSize;
+        ensureBytes( offset + ShaarliBinary.MAX_VARINT_SIZE + ( str == null ? 0 : str.length ) );
+
+        final ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        buffer.position( offset );
+        ShaarliBinary.putString( buffer ,
+                                 str );
+        bytesSize = buffer.position();
+
+        return offset;
+    }
+
+    private static byte[] encode( final String str )
+    {
+        return str == null ? null : str.getBytes( ShaarliBinary.UTF8 );
+    }
+
+    private void ensureRows( final int rows )
+    {
+        if ( rows > IDs.length )
+        {
+            final int capacity = Math.max( rows ,
+                                           IDs.length * 2 );
+
+            IDs = Arrays.copyOf( IDs ,
+                                 capacity );
+            tagStarts = Arrays.copyOf( tagStarts ,
+                                       capacity + 1 );
+            strings = Arrays.copyOf( strings ,
+                                     capacity * STRINGS );
+        }
+    }
+
+    private void ensureTags( final int length )
+    {
+        if ( length > tags.length )
+        {
+            tags = Arrays.copyOf( tags ,
+                                  Math.max( length ,
+                                            tags.length * 2 ) );
+        }
+    }
+
+    private void ensureBytes( final int length )
+    {
+        if ( length < 0 )
+        {
+            throw new IllegalStateException( "ShaarliLinkTable is full" );
+        }
+
+        if ( length > bytes.length )
+        {
+            bytes = Arrays.copyOf( bytes ,
+                                   (int) Math.min( Integer.MAX_VALUE - 8 ,
+                                                   Math.max( length ,
+                                                             2L * bytes.length ) ) );
+        }
+    }
+}
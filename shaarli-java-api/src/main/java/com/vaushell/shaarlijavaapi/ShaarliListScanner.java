@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Cut an HTML stream into list items. Only the current item is buffered: the page is never held in memory.
+ *
+ * Items are the outermost item elements (like li) inside a list (like ul): items of other lists are skipped. An item
+ * ends with its closing tag, with the next item of the same list, or with the end of its list. Comments, scripts and
+ * styles outside items are skipped.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliListScanner
+{
+    // DEFAULT
+    /**
+     * Construct the scanner.
+     *
+     * @param reader the HTML stream
+     * @param itemTag Item's tag (lower case, like li)
+     * @param listTags Lists' tags (lower case, like ul and ol)
+     */
+    ShaarliListScanner( final Reader reader ,
+                        final String itemTag ,
+                        final String... listTags )
+    {
+        if ( reader == null || itemTag == null || listTags == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.reader = reader;
+        this.itemOpen = itemTag;
+        this.itemClose = "/" + itemTag;
+        this.listsOpen = new HashSet<>( Arrays.asList( listTags ) );
+        this.listsClose = new HashSet<>();
+        for ( final String listTag : listTags )
+        {
+            listsClose.add( "/" + listTag );
+        }
+
+        this.item = new StringBuilder();
+        this.pending = -1;
+        this.restart = null;
+    }
+
+    /**
+     * Read the next list item.
+     *
+     * @return the HTML of the item (from its opening tag), or null at the end of the stream
+     * @throws IOException
+     */
+    String next()
+        throws IOException
+    {
+        item.setLength( 0 );
+
+        boolean inside = false;
+        int lists = 0;
+
+        if ( restart != null )
+        {
+            item.append( restart );
+            inside = true;
+            restart = null;
+        }
+
+        int c;
+        while ( ( c = read() ) != -1 )
+        {
+            if ( c != '<' )
+            {
+                if ( inside )
+                {
+                    item.append( (char) c );
+                }
+
+                continue;
+            }
+
+            final String raw = readName();
+            final String name = raw.toLowerCase( Locale.ENGLISH );
+
+            if ( name.startsWith( "!--" ) )
+            {
+                appendIf( inside ,
+                          "<" + raw );
+                if ( name.length() < 5 || !name.endsWith( "--" ) || pending != '>' )
+                {
+                    skipUntil( "-->" ,
+                               inside );
+                }
+            }
+            else if ( "script".equals( name ) || "style".equals( name ) )
+            {
+                appendIf( inside ,
+                          "<" + raw );
+                skipUntil( "</" + name ,
+                           inside );
+            }
+            else if ( itemOpen.equals( name ) )
+            {
+                if ( !inside )
+                {
+                    if ( depth > 0 )
+                    {
+                        item.append( '<' ).append( raw );
+                        inside = true;
+                    }
+                }
+                else if ( lists == 0 )
+                {
+                    // Implicit end of the current item
+                    restart = "<" + raw;
+                    return item.toString();
+                }
+                else
+                {
+                    item.append( '<' ).append( raw );
+                }
+            }
+            else if ( itemClose.equals( name ) && inside && lists == 0 )
+            {
+                item.append( '<' ).append( raw );
+                skipUntil( ">" ,
+                           true );
+
+                return item.toString();
+            }
+            else if ( inside && listsOpen.contains( name ) )
+            {
+                item.append( '<' ).append( raw );
+                ++lists;
+            }
+            else if ( inside && listsClose.contains( name ) )
+            {
+                if ( lists == 0 )
+                {
+                    // End of the list, so end of the current item
+                    skipUntil( ">" ,
+                               false );
+                    --depth;
+
+                    return item.toString();
+                }
+
+                item.append( '<' ).append( raw );
+                --lists;
+            }
+            else if ( !inside && listsOpen.contains( name ) )
+            {
+                ++depth;
+            }
+            else if ( !inside && listsClose.contains( name ) )
+            {
+                depth = Math.max( 0 ,
+                                  depth - 1 );
+            }
+            else
+            {
+                appendIf( inside ,
+                          "<" + raw );
+            }
+        }
+
+        if ( inside )
+        {
+            // Truncated stream
+            return item.toString();
+        }
+
+        return null;
+    }
+
+    // PRIVATE
+    private final Reader reader;
+    private final String itemOpen;
+    private final String itemClose;
+    private final Set<String> listsOpen;
+    private final Set<String> listsClose;
+    private final StringBuilder item;
+    private int pending;
+    private String restart;
+    private int depth;
+
+    private int read()
+        throws IOException
+    {
+        if ( pending >= 0 )
+        {
+            final int c = pending;
+            pending = -1;
+
+            return c;
+        }
+
+        return reader.read();
+    }
+
+    /**
+     * Read a tag name, after '<'. The character following the name is not consumed.
+     *
+     * @return the name (could be empty)
+     * @throws IOException
+     */
+    private String readName()
+        throws IOException
+    {
+        final StringBuilder sb = new StringBuilder();
+
+        int c;
+        while ( ( c = read() ) != -1 )
+        {
+            if ( Character.isLetterOrDigit( c ) || c == '/' && sb.length() == 0 || c == '!' || c == '-' )
+            {
+                sb.append( (char) c );
+            }
+            else
+            {
+                pending = c;
+                break;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Consume the stream until a terminator (case insensitive), included.
+     *
+     * @param terminator the terminator
+     * @param append true to append consumed characters to the item
+     * @throws IOException
+     */
+    private void skipUntil( final String terminator ,
+                            final boolean append )
+        throws IOException
+    {
+        int matched = 0;
+        int c;
+        while ( matched < terminator.length() && ( c = read() ) != -1 )
+        {
+            if ( append )
+            {
+                item.append( (char) c );
+            }
+
+            if ( Character.toLowerCase( c ) == terminator.charAt( matched ) )
+            {
+                ++matched;
+            }
+            else
+            {
+                matched = Character.toLowerCase( c ) == terminator.charAt( 0 ) ? 1 : 0;
+            }
+        }
+    }
+
+    private void appendIf( final boolean inside ,
+                           final String str )
+    {
+        if ( inside )
+        {
+            item.append( str );
+        }
+    }
+}
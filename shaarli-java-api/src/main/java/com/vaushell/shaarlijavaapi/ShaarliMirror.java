@@ -0,0 +1,676 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local replica of all the links of a Shaarli. Reads are served locally, only changes are read from Shaarli:
+ * <ul>
+ * <li>sync() reads the newest pages until it reaches a known link ;</li>
+ * <li>reconcile() scans all IDs to remove the deleted links (and reloads everything if unknown links are found).</li>
+ * </ul>
+ * Modified links keep their ID and their place: they are only updated by reload(). Links are keyed by ID, so the client
+ * must be logged. Links are shared: don't modify them.
+ *
+ * With a link store, the mirror is persistent: it starts from the stored links and writes every change through.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliMirror
+    implements AutoCloseable
+{
+    // PUBLIC
+    /**
+     * Construct an empty mirror. Call reload() or sync() to fill it.
+     *
+     * @param client Shaarli client (logged)
+     */
+    public ShaarliMirror( final ShaarliClient client )
+    {
+        if ( client == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.client = client;
+        this.links = new TreeMap<>( Collections.<String>reverseOrder() );
+        this.tags = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.syncLock = new Object();
+        this.index = new ShaarliSearchIndex();
+        this.tagIndex = new ShaarliTagIndex();
+    }
+
+    /**
+     * Construct a persistent mirror, filled with the stored links. Call sync() to catch up with Shaarli.
+     *
+     * @param client Shaarli client (logged)
+     * @param store Link store (closed by the caller)
+     */
+    public ShaarliMirror( final ShaarliClient client ,
+                          final ShaarliLinkStore store )
+    {
+        this( client );
+
+        if ( store == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        addAll( store.getLinks() );
+
+        this.store = store;
+    }
+
+    /**
+     * Read the new links, from the newest page until a known link.
+     *
+     * @return Number of new links
+     */
+    public int sync()
+    {
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug( "[" + getClass().getSimpleName() + "] sync()" );
+        }
+
+        synchronized( syncLock )
+        {
+            final List<ShaarliLink> newLinks = new ArrayList<>();
+
+            String lastPageID = null;
+            int page = 1;
+            boolean known = false;
+            while ( !known )
+            {
+                final List<ShaarliLink> pageLinks = client.searchAll( page );
+                if ( pageLinks.isEmpty() )
+                {
+                    break;
+                }
+
+                // Shaarli returns the last page when we go too far
+                final String pageID = pageLinks.get( pageLinks.size() - 1 ).getID();
+                if ( pageID != null && pageID.equals( lastPageID ) )
+                {
+                    break;
+                }
+                lastPageID = pageID;
+
+                lock.readLock().lock();
+                try
+                {
+                    for ( final ShaarliLink link : pageLinks )
+                    {
+                        if ( link.getID() == null )
+                        {
+                            continue;
+                        }
+
+                        if ( links.containsKey( link.getID() ) )
+                        {
+                            known = true;
+                            break;
+                        }
+
+                        newLinks.add( link );
+                    }
+                }
+                finally
+                {
+                    lock.readLock().unlock();
+                }
+
+                ++page;
+            }
+
+            lock.writeLock().lock();
+            try
+            {
+                addAll( newLinks );
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+
+            return newLinks.size();
+        }
+    }
+
+    /**
+     * Scan all IDs to remove the deleted links. If Shaarli has links unknown by the mirror (like imported links with an
+     * old date), the mirror is reloaded.
+     *
+     * @return Number of removed links, or -1 if the scan failed
+     */
+    public int reconcile()
+    {
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug( "[" + getClass().getSimpleName() + "] reconcile()" );
+        }
+
+        synchronized( syncLock )
+        {
+            final Set<String> IDs = new HashSet<>();
+            try( final ShaarliIterator<String> it = client.searchAllIDsIterator() )
+            {
+                while ( it.hasNext() )
+                {
+                    final String ID = it.next();
+                    if ( ID != null )
+                    {
+                        IDs.add( ID );
+                    }
+                }
+            }
+
+            // Scans don't report errors: don't remove links after an incomplete scan
+            if ( IDs.size() != client.getLinksCount() )
+            {
+                LOGGER.error( "Cannot reconcile mirror: incomplete IDs scan" );
+
+                return -1;
+            }
+
+            int removed = 0;
+            boolean unknown = false;
+
+            lock.writeLock().lock();
+            try
+            {
+                for ( final String ID : new ArrayList<>( links.keySet() ) )
+                {
+                    if ( !IDs.contains( ID ) )
+                    {
+                        remove( ID );
+                        ++removed;
+                    }
+                }
+
+                unknown = links.size() < IDs.size();
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+
+            if ( unknown )
+            {
+                reload();
+            }
+
+            return removed;
+        }
+    }
+
+    /**
+     * Reload all links.
+     *
+     * @return Number of links
+     */
+    public int reload()
+    {
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug( "[" + getClass().getSimpleName() + "] reload()" );
+        }
+
+        synchronized( syncLock )
+        {
+            final List<ShaarliLink> all = new ArrayList<>();
+            try( final ShaarliIterator<ShaarliLink> it = client.searchAllIterator() )
+            {
+                while ( it.hasNext() )
+                {
+                    final ShaarliLink link = it.next();
+                    if ( link.getID() != null )
+                    {
+                        all.add( link );
+                    }
+                }
+            }
+
+            lock.writeLock().lock();
+            try
+            {
+                final Set<String> IDs = new HashSet<>();
+                for ( final ShaarliLink link : all )
+                {
+                    IDs.add( link.getID() );
+                }
+
+                for ( final String ID : new ArrayList<>( links.keySet() ) )
+                {
+                    if ( !IDs.contains( ID ) )
+                    {
+                        remove( ID );
+                    }
+                }
+
+                addAll( all );
+
+                return links.size();
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Sync and reconcile the mirror in background.
+     *
+     * @param syncPeriod Milliseconds between syncs
+     * @param reconcilePeriod Milliseconds between reconciliations
+     */
+    public void start( final long syncPeriod ,
+                       final long reconcilePeriod )
+    {
+        if ( syncPeriod <= 0L || reconcilePeriod <= 0L )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        synchronized( syncLock )
+        {
+            if ( scheduler != null )
+            {
+                throw new IllegalStateException( "mirror is already started" );
+            }
+
+            scheduler = new ScheduledThreadPoolExecutor( 1 ,
+                                                         new ShaarliThreadFactory( "shaarli-mirror" ) );
+        }
+
+        scheduler.scheduleWithFixedDelay( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // An exception would cancel the next runs of the task
+                try
+                {
+                    sync();
+                }
+                catch( final RuntimeException ex )
+                {
+                    LOGGER.error( "Cannot sync mirror" ,
+                                  ex );
+                }
+            }
+        } ,
+                                          0L ,
+                                          syncPeriod ,
+                                          TimeUnit.MILLISECONDS );
+
+        scheduler.scheduleWithFixedDelay( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    reconcile();
+                }
+                catch( final RuntimeException ex )
+                {
+                    LOGGER.error( "Cannot reconcile mirror" ,
+                                  ex );
+                }
+            }
+        } ,
+                                          reconcilePeriod ,
+                                          reconcilePeriod ,
+                                          TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stop the background syncs.
+     */
+    @Override
+    public void close()
+    {
+        synchronized( syncLock )
+        {
+            if ( scheduler != null )
+            {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    /**
+     * Return the number of links.
+     *
+     * @return Links count
+     */
+    public int getLinksCount()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return links.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return a link.
+     *
+     * @param ID Link's ID
+     * @return the link, or null if unknown
+     */
+    public ShaarliLink getLink( final String ID )
+    {
+        if ( ID == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lock.readLock().lock();
+        try
+        {
+            return links.get( ID );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return all links, newest first.
+     *
+     * @return the links
+     */
+    public List<ShaarliLink> getLinks()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return new ArrayList<>( links.values() );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return all used tags.
+     *
+     * @return Tags and their counts
+     */
+    public Map<String , Integer> getTags()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return new TreeMap<>( tags );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search links containing a term (in title, description or URL, case insensitive), newest first.
+     *
+     * @param term Term
+     * @return the links
+     */
+    public List<ShaarliLink> searchTerm( final String term )
+    {
+        if ( term == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final String lowerTerm = term.toLowerCase( Locale.ENGLISH );
+
+        final List<ShaarliLink> result = new ArrayList<>();
+
+        lock.readLock().lock();
+        try
+        {
+            for ( final ShaarliLink link : links.values() )
+            {
+                if ( contains( link.getTitle() ,
+                               lowerTerm ) || contains( link.getDescription() ,
+                                                        lowerTerm ) || contains( link.getUrl() ,
+                                                                                 lowerTerm ) )
+                {
+                    result.add( link );
+                }
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    /**
+     * Search links containing words of the query (in title, description or URL), best matches first. Served by a local
+     * inverted index: a word ending with '*' is a prefix.
+     *
+     * @param query Words
+     * @param max Maximum number of links
+     * @return the links
+     * @see ShaarliSearchIndex#search(java.lang.String, int)
+     */
+    public List<ShaarliLink> search( final String query ,
+                                     final int max )
+    {
+        return index.search( query ,
+                             max );
+    }
+
+    /**
+     * Search links containing all the words of the query (in title, description or URL), newest first.
+     *
+     * @param query Words
+     * @return the links
+     * @see ShaarliSearchIndex#searchAll(java.lang.String)
+     */
+    public List<ShaarliLink> searchAllWords( final String query )
+    {
+        return index.searchAll( query );
+    }
+
+    /**
+     * Search links having all the tags, newest first.
+     *
+     * @param tags Tags
+     * @return the links
+     */
+    public List<ShaarliLink> searchTags( final String... tags )
+    {
+        if ( tags == null || tags.length <= 0 )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        return tagIndex.search( Arrays.asList( tags ) ,
+                                null ,
+                                null ,
+                                1 ,
+                                Integer.MAX_VALUE );
+    }
+
+    /**
+     * Return the tag index, for tags combinations, counts and facets.
+     *
+     * @return the tag index
+     */
+    public ShaarliTagIndex getTagIndex()
+    {
+        return tagIndex;
+    }
+
+    // PRIVATE
+    private static final Logger LOGGER = LoggerFactory.getLogger( ShaarliMirror.class );
+    private static final Comparator<ShaarliLink> OLDEST_FIRST = new Comparator<ShaarliLink>()
+    {
+        @Override
+        public int compare( final ShaarliLink o1 ,
+                            final ShaarliLink o2 )
+        {
+            return o1.getID().compareTo( o2.getID() );
+        }
+    };
+    private final ShaarliClient client;
+    private final TreeMap<String , ShaarliLink> links;
+    private final Map<String , Integer> tags;
+    private final ReadWriteLock lock;
+    private final Object syncLock;
+    private final ShaarliSearchIndex index;
+    private final ShaarliTagIndex tagIndex;
+    private ScheduledExecutorService scheduler;
+    private ShaarliLinkStore store;
+
+    /**
+     * Add links, oldest first: Shaarli lists links newest first, but the tag index is renumbered when a link is older
+     * than the newest indexed one.
+     */
+    private void addAll( final List<ShaarliLink> newLinks )
+    {
+        final List<ShaarliLink> sorted = new ArrayList<>( newLinks );
+        Collections.sort( sorted ,
+                          OLDEST_FIRST );
+
+        for ( final ShaarliLink link : sorted )
+        {
+            add( link );
+        }
+    }
+
+    private void add( final ShaarliLink link )
+    {
+        final ShaarliLink old = links.put( link.getID() ,
+                                           link );
+        if ( old != null )
+        {
+            removeTags( old );
+        }
+
+        if ( !link.equals( old ) )
+        {
+            index.add( link );
+            tagIndex.add( link );
+
+            if ( store != null )
+            {
+                try
+                {
+                    store.put( link );
+                }
+                catch( final IOException ex )
+                {
+                    LOGGER.error( "Cannot store link " + link.getID() ,
+                                  ex );
+                }
+            }
+        }
+
+        for ( final String tag : link.getTags() )
+        {
+            final Integer count = tags.get( tag );
+            tags.put( tag ,
+                      count == null ? 1 : count + 1 );
+        }
+    }
+
+    private void remove( final String ID )
+    {
+        final ShaarliLink old = links.remove( ID );
+        if ( old != null )
+        {
+            removeTags( old );
+            index.remove( ID );
+            tagIndex.remove( ID );
+
+            if ( store != null )
+            {
+                try
+                {
+                    store.delete( ID );
+                }
+                catch( final IOException ex )
+                {
+                    LOGGER.error( "Cannot delete stored link " + ID ,
+                                  ex );
+                }
+            }
+        }
+    }
+
+    private void removeTags( final ShaarliLink link )
+    {
+        for ( final String tag : link.getTags() )
+        {
+            final Integer count = tags.get( tag );
+            if ( count == null || count <= 1 )
+            {
+                tags.remove( tag );
+            }
+            else
+            {
+                tags.put( tag ,
+                          count - 1 );
+            }
+        }
+    }
+
+    private static boolean contains( final String str ,
+                                     final String lowerTerm )
+    {
+        return str != null && str.toLowerCase( Locale.ENGLISH ).contains( lowerTerm );
+    }
+}
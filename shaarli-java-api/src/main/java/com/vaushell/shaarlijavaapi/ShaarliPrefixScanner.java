@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.vaushell.shaarlijavaapi.ShaarliTemplates.Template;
+import java.io.IOException;
+import java.io.Reader;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Elements;
+
+/**
+ * Extract a single value from the beginning of a page. The page is read by growing chunks and the prefix is parsed
+ * after each chunk: reading stops as soon as the template's element is found and complete.
+ *
+ * An element is complete when the parser has read something after it. The template's CSS path must not depend on
+ * what follows the element (like :last-child).
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliPrefixScanner
+{
+    // DEFAULT
+    ShaarliPrefixScanner( final Template template ,
+                          final int firstChunk )
+    {
+        if ( template == null || firstChunk < 1 )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.template = template;
+        this.firstChunk = firstChunk;
+        this.fullyRead = false;
+    }
+
+    /**
+     * Read the page until the value is found.
+     *
+     * @param reader the page
+     * @param baseURI URL of the page
+     * @return the value, or null if not found
+     * @throws IOException
+     */
+    String scan( final Reader reader ,
+                 final String baseURI )
+        throws IOException
+    {
+        final StringBuilder html = new StringBuilder();
+        final char[] buffer = new char[ 4096 ];
+
+        int limit = firstChunk;
+        while ( true )
+        {
+            boolean eof = false;
+            while ( html.length() < limit )
+            {
+                final int read = reader.read( buffer );
+                if ( read < 0 )
+                {
+                    eof = true;
+                    break;
+                }
+
+                html.append( buffer ,
+                             0 ,
+                             read );
+            }
+
+            final Document doc = Jsoup.parse( html.toString() ,
+                                              baseURI );
+
+            if ( template.cssPath.isEmpty() )
+            {
+                // The value is the whole page
+                if ( eof )
+                {
+                    fullyRead = true;
+
+                    return template.content( doc );
+                }
+            }
+            else
+            {
+                final Elements elts = template.select( doc );
+                if ( !elts.isEmpty() && ( eof || isComplete( elts.first() ) ) )
+                {
+                    fullyRead = eof;
+
+                    return template.content( elts.first() );
+                }
+
+                if ( eof )
+                {
+                    fullyRead = true;
+
+                    return null;
+                }
+            }
+
+            limit *= 2;
+        }
+    }
+
+    /**
+     * Has the page been read until its end ?
+     *
+     * @return true if the page is fully read
+     */
+    boolean isFullyRead()
+    {
+        return fullyRead;
+    }
+
+    // PRIVATE
+    private final Template template;
+    private final int firstChunk;
+    private boolean fullyRead;
+
+    private static boolean isComplete( final Element elt )
+    {
+        Node node = elt;
+        while ( node != null )
+        {
+            // The parser always creates head and body
+            final String name = node.nodeName();
+            if ( "head".equals( name ) || "body".equals( name ) || "html".equals( name ) )
+            {
+                return false;
+            }
+
+            if ( node.nextSibling() != null )
+            {
+                return true;
+            }
+
+            node = node.parent();
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of parsed responses, revalidated with conditional requests. The least recently used entries are
+ * evicted. Cached values are shared: they must not be modified.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliResponseCache
+{
+    // DEFAULT
+    ShaarliResponseCache( final int maxEntries )
+    {
+        if ( maxEntries < 1 )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.entries = new LinkedHashMap<String , Entry>( 16 ,
+                                                          0.75f ,
+                                                          true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String , ShaarliResponseCache.Entry> eldest )
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized Entry get( final String key )
+    {
+        return entries.get( key );
+    }
+
+    synchronized void put( final String key ,
+                           final Entry entry )
+    {
+        entries.put( key ,
+                     entry );
+    }
+
+    synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * A parsed response and its validators.
+     */
+    static final class Entry
+    {
+        // DEFAULT
+        final String etag;
+        final String lastModified;
+        final Object value;
+
+        Entry( final String etag ,
+               final String lastModified ,
+               final Object value )
+        {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+    }
+
+    // PRIVATE
+    private final LinkedHashMap<String , Entry> entries;
+}
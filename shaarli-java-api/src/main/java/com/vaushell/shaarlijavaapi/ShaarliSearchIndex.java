@@ -0,0 +1,710 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local inverted index over the title, description and URL of links. Terms are lower-cased words without accents. A
+ * query term ending with '*' matches all terms with this prefix (search as you type).
+ *
+ * Each link gets an increasing document number, so postings are sorted int arrays where new links are appended. An
+ * updated link is removed and added again. Removed numbers are reclaimed when half of the numbers are unused.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliSearchIndex
+{
+    // PUBLIC
+    public ShaarliSearchIndex()
+    {
+        this.terms = new TreeMap<>();
+        this.docsByID = new HashMap<>();
+        this.docs = new Doc[ 64 ];
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Index a link, or re-index it if a link with the same ID is indexed.
+     *
+     * @param link the link (with an ID)
+     */
+    public void add( final ShaarliLink link )
+    {
+        if ( link == null || link.getID() == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            removeDoc( link.getID() );
+            addDoc( link );
+
+            if ( nextDoc > 1024 && docsByID.size() < nextDoc / 2 )
+            {
+                renumber();
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a link.
+     *
+     * @param ID the link ID
+     * @return true if the link was indexed
+     */
+    public boolean remove( final String ID )
+    {
+        if ( ID == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            return removeDoc( ID );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all links.
+     */
+    public void clear()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            terms.clear();
+            docsByID.clear();
+            docs = new Doc[ 64 ];
+            nextDoc = 0;
+            totalLength = 0L;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of indexed links.
+     *
+     * @return the links count
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return docsByID.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search links containing at least one term of the query, best matches first (BM25 ranking, title terms count
+     * twice).
+     *
+     * @param query Words
+     * @param max Maximum number of links
+     * @return the links
+     */
+    public List<ShaarliLink> search( final String query ,
+                                     final int max )
+    {
+        if ( query == null || max < 0 )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lock.readLock().lock();
+        try
+        {
+            // Only the documents of the matched postings get a score
+            final Map<Integer , float[]> scores = new HashMap<>();
+            final float avgLength = docsByID.isEmpty() ? 1.0f : (float) totalLength / docsByID.size();
+
+            for ( final String queryTerm : tokenize( query ) )
+            {
+                for ( final Postings postings : match( queryTerm ) )
+                {
+                    final double idf = Math.log( 1.0 + ( docsByID.size() - postings.size + 0.5 ) / ( postings.size + 0.5 ) );
+                    for ( int i = 0 ; i < postings.size ; ++i )
+                    {
+                        final int doc = postings.docs[i];
+                        final int tf = postings.freqs[i];
+                        final float norm = K1 * ( 1.0f - B + B * docs[doc].length / avgLength );
+
+                        float[] score = scores.get( doc );
+                        if ( score == null )
+                        {
+                            score = new float[ 1 ];
+                            scores.put( doc ,
+                                        score );
+                        }
+                        score[0] += (float) ( idf * tf * ( K1 + 1.0f ) / ( tf + norm ) );
+                    }
+                }
+            }
+
+            if ( max == 0 || scores.isEmpty() )
+            {
+                return new ArrayList<>();
+            }
+
+            // Worst match first: the head of the heap is the match to drop
+            final Comparator<Integer> worstFirst = new Comparator<Integer>()
+            {
+                @Override
+                public int compare( final Integer d1 ,
+                                    final Integer d2 )
+                {
+                    final int c = Float.compare( scores.get( d1 )[0] ,
+                                                 scores.get( d2 )[0] );
+                    if ( c != 0 )
+                    {
+                        return c;
+                    }
+
+                    return docs[d1].link.getID().compareTo( docs[d2].link.getID() );
+                }
+            };
+
+            final int count = Math.min( max ,
+                                        scores.size() );
+            final PriorityQueue<Integer> best = new PriorityQueue<>( count ,
+                                                                     worstFirst );
+            for ( final Integer doc : scores.keySet() )
+            {
+                if ( best.size() < count )
+                {
+                    best.add( doc );
+                }
+                else if ( worstFirst.compare( doc ,
+                                              best.peek() ) > 0 )
+                {
+                    best.poll();
+                    best.add( doc );
+                }
+            }
+
+            final ShaarliLink[] result = new ShaarliLink[ best.size() ];
+            for ( int i = result.length - 1 ; i >= 0 ; --i )
+            {
+                result[i] = docs[best.poll()].link;
+            }
+
+            return new ArrayList<>( Arrays.asList( result ) );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search links containing all the terms of the query, newest first.
+     *
+     * @param query Words
+     * @return the links
+     */
+    public List<ShaarliLink> searchAll( final String query )
+    {
+        if ( query == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lock.readLock().lock();
+        try
+        {
+            final List<String> queryTerms = tokenize( query );
+            if ( queryTerms.isEmpty() )
+            {
+                return new ArrayList<>();
+            }
+
+            final List<int[]> sets = new ArrayList<>( queryTerms.size() );
+            for ( final String queryTerm : queryTerms )
+            {
+                sets.add( union( match( queryTerm ) ) );
+            }
+
+            // Intersect from the smallest set
+            Collections.sort( sets ,
+                              new Comparator<int[]>()
+            {
+                @Override
+                public int compare( final int[] s1 ,
+                                    final int[] s2 )
+                {
+                    return Integer.compare( s1.length ,
+                                            s2.length );
+                }
+            } );
+
+            int[] result = sets.get( 0 );
+            for ( int i = 1 ; i < sets.size() && result.length > 0 ; ++i )
+            {
+                result = intersect( result ,
+                                    sets.get( i ) );
+            }
+
+            return toLinks( result );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search links containing at least one term of the query, newest first.
+     *
+     * @param query Words
+     * @return the links
+     */
+    public List<ShaarliLink> searchAny( final String query )
+    {
+        if ( query == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lock.readLock().lock();
+        try
+        {
+            final List<Postings> postings = new ArrayList<>();
+            for ( final String queryTerm : tokenize( query ) )
+            {
+                postings.addAll( match( queryTerm ) );
+            }
+
+            return toLinks( union( postings ) );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    // DEFAULT
+    /**
+     * Split a text in lower-cased words without accents. A '*' is kept at the end of a word.
+     *
+     * @param text the text
+     * @return the words
+     */
+    static List<String> tokenize( final String text )
+    {
+        final List<String> words = new ArrayList<>();
+        if ( text == null )
+        {
+            return words;
+        }
+
+        final String normalized = Normalizer.normalize( text ,
+                                                        Normalizer.Form.NFD ).toLowerCase( Locale.ENGLISH );
+
+        final StringBuilder word = new StringBuilder();
+        for ( int i = 0 ; i < normalized.length() ; ++i )
+        {
+            final char c = normalized.charAt( i );
+            if ( Character.isLetterOrDigit( c ) )
+            {
+                word.append( c );
+            }
+            else if ( Character.getType( c ) != Character.NON_SPACING_MARK )
+            {
+                if ( c == '*' && word.length() > 0 )
+                {
+                    word.append( c );
+                }
+
+                if ( word.length() > 0 )
+                {
+                    words.add( word.toString() );
+                    word.setLength( 0 );
+                }
+            }
+        }
+
+        if ( word.length() > 0 )
+        {
+            words.add( word.toString() );
+        }
+
+        return words;
+    }
+
+    // PRIVATE
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private final TreeMap<String , Postings> terms;
+    private final Map<String , Integer> docsByID;
+    private final ReadWriteLock lock;
+    private Doc[] docs;
+    private int nextDoc;
+    private long totalLength;
+
+    private void addDoc( final ShaarliLink link )
+    {
+        final Map<String , Integer> freqs = new HashMap<>();
+        int length = 0;
+
+        // Title terms count twice
+        length += count( freqs ,
+                         link.getTitle() ,
+                         2 );
+        length += count( freqs ,
+                         link.getDescription() ,
+                         1 );
+        length += count( freqs ,
+                         link.getUrl() ,
+                         1 );
+
+        final int doc = nextDoc++;
+        if ( doc >= docs.length )
+        {
+            docs = Arrays.copyOf( docs ,
+                                  docs.length * 2 );
+        }
+
+        docs[doc] = new Doc( link ,
+                             freqs.keySet().toArray( new String[ freqs.size() ] ) ,
+                             length );
+        docsByID.put( link.getID() ,
+                      doc );
+        totalLength += length;
+
+        for ( final Map.Entry<String , Integer> entry : freqs.entrySet() )
+        {
+            Postings postings = terms.get( entry.getKey() );
+            if ( postings == null )
+            {
+                postings = new Postings();
+                terms.put( entry.getKey() ,
+                           postings );
+            }
+
+            postings.append( doc ,
+                             entry.getValue() );
+        }
+    }
+
+    private boolean removeDoc( final String ID )
+    {
+        final Integer doc = docsByID.remove( ID );
+        if ( doc == null )
+        {
+            return false;
+        }
+
+        final Doc removed = docs[doc];
+        docs[doc] = null;
+        totalLength -= removed.length;
+
+        for ( final String term : removed.terms )
+        {
+            final Postings postings = terms.get( term );
+            postings.remove( doc );
+
+            if ( postings.size <= 0 )
+            {
+                terms.remove( term );
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Give consecutive numbers to the indexed links, in the same order.
+     */
+    private void renumber()
+    {
+        final Doc[] old = docs;
+        final int oldNext = nextDoc;
+
+        terms.clear();
+        docsByID.clear();
+        docs = new Doc[ Math.max( 64 ,
+                                  Integer.highestOneBit( oldNext ) ) ];
+        nextDoc = 0;
+        totalLength = 0L;
+
+        for ( int i = 0 ; i < oldNext ; ++i )
+        {
+            if ( old[i] != null )
+            {
+                addDoc( old[i].link );
+            }
+        }
+    }
+
+    private static int count( final Map<String , Integer> freqs ,
+                              final String text ,
+                              final int weight )
+    {
+        final List<String> words = tokenize( text );
+        for ( final String word : words )
+        {
+            // '*' is a query syntax
+            final String term = word.endsWith( "*" ) ? word.substring( 0 ,
+                                                                       word.length() - 1 ) : word;
+
+            final Integer freq = freqs.get( term );
+            freqs.put( term ,
+                       freq == null ? weight : freq + weight );
+        }
+
+        return words.size() * weight;
+    }
+
+    /**
+     * Return the postings of a query term (several for a prefix).
+     */
+    private List<Postings> match( final String queryTerm )
+    {
+        final List<Postings> result = new ArrayList<>();
+
+        if ( queryTerm.endsWith( "*" ) )
+        {
+            final String prefix = queryTerm.substring( 0 ,
+                                                       queryTerm.length() - 1 );
+
+            result.addAll( terms.subMap( prefix ,
+                                         prefix + Character.MAX_VALUE ).values() );
+        }
+        else
+        {
+            final Postings postings = terms.get( queryTerm );
+            if ( postings != null )
+            {
+                result.add( postings );
+            }
+        }
+
+        return result;
+    }
+
+    private static int[] union( final List<Postings> list )
+    {
+        if ( list.size() == 1 )
+        {
+            final Postings postings = list.get( 0 );
+
+            return Arrays.copyOf( postings.docs ,
+                                  postings.size );
+        }
+
+        int total = 0;
+        for ( final Postings postings : list )
+        {
+            total += postings.size;
+        }
+
+        final int[] all = new int[ total ];
+        int pos = 0;
+        for ( final Postings postings : list )
+        {
+            System.arraycopy( postings.docs ,
+                              0 ,
+                              all ,
+                              pos ,
+                              postings.size );
+            pos += postings.size;
+        }
+
+        Arrays.sort( all );
+
+        // Remove duplicates
+        int size = 0;
+        for ( int i = 0 ; i < all.length ; ++i )
+        {
+            if ( size == 0 || all[size - 1] != all[i] )
+            {
+                all[size++] = all[i];
+            }
+        }
+
+        return Arrays.copyOf( all ,
+                              size );
+    }
+
+    private static int[] intersect( final int[] a ,
+                                    final int[] b )
+    {
+        final int[] result = new int[ Math.min( a.length ,
+                                                b.length ) ];
+        int size = 0;
+
+        int i = 0;
+        int j = 0;
+        while ( i < a.length && j < b.length )
+        {
+            if ( a[i] < b[j] )
+            {
+                ++i;
+            }
+            else if ( a[i] > b[j] )
+            {
+                ++j;
+            }
+            else
+            {
+                result[size++] = a[i];
+                ++i;
+                ++j;
+            }
+        }
+
+        return Arrays.copyOf( result ,
+                              size );
+    }
+
+    /**
+     * Return the links, newest first.
+     */
+    private List<ShaarliLink> toLinks( final int[] found )
+    {
+        final List<ShaarliLink> result = new ArrayList<>( found.length );
+        for ( final int doc : found )
+        {
+            result.add( docs[doc].link );
+        }
+
+        Collections.sort( result ,
+                          new Comparator<ShaarliLink>()
+        {
+            @Override
+            public int compare( final ShaarliLink l1 ,
+                                final ShaarliLink l2 )
+            {
+                return l2.getID().compareTo( l1.getID() );
+            }
+        } );
+
+        return result;
+    }
+
+    /**
+     * An indexed link.
+     */
+    private static final class Doc
+    {
+        // DEFAULT
+        final ShaarliLink link;
+        final String[] terms;
+        final int length;
+
+        Doc( final ShaarliLink link ,
+             final String[] terms ,
+             final int length )
+        {
+            this.link = link;
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Documents containing a term (sorted) and the term frequency in each document.
+     */
+    private static final class Postings
+    {
+        // DEFAULT
+        int[] docs;
+        int[] freqs;
+        int size;
+
+        Postings()
+        {
+            this.docs = new int[ 4 ];
+            this.freqs = new int[ 4 ];
+        }
+
+        void append( final int doc ,
+                     final int freq )
+        {
+            if ( size >= docs.length )
+            {
+                docs = Arrays.copyOf( docs ,
+                                      size * 2 );
+                freqs = Arrays.copyOf( freqs ,
+                                       size * 2 );
+            }
+
+            docs[size] = doc;
+            freqs[size] = freq;
+            ++size;
+        }
+
+        void remove( final int doc )
+        {
+            final int pos = Arrays.binarySearch( docs ,
+                                                 0 ,
+                                                 size ,
+                                                 doc );
+            if ( pos < 0 )
+            {
+                return;
+            }
+
+            System.arraycopy( docs ,
+                              pos + 1 ,
+                              docs ,
+                              pos ,
+                              size - pos - 1 );
+            System.arraycopy( freqs ,
+                              pos + 1 ,
+                              freqs ,
+                              pos ,
+                              size - pos - 1 );
+            --size;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import org.joda.time.DateTimeZone;
+
+/**
+ * Shaarli client settings. Settings are read when the client is built: don't modify them afterwards.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliSettings
+{
+    // PUBLIC
+    /**
+     * Construct settings with default values.
+     */
+    public ShaarliSettings()
+    {
+        this.maxConnections = 20;
+        this.maxConnectionsPerRoute = 10;
+        this.keepAlive = 30000L;
+        this.idleTimeout = 60000L;
+        this.userAgent = "Mozilla/5.0 (Windows NT 5.1; rv:15.0) Gecko/20100101 Firefox/15.0.1";
+        this.tokenPoolSize = 0;
+        this.tokenMaxAge = 1800000L;
+        this.readAhead = 0;
+        this.parallelism = 4;
+        this.streaming = false;
+        this.prefixScan = false;
+        this.exportScans = false;
+        this.serverTimeZone = DateTimeZone.getDefault();
+        this.responseCacheSize = 0;
+        this.compression = true;
+        this.tagCloudTTL = 0L;
+    }
+
+    /**
+     * Get the maximum number of pooled connections.
+     *
+     * @return the maximum number of connections
+     */
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    /**
+     * Set the maximum number of pooled connections.
+     *
+     * @param maxConnections the maximum number of connections (>=1)
+     */
+    public void setMaxConnections( final int maxConnections )
+    {
+        if ( maxConnections < 1 )
+        {
+            throw new IllegalArgumentException( "maxConnections must be greater or equals to 1" );
+        }
+
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Get the maximum number of pooled connections to the Shaarli host.
+     *
+     * @return the maximum number of connections per route
+     */
+    public int getMaxConnectionsPerRoute()
+    {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Set the maximum number of pooled connections to the Shaarli host.
+     *
+     * @param maxConnectionsPerRoute the maximum number of connections per route (>=1)
+     */
+    public void setMaxConnectionsPerRoute( final int maxConnectionsPerRoute )
+    {
+        if ( maxConnectionsPerRoute < 1 )
+        {
+            throw new IllegalArgumentException( "maxConnectionsPerRoute must be greater or equals to 1" );
+        }
+
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Get the keep-alive duration used when the server doesn't send one.
+     *
+     * @return the keep-alive duration in milliseconds
+     */
+    public long getKeepAlive()
+    {
+        return keepAlive;
+    }
+
+    /**
+     * Set the keep-alive duration used when the server doesn't send one.
+     *
+     * @param keepAlive the keep-alive duration in milliseconds (>=0, 0 keeps the connection forever)
+     */
+    public void setKeepAlive( final long keepAlive )
+    {
+        if ( keepAlive < 0L )
+        {
+            throw new IllegalArgumentException( "keepAlive must be positive" );
+        }
+
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Get the duration after which an idle connection is evicted from the pool.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * Set the duration after which an idle connection is evicted from the pool.
+     *
+     * @param idleTimeout the idle timeout in milliseconds (>=0, 0 disables the eviction)
+     */
+    public void setIdleTimeout( final long idleTimeout )
+    {
+        if ( idleTimeout < 0L )
+        {
+            throw new IllegalArgumentException( "idleTimeout must be positive" );
+        }
+
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Get the HTTP user agent.
+     *
+     * @return the user agent
+     */
+    public String getUserAgent()
+    {
+        return userAgent;
+    }
+
+    /**
+     * Set the HTTP user agent.
+     *
+     * @param userAgent the user agent
+     */
+    public void setUserAgent( final String userAgent )
+    {
+        if ( userAgent == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Get the number of form tokens fetched in advance.
+     *
+     * @return the token pool size
+     */
+    public int getTokenPoolSize()
+    {
+        return tokenPoolSize;
+    }
+
+    /**
+     * Set the number of form tokens fetched in advance. With a pool, writes don't need to download a form before posting.
+     *
+     * @param tokenPoolSize the token pool size (>=0, 0 disables the pool)
+     */
+    public void setTokenPoolSize( final int tokenPoolSize )
+    {
+        if ( tokenPoolSize < 0 )
+        {
+            throw new IllegalArgumentException( "tokenPoolSize must be positive" );
+        }
+
+        this.tokenPoolSize = tokenPoolSize;
+    }
+
+    /**
+     * Get the duration after which a pooled token is considered as stale.
+     *
+     * @return the token max age in milliseconds
+     */
+    public long getTokenMaxAge()
+    {
+        return tokenMaxAge;
+    }
+
+    /**
+     * Set the duration after which a pooled token is considered as stale. It should be lower than the Shaarli session
+     * lifetime.
+     *
+     * @param tokenMaxAge the token max age in milliseconds (>=1)
+     */
+    public void setTokenMaxAge( final long tokenMaxAge )
+    {
+        if ( tokenMaxAge <= 0L )
+        {
+            throw new IllegalArgumentException( "tokenMaxAge must be greater or equals to 1" );
+        }
+
+        this.tokenMaxAge = tokenMaxAge;
+    }
+
+    /**
+     * Get the number of pages fetched in advance by iterators.
+     *
+     * @return the read-ahead depth
+     */
+    public int getReadAhead()
+    {
+        return readAhead;
+    }
+
+    /**
+     * Set the number of pages fetched in advance by iterators. Pages are fetched concurrently while the current page is
+     * read, so at most readAhead+1 pages are held in memory.
+     *
+     * @param readAhead the read-ahead depth (>=0, 0 fetches pages one by one)
+     */
+    public void setReadAhead( final int readAhead )
+    {
+        if ( readAhead < 0 )
+        {
+            throw new IllegalArgumentException( "readAhead must be positive" );
+        }
+
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Get the number of pages fetched concurrently when the pages range is known (like in reverse iterators).
+     *
+     * @return the parallelism
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of pages fetched concurrently when the pages range is known (like in reverse iterators). It is
+     * also bounded by the connections per route.
+     *
+     * @param parallelism the parallelism (>=1, 1 fetches pages one by one)
+     */
+    public void setParallelism( final int parallelism )
+    {
+        if ( parallelism < 1 )
+        {
+            throw new IllegalArgumentException( "parallelism must be greater or equals to 1" );
+        }
+
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Are link pages parsed in streaming mode ?
+     *
+     * @return true if streaming mode is used
+     */
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+    /**
+     * Parse link pages in streaming mode. Instead of building the DOM of the whole page, each link is parsed as soon as
+     * it is downloaded, and the page is never held in memory. Parallel scans receive links before the page is
+     * complete. Links are found with the last steps of the links template (the list and the item, like "ul li"): if
+     * they have no tag name, pages are parsed in full.
+     *
+     * @param streaming true to use streaming mode
+     */
+    public void setStreaming( final boolean streaming )
+    {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Are single values (token, links count) read with prefix scans ?
+     *
+     * @return true if prefix scans are used
+     */
+    public boolean isPrefixScan()
+    {
+        return prefixScan;
+    }
+
+    /**
+     * Read single values near the top of pages (token, links count) with prefix scans. The page is read by growing
+     * chunks until the value is found, then the connection is aborted instead of downloading the rest of the page.
+     * Aborted connections can't be reused: it pays when pages are big. The pages count is at the bottom of the page: it
+     * is always read with a full parse.
+     *
+     * @param prefixScan true to use prefix scans
+     */
+    public void setPrefixScan( final boolean prefixScan )
+    {
+        this.prefixScan = prefixScan;
+    }
+
+    /**
+     * Do full scans read the export when the client is logged ?
+     *
+     * @return true if full scans read the export
+     */
+    public boolean isExportScans()
+    {
+        return exportScans;
+    }
+
+    /**
+     * Read the export in full scans (searchAllIterator, searchAllIDsIterator, searchAllParallel, deleteAll), when the
+     * client is logged. All links come in one request instead of one request per page. Disabled by default, because
+     * export links differ from page links:
+     * <ul>
+     * <li>they have no permalink ID ;</li>
+     * <li>descriptions are the raw text of the export ;</li>
+     * <li>IDs are rebuilt from timestamps with the server time zone (see setServerTimeZone()).</li>
+     * </ul>
+     *
+     * @param exportScans true to read the export
+     */
+    public void setExportScans( final boolean exportScans )
+    {
+        this.exportScans = exportScans;
+    }
+
+    /**
+     * Get the time zone of the Shaarli server.
+     *
+     * @return the time zone
+     */
+    public DateTimeZone getServerTimeZone()
+    {
+        return serverTimeZone;
+    }
+
+    /**
+     * Set the time zone of the Shaarli server (default: the client one). A link ID is a date in the server time zone,
+     * but the export and the import exchange timestamps: the time zone converts one to the other.
+     *
+     * @param serverTimeZone the time zone
+     */
+    public void setServerTimeZone( final DateTimeZone serverTimeZone )
+    {
+        if ( serverTimeZone == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.serverTimeZone = serverTimeZone;
+    }
+
+    /**
+     * Get the number of parsed pages kept in cache.
+     *
+     * @return the cache size
+     */
+    public int getResponseCacheSize()
+    {
+        return responseCacheSize;
+    }
+
+    /**
+     * Set the number of parsed pages kept in cache (links pages, tag cloud, links count). Cached pages are revalidated
+     * with a conditional request (If-None-Match / If-Modified-Since): if Shaarli answers 304, the parsed page is
+     * reused. Only pages with an ETag or a Last-Modified header are cached.
+     *
+     * @param responseCacheSize the cache size (>=0, 0 disables the cache)
+     */
+    public void setResponseCacheSize( final int responseCacheSize )
+    {
+        if ( responseCacheSize < 0 )
+        {
+            throw new IllegalArgumentException( "responseCacheSize must be positive" );
+        }
+
+        this.responseCacheSize = responseCacheSize;
+    }
+
+    /**
+     * Are responses compressed ?
+     *
+     * @return true if compression is negotiated
+     */
+    public boolean isCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * Negotiate compressed responses (Accept-Encoding: gzip,deflate). Responses are decompressed while they are
+     * parsed. Disable it if the CPU costs more than the bandwidth (like on a local network).
+     *
+     * @param compression true to negotiate compression
+     */
+    public void setCompression( final boolean compression )
+    {
+        this.compression = compression;
+    }
+
+    /**
+     * Get the tag cloud lifetime.
+     *
+     * @return the lifetime in milliseconds
+     */
+    public long getTagCloudTTL()
+    {
+        return tagCloudTTL;
+    }
+
+    /**
+     * Set the tag cloud lifetime. getTags() fetches the tag cloud once, then counts are updated with the links created,
+     * modified or deleted by the client. After the lifetime (or after a change which can't be counted), the counts are
+     * still returned while the tag cloud is fetched again in background.
+     *
+     * @param tagCloudTTL the lifetime in milliseconds (>=0, 0 disables the cache)
+     */
+    public void setTagCloudTTL( final long tagCloudTTL )
+    {
+        if ( tagCloudTTL < 0L )
+        {
+            throw new IllegalArgumentException( "tagCloudTTL must be positive" );
+        }
+
+        this.tagCloudTTL = tagCloudTTL;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShaarliSettings{" + "maxConnections=" + maxConnections + ", maxConnectionsPerRoute=" + maxConnectionsPerRoute + ", keepAlive=" + keepAlive + ", idleTimeout=" + idleTimeout + ", userAgent=" + userAgent + ", tokenPoolSize=" + tokenPoolSize + ", tokenMaxAge=" + tokenMaxAge + ", readAhead=" + readAhead + ", parallelism=" + parallelism + ", streaming=" + streaming + ", prefixScan=" + prefixScan + ", exportScans=" + exportScans + ", serverTimeZone=" + serverTimeZone + ", responseCacheSize=" + responseCacheSize + ", compression=" + compression + ", tagCloudTTL=" + tagCloudTTL + '}';
+    }
+
+    // PRIVATE
+    private int maxConnections;
+    private int maxConnectionsPerRoute;
+    private long keepAlive;
+    private long idleTimeout;
+    private String userAgent;
+    private int tokenPoolSize;
+    private long tokenMaxAge;
+    private int readAhead;
+    private int parallelism;
+    private boolean streaming;
+    private boolean prefixScan;
+    private boolean exportScans;
+    private DateTimeZone serverTimeZone;
+    private int responseCacheSize;
+    private boolean compression;
+    private long tagCloudTTL;
+}
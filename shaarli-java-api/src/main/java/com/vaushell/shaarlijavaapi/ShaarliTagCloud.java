@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tag cloud cache. The tag cloud is fetched once, then counts are updated with the changes made by the client: the
+ * tags of a link created or modified by the client are known, so a later change is a diff. A change which can't be
+ * counted (modification of an unknown link, import) marks the cache as stale.
+ *
+ * A stale or expired cache is still returned while it is revalidated in background. A change is announced before it is
+ * posted (begin()): a fetch which runs meanwhile may or may not see it, so its counts are stale.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliTagCloud
+{
+    // DEFAULT
+    /**
+     * Construct the cache.
+     *
+     * @param ttl Milliseconds before revalidation
+     * @param fetcher Fetch the tag cloud
+     * @param executor Run the revalidations
+     */
+    ShaarliTagCloud( final long ttl ,
+                     final Callable<Map<String , Integer>> fetcher ,
+                     final Executor executor )
+    {
+        if ( ttl <= 0L || fetcher == null || executor == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.ttl = ttl;
+        this.fetcher = fetcher;
+        this.executor = executor;
+        // Tags of the recently changed links: an evicted link is unknown again
+        this.known = new LinkedHashMap<String , Set<String>>( 16 ,
+                                                              0.75f ,
+                                                              true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String , Set<String>> eldest )
+            {
+                return size() > MAX_KNOWN;
+            }
+        };
+        this.refreshing = new AtomicBoolean();
+    }
+
+    /**
+     * Return the tag counts. Only the first call waits for Shaarli.
+     *
+     * @return Tags and their counts
+     * @throws IOException
+     */
+    Map<String , Integer> get()
+        throws IOException
+    {
+        final Map<String , Integer> snapshot;
+        final boolean stale;
+        synchronized( this )
+        {
+            snapshot = counts == null ? null : new TreeMap<>( counts );
+            stale = dirty || System.currentTimeMillis() - loaded > ttl;
+        }
+
+        if ( snapshot != null )
+        {
+            if ( stale )
+            {
+                revalidate();
+            }
+
+            return snapshot;
+        }
+
+        refresh();
+
+        synchronized( this )
+        {
+            return counts == null ? null : new TreeMap<>( counts );
+        }
+    }
+
+    /**
+     * Announce a change, before it is posted. It must be followed by update(), delete(), invalidate() or abort().
+     */
+    synchronized void begin()
+    {
+        ++version;
+        ++pending;
+    }
+
+    /**
+     * The announced change failed (it may have been applied by Shaarli).
+     */
+    synchronized void abort()
+    {
+        end();
+        ++version;
+
+        dirty = true;
+    }
+
+    /**
+     * Count a link created or modified by the client.
+     *
+     * @param ID Link's ID
+     * @param tags Link's tags
+     * @param created true if the ID is new
+     */
+    synchronized void update( final String ID ,
+                              final Collection<String> tags ,
+                              final boolean created )
+    {
+        end();
+        ++version;
+
+        final Set<String> newTags = normalize( tags );
+        final Set<String> oldTags = created ? Collections.<String>emptySet() : known.get( ID );
+
+        known.put( ID ,
+                   newTags );
+
+        if ( oldTags == null )
+        {
+            dirty = true;
+            return;
+        }
+
+        for ( final String tag : oldTags )
+        {
+            if ( !newTags.contains( tag ) )
+            {
+                decrement( tag );
+            }
+        }
+
+        for ( final String tag : newTags )
+        {
+            if ( !oldTags.contains( tag ) )
+            {
+                increment( tag );
+            }
+        }
+    }
+
+    /**
+     * Count a link deleted by the client.
+     *
+     * @param ID Link's ID
+     */
+    synchronized void delete( final String ID )
+    {
+        end();
+        ++version;
+
+        final Set<String> oldTags = known.remove( ID );
+        if ( oldTags == null )
+        {
+            dirty = true;
+            return;
+        }
+
+        for ( final String tag : oldTags )
+        {
+            decrement( tag );
+        }
+    }
+
+    /**
+     * Mark the cache as stale (links changed in an unknown way).
+     */
+    synchronized void invalidate()
+    {
+        end();
+        ++version;
+
+        dirty = true;
+        known.clear();
+    }
+
+    /**
+     * Remove the counts (the next call waits for Shaarli). Used when the visible links change, like after a login.
+     */
+    synchronized void clear()
+    {
+        ++version;
+
+        counts = null;
+    }
+
+    // PRIVATE
+    private static final Logger LOGGER = LoggerFactory.getLogger( ShaarliTagCloud.class );
+    private static final int MAX_KNOWN = 10000;
+    private final long ttl;
+    private final Callable<Map<String , Integer>> fetcher;
+    private final Executor executor;
+    private final Map<String , Set<String>> known;
+    private final AtomicBoolean refreshing;
+    private Map<String , Integer> counts;
+    private long loaded;
+    private boolean dirty;
+    private int version;
+    private int pending;
+
+    /**
+     * Fetch the tag cloud. Changes made or posted during the fetch may be missing: then the cache stays stale.
+     */
+    private void refresh()
+        throws IOException
+    {
+        final int startVersion;
+        synchronized( this )
+        {
+            startVersion = version;
+        }
+
+        final Map<String , Integer> fetched;
+        try
+        {
+            fetched = fetcher.call();
+        }
+        catch( final IOException ex )
+        {
+            throw ex;
+        }
+        catch( final Exception ex )
+        {
+            throw new IOException( ex );
+        }
+
+        if ( fetched == null )
+        {
+            throw new IOException( "Cannot fetch tag cloud" );
+        }
+
+        synchronized( this )
+        {
+            counts = new HashMap<>( fetched );
+            loaded = System.currentTimeMillis();
+            dirty = version != startVersion || pending > 0;
+        }
+    }
+
+    private void revalidate()
+    {
+        if ( !refreshing.compareAndSet( false ,
+                                        true ) )
+        {
+            return;
+        }
+
+        try
+        {
+            executor.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        refresh();
+                    }
+                    catch( final IOException ex )
+                    {
+                        LOGGER.error( "Cannot revalidate tag cloud" ,
+                                      ex );
+                    }
+                    finally
+                    {
+                        refreshing.set( false );
+                    }
+                }
+            } );
+        }
+        catch( final RejectedExecutionException ex )
+        {
+            // Client is closed
+            refreshing.set( false );
+        }
+    }
+
+    private void end()
+    {
+        if ( pending <= 0 )
+        {
+            throw new IllegalStateException( "change not announced by begin()" );
+        }
+
+        --pending;
+    }
+
+    private void increment( final String tag )
+    {
+        if ( counts == null )
+        {
+            return;
+        }
+
+        final Integer count = counts.get( tag );
+        counts.put( tag ,
+                    count == null ? 1 : count + 1 );
+    }
+
+    private void decrement( final String tag )
+    {
+        if ( counts == null )
+        {
+            return;
+        }
+
+        final Integer count = counts.get( tag );
+        if ( count == null || count <= 1 )
+        {
+            counts.remove( tag );
+        }
+        else
+        {
+            counts.put( tag ,
+                        count - 1 );
+        }
+    }
+
+    private static Set<String> normalize( final Collection<String> tags )
+    {
+        final Set<String> lowerTags = new HashSet<>();
+        if ( tags != null )
+        {
+            for ( final String tag : tags )
+            {
+                lowerTags.add( tag.toLowerCase( Locale.ENGLISH ) );
+            }
+        }
+
+        return lowerTags;
+    }
+}
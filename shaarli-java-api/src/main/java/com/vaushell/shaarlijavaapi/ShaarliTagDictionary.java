@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dictionary of tag names. Each name gets an int code, and a single String instance is kept by name. Links store the
+ * codes of their tags.
+ *
+ * Thread-safe. Codes are never reused: a dictionary only grows, with the number of distinct tags it has seen. It is
+ * released with the last link which uses it. Each client, table and codec reader has its own dictionary: the tags it
+ * has read are released with it and its links.
+ *
+ * <b>The default dictionary is never released.</b> It is used by the links built by the application (ShaarliLink
+ * constructors and deserialization): every tag ever added to such a link stays in memory until the JVM exits.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public final class ShaarliTagDictionary
+{
+    // PUBLIC
+    /**
+     * Construct an empty dictionary.
+     */
+    public ShaarliTagDictionary()
+    {
+        this.codes = new ConcurrentHashMap<>();
+        this.names = new String[ 256 ];
+    }
+
+    /**
+     * Return the dictionary of the links built by the application. It is shared by the JVM and never shrinks.
+     *
+     * @return the dictionary
+     */
+    public static ShaarliTagDictionary getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Return the code of a tag, adding it if needed.
+     *
+     * @param name Tag name
+     * @return the code
+     */
+    public int intern( final String name )
+    {
+        if ( name == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final Integer code = codes.get( name );
+        if ( code != null )
+        {
+            return code;
+        }
+
+        synchronized( this )
+        {
+            final Integer existing = codes.get( name );
+            if ( existing != null )
+            {
+                return existing;
+            }
+
+            final int newCode = size;
+            String[] current = names;
+            if ( newCode >= current.length )
+            {
+                current = Arrays.copyOf( current ,
+                                         current.length * 2 );
+            }
+            current[newCode] = name;
+
+            // Publish the name before the code
+            names = current;
+            size = newCode + 1;
+            codes.put( name ,
+                       newCode );
+
+            return newCode;
+        }
+    }
+
+    /**
+     * Return the code of a tag, without adding it.
+     *
+     * @param name Tag name
+     * @return the code, or -1 if the tag is unknown
+     */
+    public int lookup( final String name )
+    {
+        if ( name == null )
+        {
+            return -1;
+        }
+
+        final Integer code = codes.get( name );
+
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Return the name of a tag.
+     *
+     * @param code Tag code
+     * @return the name
+     */
+    public String getName( final int code )
+    {
+        final String[] current = names;
+        if ( code < 0 || code >= current.length || current[code] == null )
+        {
+            throw new IllegalArgumentException( "Unknown tag code: " + code );
+        }
+
+        return current[code];
+    }
+
+    /**
+     * Return the number of tags.
+     *
+     * @return the tags count
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    // PRIVATE
+    private static final ShaarliTagDictionary DEFAULT = new ShaarliTagDictionary();
+    private final ConcurrentMap<String , Integer> codes;
+    private volatile String[] names;
+    private volatile int size;
+}
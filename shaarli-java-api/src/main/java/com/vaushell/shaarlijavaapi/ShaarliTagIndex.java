@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local index of link tags. Each link gets a dense ordinal (ordered by ID, so the greatest ordinal is the newest link)
+ * and each tag a compressed bitmap of ordinals. Tag combinations are bitmap operations: no link is read until a page is
+ * returned.
+ *
+ * Tags are lower-cased like parsed tags. When a link older than the newest indexed link is added, or when half of the
+ * ordinals are unused, ordinals are rebuilt by the next query.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliTagIndex
+{
+    // PUBLIC
+    public ShaarliTagIndex()
+    {
+        this.tags = new HashMap<>();
+        this.ordinals = new HashMap<>();
+        this.links = new ShaarliLink[ 64 ];
+        this.live = new ShaarliBitmap();
+        this.lock = new ReentrantReadWriteLock();
+        this.ordered = true;
+    }
+
+    /**
+     * Index a link, or re-index it if a link with the same ID is indexed.
+     *
+     * @param link the link (with an ID)
+     */
+    public void add( final ShaarliLink link )
+    {
+        if ( link == null || link.getID() == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            removeLink( link.getID() );
+
+            if ( newestID != null && link.getID().compareTo( newestID ) < 0 )
+            {
+                ordered = false;
+            }
+            else
+            {
+                newestID = link.getID();
+            }
+
+            addLink( link );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a link.
+     *
+     * @param ID the link ID
+     * @return true if the link was indexed
+     */
+    public boolean remove( final String ID )
+    {
+        if ( ID == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            final boolean removed = removeLink( ID );
+
+            if ( nextOrdinal > 1024 && ordinals.size() < nextOrdinal / 2 )
+            {
+                ordered = false;
+            }
+
+            return removed;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all links.
+     */
+    public void clear()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            reset( 64 );
+            newestID = null;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of indexed links.
+     *
+     * @return the links count
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return ordinals.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Count links matching a tags combination.
+     *
+     * @param all Links must have all these tags (or null)
+     * @param any Links must have one of these tags (or null)
+     * @param none Links must have none of these tags (or null)
+     * @return the links count
+     */
+    public int count( final Collection<String> all ,
+                      final Collection<String> any ,
+                      final Collection<String> none )
+    {
+        lockOrdered();
+        try
+        {
+            return select( all ,
+                           any ,
+                           none ).cardinality();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search links matching a tags combination, newest first.
+     *
+     * @param all Links must have all these tags (or null)
+     * @param any Links must have one of these tags (or null)
+     * @param none Links must have none of these tags (or null)
+     * @param page Page number (starts at 1)
+     * @param pageSize Links by page
+     * @return the links of the page
+     */
+    public List<ShaarliLink> search( final Collection<String> all ,
+                                     final Collection<String> any ,
+                                     final Collection<String> none ,
+                                     final int page ,
+                                     final int pageSize )
+    {
+        if ( page < 1 || pageSize < 1 )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        lockOrdered();
+        try
+        {
+            final int[] found = select( all ,
+                                        any ,
+                                        none ).reverseRange( ( page - 1 ) * pageSize ,
+                                                             pageSize );
+
+            final List<ShaarliLink> result = new ArrayList<>( found.length );
+            for ( final int ordinal : found )
+            {
+                result.add( links[ordinal] );
+            }
+
+            return result;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search links having all the tags, newest first.
+     *
+     * @param page Page number (starts at 1)
+     * @param pageSize Links by page
+     * @param tags Tags
+     * @return the links of the page
+     */
+    public List<ShaarliLink> searchTags( final int page ,
+                                         final int pageSize ,
+                                         final String... tags )
+    {
+        return search( Arrays.asList( tags ) ,
+                       null ,
+                       null ,
+                       page ,
+                       pageSize );
+    }
+
+    /**
+     * Count links having all the tags.
+     *
+     * @param tags Tags
+     * @return the links count
+     */
+    public int countTags( final String... tags )
+    {
+        return count( Arrays.asList( tags ) ,
+                      null ,
+                      null );
+    }
+
+    /**
+     * Count the other tags of the links having all the tags (facets).
+     *
+     * @param tags Selected tags (none for all links)
+     * @return Tags and their counts in the selection
+     */
+    public Map<String , Integer> getFacets( final String... tags )
+    {
+        lockOrdered();
+        try
+        {
+            final ShaarliBitmap selection = select( Arrays.asList( tags ) ,
+                                                    null ,
+                                                    null );
+
+            final Map<String , Integer> facets = new TreeMap<>();
+            for ( final Map.Entry<String , ShaarliBitmap> entry : this.tags.entrySet() )
+            {
+                final int count = ShaarliBitmap.andCardinality( selection ,
+                                                                entry.getValue() );
+                if ( count > 0 )
+                {
+                    facets.put( entry.getKey() ,
+                                count );
+                }
+            }
+
+            return facets;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    // PRIVATE
+    private static final ShaarliBitmap EMPTY = new ShaarliBitmap();
+    private final Map<String , ShaarliBitmap> tags;
+    private final Map<String , Integer> ordinals;
+    private final ReadWriteLock lock;
+    private ShaarliLink[] links;
+    private ShaarliBitmap live;
+    private int nextOrdinal;
+    private String newestID;
+    private boolean ordered;
+
+    /**
+     * Take the read lock, once ordinals are ordered.
+     */
+    private void lockOrdered()
+    {
+        lock.readLock().lock();
+        if ( ordered )
+        {
+            return;
+        }
+
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try
+        {
+            if ( !ordered )
+            {
+                renumber();
+            }
+
+            // Downgrade
+            lock.readLock().lock();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private ShaarliBitmap select( final Collection<String> all ,
+                                  final Collection<String> any ,
+                                  final Collection<String> none )
+    {
+        ShaarliBitmap result = live;
+
+        if ( all != null )
+        {
+            for ( final String tag : all )
+            {
+                result = ShaarliBitmap.and( result ,
+                                            get( tag ) );
+            }
+        }
+
+        if ( any != null && !any.isEmpty() )
+        {
+            result = ShaarliBitmap.and( result ,
+                                        union( any ) );
+        }
+
+        if ( none != null && !none.isEmpty() )
+        {
+            result = ShaarliBitmap.andNot( result ,
+                                           union( none ) );
+        }
+
+        return result;
+    }
+
+    private ShaarliBitmap union( final Collection<String> tagsList )
+    {
+        ShaarliBitmap result = new ShaarliBitmap();
+        for ( final String tag : tagsList )
+        {
+            result = ShaarliBitmap.or( result ,
+                                       get( tag ) );
+        }
+
+        return result;
+    }
+
+    private ShaarliBitmap get( final String tag )
+    {
+        if ( tag == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final ShaarliBitmap bitmap = tags.get( tag.toLowerCase( Locale.ENGLISH ) );
+
+        return bitmap == null ? EMPTY : bitmap;
+    }
+
+    private void addLink( final ShaarliLink link )
+    {
+        final int ordinal = nextOrdinal++;
+        if ( ordinal >= links.length )
+        {
+            links = Arrays.copyOf( links ,
+                                   links.length * 2 );
+        }
+
+        links[ordinal] = link;
+        ordinals.put( link.getID() ,
+                      ordinal );
+        live.add( ordinal );
+
+        for ( final String tag : link.getTags() )
+        {
+            final String lowerTag = tag.toLowerCase( Locale.ENGLISH );
+
+            ShaarliBitmap bitmap = tags.get( lowerTag );
+            if ( bitmap == null )
+            {
+                bitmap = new ShaarliBitmap();
+                tags.put( lowerTag ,
+                          bitmap );
+            }
+
+            bitmap.add( ordinal );
+        }
+    }
+
+    private boolean removeLink( final String ID )
+    {
+        final Integer ordinal = ordinals.remove( ID );
+        if ( ordinal == null )
+        {
+            return false;
+        }
+
+        final ShaarliLink link = links[ordinal];
+        links[ordinal] = null;
+        live.remove( ordinal );
+
+        for ( final String tag : link.getTags() )
+        {
+            final String lowerTag = tag.toLowerCase( Locale.ENGLISH );
+
+            final ShaarliBitmap bitmap = tags.get( lowerTag );
+            if ( bitmap != null )
+            {
+                bitmap.remove( ordinal );
+                if ( bitmap.isEmpty() )
+                {
+                    tags.remove( lowerTag );
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Give consecutive ordinals to the links, ordered by ID.
+     */
+    private void renumber()
+    {
+        final List<ShaarliLink> all = new ArrayList<>( ordinals.size() );
+        for ( int i = 0 ; i < nextOrdinal ; ++i )
+        {
+            if ( links[i] != null )
+            {
+                all.add( links[i] );
+            }
+        }
+
+        Collections.sort( all ,
+                          new Comparator<ShaarliLink>()
+        {
+            @Override
+            public int compare( final ShaarliLink l1 ,
+                                final ShaarliLink l2 )
+            {
+                return l1.getID().compareTo( l2.getID() );
+            }
+        } );
+
+        reset( Math.max( 64 ,
+                         all.size() ) );
+
+        for ( final ShaarliLink link : all )
+        {
+            addLink( link );
+        }
+    }
+
+    private void reset( final int capacity )
+    {
+        tags.clear();
+        ordinals.clear();
+        links = new ShaarliLink[ capacity ];
+        live = new ShaarliBitmap();
+        nextOrdinal = 0;
+        ordered = true;
+    }
+}
@@ -20,6 +20,10 @@
 package com.vaushell.shaarlijavaapi;
 
 import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
 
 /**
  * How to find usefull information in a Shaarli template. See source to get the keys.
@@ -179,9 +183,52 @@ public class ShaarliTemplates
         return templates.get( key );
     }
 
+    /**
+     * Keys used by the client.
+     */
+    public enum Key
+    {
+        ID_DATEFORMAT( "id-dateformat" ),
+        PERMALINK_DATEFORMAT( "permalink-dateformat" ),
+        CLOUDTAG( "cloudtag" ),
+        CLOUDTAG_NAME( "cloudtag-name" ),
+        CLOUDTAG_COUNT( "cloudtag-count" ),
+        LINKS_COUNT( "links-count" ),
+        TOKEN( "token" ),
+        LINKS( "links" ),
+        LINKS_PRIVATE( "links-private" ),
+        LINKS_ID( "links-id" ),
+        LINKS_PERMALINK_ID( "links-permalink-id" ),
+        LINKS_TITLE( "links-title" ),
+        LINKS_DESCRIPTION( "links-description" ),
+        LINKS_URL( "links-url" ),
+        TAGS( "tags" ),
+        TAGS_TAG( "tags-tag" ),
+        PAGE_MAX( "page-max" );
+
+        // PUBLIC
+        /**
+         * Return the template's key.
+         *
+         * @return the key
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        // PRIVATE
+        private final String name;
+
+        private Key( final String name )
+        {
+            this.name = name;
+        }
+    }
+
     // DEFAULT
     /**
-     * A template.
+     * A template. The regex is compiled once, when the template is added.
      */
     public static final class Template
     {
@@ -189,6 +236,7 @@ public class ShaarliTemplates
         final String cssPath;
         final String attribut;
         final String regex;
+        final Pattern pattern;
 
         Template( final String cssPath ,
                   final String attribut ,
@@ -197,9 +245,125 @@ public class ShaarliTemplates
             this.cssPath = cssPath;
             this.attribut = attribut;
             this.regex = regex;
+            this.pattern = regex.isEmpty() ? null : Pattern.compile( regex );
+        }
+
+        /**
+         * Select elements matching the CSS path.
+         *
+         * @param root Where to search
+         * @return the elements
+         */
+        Elements select( final Element root )
+        {
+            return root.select( cssPath );
+        }
+
+        /**
+         * Extract the information from an element.
+         *
+         * @param source Where to search
+         * @return the information, or null if not found
+         */
+        String extract( final Element source )
+        {
+            if ( cssPath.isEmpty() )
+            {
+                return content( source );
+            }
+
+            final Elements elts = select( source );
+            if ( elts.isEmpty() )
+            {
+                return null;
+            }
+
+            return content( elts.first() );
+        }
+
+        /**
+         * Extract the information from the element matched by the CSS path.
+         *
+         * @param elt the matched element
+         * @return the information, or null if empty
+         */
+        String content( final Element elt )
+        {
+            String content;
+            if ( attribut.isEmpty() )
+            {
+                content = elt.text();
+            }
+            else
+            {
+                content = elt.attr( attribut );
+            }
+            if ( content == null )
+            {
+                return null;
+            }
+            content = content.trim();
+
+            if ( pattern != null )
+            {
+                final Matcher m = pattern.matcher( content );
+                if ( m.find() )
+                {
+                    content = m.group().trim();
+                }
+            }
+
+            if ( content.isEmpty() )
+            {
+                return null;
+            }
+
+            return content;
         }
     }
 
+    /**
+     * Templates compiled for the client. Keys are resolved once: the client doesn't see later modifications.
+     */
+    static final class Compiled
+    {
+        // DEFAULT
+        Compiled( final ShaarliTemplates source )
+        {
+            final Key[] keys = Key.values();
+
+            this.slots = new Template[ keys.length ];
+            for ( final Key key : keys )
+            {
+                final Template template = source.get( key.getName() );
+                if ( template == null )
+                {
+                    throw new IllegalArgumentException( "template '" + key.getName() + "' not found" );
+                }
+
+                slots[key.ordinal()] = template;
+            }
+        }
+
+        Template get( final Key key )
+        {
+            return slots[key.ordinal()];
+        }
+
+        // PRIVATE
+        private final Template[] slots;
+    }
+
+    /**
+     * Compile the templates.
+     *
+     * @return the compiled templates
+     */
+    Compiled compile()
+    {
+        return new Compiled( this );
+    }
+
     // PRIVATE
     private final HashMap<String , Template> templates;
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of form tokens. Shaarli accepts every token generated in the session (once), so tokens are fetched in background
+ * before they are needed.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliTokenPool
+    implements AutoCloseable
+{
+    // DEFAULT
+    /**
+     * Construct the pool.
+     *
+     * @param size Number of tokens to keep ready
+     * @param maxAge Token lifetime in milliseconds (older tokens are evicted)
+     * @param fetcher Fetch a new token
+     */
+    ShaarliTokenPool( final int size ,
+                      final long maxAge ,
+                      final Callable<String> fetcher )
+    {
+        if ( size < 1 || maxAge <= 0L || fetcher == null )
+        {
+            throw new IllegalArgumentException();
+        }
+
+        this.size = size;
+        this.maxAge = maxAge;
+        this.fetcher = fetcher;
+        this.tokens = new LinkedBlockingQueue<>();
+        this.generation = new AtomicInteger();
+        this.refilling = new AtomicBoolean();
+        this.refiller = Executors.newSingleThreadExecutor( new ShaarliThreadFactory( "shaarli-token-pool" ) );
+    }
+
+    /**
+     * Take a fresh token. If the pool is empty, the token is fetched directly.
+     *
+     * @return the token
+     * @throws IOException
+     */
+    String take()
+        throws IOException
+    {
+        final int currentGeneration = generation.get();
+        final long now = System.currentTimeMillis();
+
+        Token token = tokens.poll();
+        while ( token != null && ( token.generation != currentGeneration || now - token.created > maxAge ) )
+        {
+            token = tokens.poll();
+        }
+
+        refill();
+
+        if ( token != null )
+        {
+            return token.value;
+        }
+
+        return fetch();
+    }
+
+    /**
+     * Remove all tokens (the session has changed) and fetch new ones.
+     */
+    void clear()
+    {
+        generation.incrementAndGet();
+        tokens.clear();
+
+        refill();
+    }
+
+    /**
+     * Fetch tokens in background until the pool is full.
+     */
+    void refill()
+    {
+        if ( tokens.size() >= size || !refilling.compareAndSet( false ,
+                                                                true ) )
+        {
+            return;
+        }
+
+        try
+        {
+            refiller.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while ( tokens.size() < size )
+                        {
+                            final int currentGeneration = generation.get();
+
+                            final String value = fetch();
+                            if ( value == null )
+                            {
+                                break;
+                            }
+
+                            if ( currentGeneration == generation.get() )
+                            {
+                                tokens.add( new Token( value ,
+                                                       currentGeneration ) );
+                            }
+                        }
+                    }
+                    catch( final IOException ex )
+                    {
+                        LOGGER.error( "Cannot refill token pool" ,
+                                      ex );
+                    }
+                    finally
+                    {
+                        refilling.set( false );
+                    }
+                }
+            } );
+        }
+        catch( final RuntimeException ex )
+        {
+            // Pool is closed
+            refilling.set( false );
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        refiller.shutdownNow();
+        tokens.clear();
+    }
+
+    // PRIVATE
+    private static final Logger LOGGER = LoggerFactory.getLogger( ShaarliTokenPool.class );
+    private final int size;
+    private final long maxAge;
+    private final Callable<String> fetcher;
+    private final BlockingQueue<Token> tokens;
+    private final AtomicInteger generation;
+    private final AtomicBoolean refilling;
+    private final ExecutorService refiller;
+
+    private String fetch()
+        throws IOException
+    {
+        try
+        {
+            return fetcher.call();
+        }
+        catch( final IOException ex )
+        {
+            throw ex;
+        }
+        catch( final Exception ex )
+        {
+            throw new IOException( ex );
+        }
+    }
+
+    /**
+     * A token and its creation date.
+     */
+    private static final class Token
+    {
+        // DEFAULT
+        final String value;
+        final int generation;
+        final long created;
+
+        Token( final String value ,
+               final int generation )
+        {
+            this.value = value;
+            this.generation = generation;
+            this.created = System.currentTimeMillis();
+        }
+    }
+}
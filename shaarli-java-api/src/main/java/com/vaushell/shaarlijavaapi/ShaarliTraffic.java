@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Bytes received by a client: on the wire (compressed) and decoded (given to the parser). Only the clients built from
+ * settings count their traffic.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliTraffic
+{
+    // PUBLIC
+    /**
+     * Return the number of bytes received on the wire (response bodies, before decompression).
+     *
+     * @return the wire bytes
+     */
+    public long getWireBytes()
+    {
+        return wireBytes.get();
+    }
+
+    /**
+     * Return the number of bytes read by the parsers (response bodies, after decompression).
+     *
+     * @return the decoded bytes
+     */
+    public long getDecodedBytes()
+    {
+        return decodedBytes.get();
+    }
+
+    /**
+     * Reset the counters.
+     */
+    public void reset()
+    {
+        wireBytes.set( 0L );
+        decodedBytes.set( 0L );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShaarliTraffic{" + "wireBytes=" + wireBytes + ", decodedBytes=" + decodedBytes + '}';
+    }
+
+    // DEFAULT
+    ShaarliTraffic()
+    {
+        this.wireBytes = new AtomicLong();
+        this.decodedBytes = new AtomicLong();
+    }
+
+    /**
+     * Count the response bodies. Must be added before the decompression.
+     *
+     * @return the interceptor
+     */
+    HttpResponseInterceptor wireCounter()
+    {
+        return new CountingInterceptor( wireBytes );
+    }
+
+    /**
+     * Count the response bodies. Must be added after the decompression.
+     *
+     * @return the interceptor
+     */
+    HttpResponseInterceptor decodedCounter()
+    {
+        return new CountingInterceptor( decodedBytes );
+    }
+
+    // PRIVATE
+    private final AtomicLong wireBytes;
+    private final AtomicLong decodedBytes;
+
+    /**
+     * Wrap the response entity to count the bytes read.
+     */
+    private static final class CountingInterceptor
+        implements HttpResponseInterceptor
+    {
+        // PUBLIC
+        CountingInterceptor( final AtomicLong counter )
+        {
+            this.counter = counter;
+        }
+
+        @Override
+        public void process( final HttpResponse response ,
+                             final HttpContext context )
+            throws HttpException , IOException
+        {
+            final HttpEntity entity = response.getEntity();
+            if ( entity == null )
+            {
+                return;
+            }
+
+            response.setEntity( new HttpEntityWrapper( entity )
+            {
+                @Override
+                public InputStream getContent()
+                    throws IOException
+                {
+                    return new ProxyInputStream( super.getContent() )
+                    {
+                        @Override
+                        protected void afterRead( final int n )
+                        {
+                            if ( n > 0 )
+                            {
+                                counter.addAndGet( n );
+                            }
+                        }
+                    };
+                }
+            } );
+        }
+
+        // PRIVATE
+        private final AtomicLong counter;
+    }
+}
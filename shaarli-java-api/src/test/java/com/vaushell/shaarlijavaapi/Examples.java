@@ -20,10 +20,15 @@
 package com.vaushell.shaarlijavaapi;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.concurrent.Future;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Shaarli client usage examples.
@@ -57,9 +62,12 @@ public final class Examples
         searchTagsExample();
 
         searchTagsPage1Example();
+
+        asyncExample();
     }
 
     // PRIVATE
+    private static final Logger LOGGER = LoggerFactory.getLogger( Examples.class );
 //    private static final String LOGIN = "MY_LOGIN";
 //    private static final String PASSWORD = "MY_PASSWORD";
 //    private static final String ENDPOINT = "http://fabien.vauchelles.com/~fabien/shaarli";
@@ -434,4 +442,66 @@ public final class Examples
             }
         }
     }
+
+    /**
+     * Show how we use the asynchronous client.
+     *
+     * @throws Exception
+     */
+    private static void asyncExample()
+        throws Exception
+    {
+        try( final ShaarliClient client = new ShaarliClient( ENDPOINT ) ;
+             final ShaarliAsyncClient asyncClient = new ShaarliAsyncClient( client ) )
+        {
+            if ( !client.login( LOGIN ,
+                                PASSWORD ) )
+            {
+                throw new IOException( "Login error" );
+            }
+
+            // Name tags
+            final TreeSet<String> tags = new TreeSet<>();
+            tags.add( "java" );
+            tags.add( "coding" );
+
+            // Create 10 links without waiting
+            final List<Future<String>> creations = new ArrayList<>();
+            DateTime t = new DateTime();
+            for ( int i = 0 ; i < 10 ; ++i )
+            {
+                creations.add( asyncClient.createOrUpdateLink( client.convertIDdateToString( t ) ,
+                                                               "http://fabien.vauchelles.com/" + i ,
+                                                               "Blog de Fabien Vauchelles n°" + i ,
+                                                               "Du coooodde rahhh::!!!!! #" + i ,
+                                                               tags ,
+                                                               false ,
+                                                               null ) );
+
+                t = t.plusSeconds( 1 );
+            }
+
+            for ( final Future<String> creation : creations )
+            {
+                creation.get();
+            }
+
+            // Count links with a callback
+            asyncClient.getLinksCount( new ShaarliAsyncClient.Callback<Integer>()
+            {
+                @Override
+                public void completed( final Integer result )
+                {
+                    LOGGER.info( "Links count: " + result );
+                }
+
+                @Override
+                public void failed( final Exception ex )
+                {
+                    LOGGER.error( "Cannot count links" ,
+                                  ex );
+                }
+            } ).get();
+        }
+    }
 }
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test, against a local server which counts 42 links and refuses all posts.
+ *
+ * @see ShaarliAsyncClient
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliAsyncClientTest
+{
+    // PUBLIC
+    public ShaarliAsyncClientTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Start the local server.
+     *
+     * @throws IOException
+     */
+    @BeforeClass
+    public void setUp()
+        throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1" ,
+                                                           0 ) ,
+                                    0 );
+        server.createContext( "/" ,
+                              new HttpHandler()
+        {
+            @Override
+            public void handle( final HttpExchange exchange )
+                throws IOException
+            {
+                final int status;
+                final String content;
+                if ( "POST".equals( exchange.getRequestMethod() ) )
+                {
+                    status = 500;
+                    content = "Error";
+                }
+                else
+                {
+                    status = 200;
+                    content = "<html><body>"
+                              + "<div id=\"pageheader\"><div class=\"nomobile\">42 links</div></div>"
+                              + "<form><input name=\"token\" value=\"abc\"></form>"
+                              + "</body></html>";
+                }
+
+                final byte[] body = content.getBytes( "UTF-8" );
+                exchange.sendResponseHeaders( status ,
+                                              body.length );
+                try( final OutputStream os = exchange.getResponseBody() )
+                {
+                    os.write( body );
+                }
+            }
+        } );
+        server.start();
+
+        client = new ShaarliClient( new ShaarliTemplates() ,
+                                    "http://127.0.0.1:" + server.getAddress().getPort() );
+        asyncClient = new ShaarliAsyncClient( client ,
+                                              2 );
+    }
+
+    /**
+     * Stop the local server.
+     *
+     * @throws IOException
+     */
+    @AfterClass
+    public void tearDown()
+        throws IOException
+    {
+        asyncClient.close();
+        client.close();
+        server.stop( 0 );
+    }
+
+    /**
+     * Test a result is given to the future and to the callback.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompleted()
+        throws Exception
+    {
+        final RecordingCallback<Integer> callback = new RecordingCallback<>();
+
+        final Future<Integer> count = asyncClient.getLinksCount( callback );
+
+        assertEquals( "Future should give the count" ,
+                      Integer.valueOf( 42 ) ,
+                      count.get() );
+        assertTrue( "Callback should be called" ,
+                    callback.done.await( 10L ,
+                                         TimeUnit.SECONDS ) );
+        assertEquals( "Callback should receive the count" ,
+                      Integer.valueOf( 42 ) ,
+                      callback.result.get() );
+        assertNull( "Callback shouldn't fail" ,
+                    callback.error.get() );
+    }
+
+    /**
+     * Test an error of the synchronous client is a failure.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailed()
+        throws Exception
+    {
+        final RecordingCallback<String> callback = new RecordingCallback<>();
+
+        final Future<String> creation = asyncClient.createLink( "http://fabien.vauchelles.com/" ,
+                                                                "Blog" ,
+                                                                null ,
+                                                                Collections.<String>emptySet() ,
+                                                                false ,
+                                                                callback );
+
+        try
+        {
+            creation.get();
+            fail( "Refused post should fail" );
+        }
+        catch( final ExecutionException ex )
+        {
+            assertTrue( "Failure should be an I/O error" ,
+                        ex.getCause() instanceof IOException );
+        }
+
+        assertTrue( "Callback should be called" ,
+                    callback.done.await( 10L ,
+                                         TimeUnit.SECONDS ) );
+        assertTrue( "Callback should fail" ,
+                    callback.error.get() instanceof IOException );
+
+        try
+        {
+            asyncClient.delete( "20131110_210900" ,
+                                null ).get();
+            fail( "Refused deletion should fail" );
+        }
+        catch( final ExecutionException ex )
+        {
+            assertTrue( "Failure should be an I/O error" ,
+                        ex.getCause() instanceof IOException );
+        }
+    }
+
+    /**
+     * Test a callback failing in failed() doesn't kill the pool thread.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailingCallback()
+        throws Exception
+    {
+        final CountDownLatch called = new CountDownLatch( 1 );
+        final CountDownLatch uncaught = new CountDownLatch( 1 );
+
+        final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler( new Thread.UncaughtExceptionHandler()
+        {
+            @Override
+            public void uncaughtException( final Thread t ,
+                                           final Throwable e )
+            {
+                uncaught.countDown();
+            }
+        } );
+        try
+        {
+            asyncClient.login( "login" ,
+                               "password" ,
+                               new ShaarliAsyncClient.Callback<Boolean>()
+            {
+                @Override
+                public void completed( final Boolean result )
+                {
+                    called.countDown();
+                }
+
+                @Override
+                public void failed( final Exception ex )
+                {
+                    called.countDown();
+
+                    throw new IllegalStateException( "Callback error" );
+                }
+            } );
+
+            assertTrue( "Callback should be called" ,
+                        called.await( 10L ,
+                                      TimeUnit.SECONDS ) );
+            assertFalse( "Callback error shouldn't escape the pool thread" ,
+                         uncaught.await( 1L ,
+                                         TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            Thread.setDefaultUncaughtExceptionHandler( previous );
+        }
+
+        assertEquals( "Pool should still work" ,
+                      Integer.valueOf( 42 ) ,
+                      asyncClient.getLinksCount( null ).get() );
+    }
+
+    // PRIVATE
+    private HttpServer server;
+    private ShaarliClient client;
+    private ShaarliAsyncClient asyncClient;
+
+    /**
+     * Keep the callback outcome.
+     */
+    private static final class RecordingCallback<T>
+        implements ShaarliAsyncClient.Callback<T>
+    {
+        // PUBLIC
+        @Override
+        public void completed( final T result )
+        {
+            this.result.set( result );
+            done.countDown();
+        }
+
+        @Override
+        public void failed( final Exception ex )
+        {
+            error.set( ex );
+            done.countDown();
+        }
+
+        // DEFAULT
+        final AtomicReference<T> result = new AtomicReference<>();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch( 1 );
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliBinary
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliBinaryTest
+{
+    // PUBLIC
+    public ShaarliBinaryTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test IDs packing.
+     */
+    @Test
+    public void testPackID()
+    {
+        assertEquals( "ID should be packed" ,
+                      20131110210900L ,
+                      ShaarliBinary.packID( "20131110_210900" ) );
+        assertEquals( "ID should be unpacked" ,
+                      "20131110_210900" ,
+                      ShaarliBinary.unpackID( 20131110210900L ) );
+    }
+
+    /**
+     * Test varints and strings are read as written.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testRoundTrip()
+        throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( 64 );
+        ShaarliBinary.putVarint( buffer ,
+                                 300L );
+        ShaarliBinary.putVarint( buffer ,
+                                 Long.MAX_VALUE );
+        ShaarliBinary.putString( buffer ,
+                                 "éà".getBytes( ShaarliBinary.UTF8 ) );
+        ShaarliBinary.putString( buffer ,
+                                 null );
+        buffer.flip();
+
+        assertEquals( "Varint should be read" ,
+                      300L ,
+                      ShaarliBinary.getVarint( buffer ) );
+        assertEquals( "Large varint should be read" ,
+                      Long.MAX_VALUE ,
+                      ShaarliBinary.getVarint( buffer ) );
+        assertEquals( "String should be read" ,
+                      "éà" ,
+                      ShaarliBinary.getString( buffer ) );
+        assertNull( "Null should be read" ,
+                    ShaarliBinary.getString( buffer ) );
+        assertFalse( "Everything should be read" ,
+                     buffer.hasRemaining() );
+    }
+
+    /**
+     * Test a string longer than the buffer is refused before it is allocated.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testTruncatedString()
+        throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( 16 );
+        ShaarliBinary.putVarint( buffer ,
+                                 Integer.MAX_VALUE );
+        buffer.flip();
+
+        try
+        {
+            ShaarliBinary.getString( buffer );
+            fail( "Truncated string should be detected" );
+        }
+        catch( final EOFException ex )
+        {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.io.IOUtils;
+import org.joda.time.DateTimeZone;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliBookmarkWriter
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliBookmarkWriterTest
+{
+    // PUBLIC
+    public ShaarliBookmarkWriterTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test written links can be read back.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWrite()
+        throws IOException
+    {
+        final ShaarliLink link = new ShaarliLink( null ,
+                                                  null ,
+                                                  "Fabien \"Vauchelles\" <blog>" ,
+                                                  "du java & quoi!" ,
+                                                  "http://fabien.vauchelles.com/?a=1&b=2" ,
+                                                  true );
+        link.addTag( "java" );
+        link.addTag( "blog" );
+
+        final StringWriter sw = new StringWriter();
+        final ShaarliBookmarkWriter writer = new ShaarliBookmarkWriter( sw );
+        writer.writeHeader();
+        writer.write( link ,
+                      1384117740L );
+        writer.write( new ShaarliLink( null ,
+                                       null ,
+                                       "Second" ,
+                                       null ,
+                                       "http://second" ,
+                                       false ) ,
+                      1384117741L );
+        writer.writeFooter();
+
+        final ShaarliListScanner scanner = new ShaarliListScanner( new StringReader( sw.toString() ) ,
+                                                                   "dt" ,
+                                                                   "dl" );
+
+        final Document doc = Jsoup.parseBodyFragment( scanner.next() );
+        final Element a = doc.select( "a" ).first();
+
+        assertEquals( "URL should be escaped" ,
+                      link.getUrl() ,
+                      a.attr( "href" ) );
+        assertEquals( "Title should be escaped" ,
+                      link.getTitle() ,
+                      a.text() );
+        assertEquals( "Description should be escaped" ,
+                      link.getDescription() ,
+                      doc.select( "dd" ).text() );
+        assertEquals( "Date should be written" ,
+                      "1384117740" ,
+                      a.attr( "add_date" ) );
+        assertEquals( "Link should be private" ,
+                      "1" ,
+                      a.attr( "private" ) );
+        assertEquals( "Tags should be written" ,
+                      "blog,java" ,
+                      a.attr( "tags" ) );
+
+        assertNotNull( "Second link should be written" ,
+                       scanner.next() );
+        assertNull( "Only 2 links should be written" ,
+                    scanner.next() );
+    }
+
+    /**
+     * Test IDs are converted to import and export dates in the server time zone.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testServerTimeZone()
+        throws Exception
+    {
+        // 20131110_210900 in Tokyo
+        final long addDate = 1384085340L;
+
+        final AtomicReference<String> upload = new AtomicReference<>();
+
+        final HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1" ,
+                                                                            0 ) ,
+                                                     0 );
+        server.createContext( "/" ,
+                              new HttpHandler()
+        {
+            @Override
+            public void handle( final HttpExchange exchange )
+                throws IOException
+            {
+                final String query = exchange.getRequestURI().getQuery();
+
+                final String content;
+                if ( "do=upload".equals( query ) )
+                {
+                    upload.set( IOUtils.toString( exchange.getRequestBody() ,
+                                                  "UTF-8" ) );
+                    content = "1 links imported";
+                }
+                else if ( "do=export&what=all".equals( query ) )
+                {
+                    content = "<!DOCTYPE NETSCAPE-Bookmark-file-1>\n<DL><p>\n"
+                              + "<DT><A HREF=\"http://fabien.vauchelles.com/\" ADD_DATE=\"" + addDate + "\">Blog</A>\n"
+                              + "</DL><p>\n";
+                }
+                else
+                {
+                    content = "<form><input name=\"token\" value=\"abc\"></form>";
+                }
+
+                final byte[] body = content.getBytes( "UTF-8" );
+                exchange.sendResponseHeaders( 200 ,
+                                              body.length );
+                try( final OutputStream os = exchange.getResponseBody() )
+                {
+                    os.write( body );
+                }
+            }
+        } );
+        server.start();
+
+        try
+        {
+            final ShaarliSettings settings = new ShaarliSettings();
+            settings.setServerTimeZone( DateTimeZone.forID( "Asia/Tokyo" ) );
+
+            try( final ShaarliClient client = new ShaarliClient( settings ,
+                                                                 new ShaarliTemplates() ,
+                                                                 "http://127.0.0.1:" + server.getAddress().getPort() ) )
+            {
+                assertEquals( "Link should be imported" ,
+                              1 ,
+                              client.importLinks( Collections.singletonList( new ShaarliLink( "20131110_210900" ,
+                                                                                              null ,
+                                                                                              "Blog" ,
+                                                                                              null ,
+                                                                                              "http://fabien.vauchelles.com/" ,
+                                                                                              false ) ).iterator() ,
+                                                  false ,
+                                                  false ) );
+                assertTrue( "Import date should use the server time zone" ,
+                            upload.get().contains( "ADD_DATE=\"" + addDate + "\"" ) );
+
+                try( final ShaarliIterator<ShaarliLink> it = client.exportAll() )
+                {
+                    assertTrue( "Link should be exported" ,
+                                it.hasNext() );
+                    assertEquals( "Export ID should use the server time zone" ,
+                                  "20131110_210900" ,
+                                  it.next().getID() );
+                }
+            }
+        }
+        finally
+        {
+            server.stop( 0 );
+        }
+    }
+}
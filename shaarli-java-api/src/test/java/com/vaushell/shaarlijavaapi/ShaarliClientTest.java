@@ -19,10 +19,19 @@
 
 package com.vaushell.shaarlijavaapi;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
@@ -62,10 +71,10 @@ public class ShaarliClientTest
             conf = "conf-local/configuration.xml";
         }
 
-        final XMLConfiguration config = new XMLConfiguration( conf );
+        config = new XMLConfiguration( conf );
 
         // New format
-        final ShaarliTemplates templates = new ShaarliTemplates();
+        templates = new ShaarliTemplates();
         final List<HierarchicalConfiguration> cTemplates = config.configurationsAt( "shaarli.templates.template" );
         if ( cTemplates != null )
         {
@@ -245,6 +254,139 @@ public class ShaarliClientTest
                       clientAuth.getLinksCount() );
     }
 
+    /**
+     * Test batch creation.
+     */
+    @Test
+    public void testCreateLinks()
+    {
+        final List<ShaarliLink> links = new ArrayList<>();
+        for ( int i = 0 ; i < 5 ; i++ )
+        {
+            final ShaarliLink link = new ShaarliLink( null ,
+                                                      null ,
+                                                      "Blog de Fabien Vauchelles n°" + i ,
+                                                      "du java quoi! #" + i ,
+                                                      "http://fabien.vauchelles.com/" + i ,
+                                                      false );
+            link.addTag( "batch" );
+
+            links.add( link );
+        }
+
+        final ShaarliBatchReport report = clientAuth.createLinks( links );
+
+        assertEquals( "All links should have been created" ,
+                      5 ,
+                      report.getSuccessCount() );
+
+        final Set<String> IDs = new HashSet<>();
+        for ( int i = 0 ; i < report.size() ; i++ )
+        {
+            IDs.add( report.getID( i ) );
+        }
+
+        assertEquals( "IDs must be different" ,
+                      5 ,
+                      IDs.size() );
+
+        assertEquals( "5 links should have been created" ,
+                      5 ,
+                      clientAuth.getLinksCount() );
+    }
+
+    /**
+     * Test bulk import.
+     */
+    @Test
+    public void testImportLinks()
+    {
+        final List<ShaarliLink> links = new ArrayList<>();
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            final ShaarliLink link = new ShaarliLink( null ,
+                                                      null ,
+                                                      "Blog de Fabien Vauchelles n°" + i ,
+                                                      "du java quoi! #" + i ,
+                                                      "http://fabien.vauchelles.com/" + i ,
+                                                      false );
+            link.addTag( "import" );
+
+            links.add( link );
+        }
+
+        assertEquals( "Shaarli should import 10 links" ,
+                      10 ,
+                      clientAuth.importLinks( links.iterator() ,
+                                              false ,
+                                              true ) );
+
+        assertEquals( "10 links should have been created" ,
+                      10 ,
+                      clientAuth.getLinksCount() );
+
+        try( final ShaarliIterator<ShaarliLink> it = clientAuth.searchAllIterator() )
+        {
+            while ( it.hasNext() )
+            {
+                final ShaarliLink link = it.next();
+
+                assertTrue( "Link should be private" ,
+                            link.isRestricted() );
+                assertTrue( "Link should be tagged" ,
+                            link.getTags().contains( "import" ) );
+            }
+        }
+    }
+
+    /**
+     * Test bulk deletion.
+     */
+    @Test
+    public void testDeleteAll()
+    {
+        final List<ShaarliLink> links = new ArrayList<>();
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            links.add( new ShaarliLink( null ,
+                                        null ,
+                                        "Blog de Fabien Vauchelles n°" + i ,
+                                        "du java quoi! #" + i ,
+                                        "http://fabien.vauchelles.com/" + i ,
+                                        false ) );
+        }
+
+        assertEquals( "All links should have been created" ,
+                      10 ,
+                      clientAuth.createLinks( links ).getSuccessCount() );
+
+        final AtomicInteger lastTotal = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        final int deleted = clientAuth.deleteAll( new ShaarliProgressListener()
+        {
+            @Override
+            public void progress( final int done ,
+                                  final int total )
+            {
+                calls.incrementAndGet();
+                lastTotal.set( total );
+            }
+        } );
+
+        assertEquals( "10 links should have been deleted" ,
+                      10 ,
+                      deleted );
+        assertEquals( "Progress should be reported for each link" ,
+                      10 ,
+                      calls.get() );
+        assertEquals( "Total should be the number of links" ,
+                      10 ,
+                      lastTotal.get() );
+        assertEquals( "All links should have been deleted" ,
+                      0 ,
+                      clientAuth.getLinksCount() );
+    }
+
     /**
      * Test search all.
      */
@@ -305,6 +447,375 @@ public class ShaarliClientTest
         }
     }
 
+    /**
+     * Test search all with pages fetched in advance.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSearchAllReadAhead()
+        throws Exception
+    {
+        // Create
+        DateTime t = new DateTime();
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            clientAuth.createOrUpdateLink( t ,
+                                           "http://fabien.vauchelles.com/" + i ,
+                                           "Blog de Fabien Vauchelles n°" + i ,
+                                           "du java quoi! #" + i ,
+                                           null ,
+                                           false );
+
+            t = t.plusSeconds( 1 );
+        }
+
+        final ShaarliSettings settings = new ShaarliSettings();
+        settings.setReadAhead( 2 );
+
+        try( final ShaarliClient client = new ShaarliClient( settings ,
+                                                             templates ,
+                                                             config.getString( "shaarli.endpoint" ) ) )
+        {
+            client.setLinksByPage( 3 );
+
+            int num = 9;
+            try( final ShaarliIterator<ShaarliLink> it = client.searchAllIterator() )
+            {
+                while ( it.hasNext() )
+                {
+                    final ShaarliLink link = it.next();
+
+                    assertEquals( "Links must be in the same order" ,
+                                  "http://fabien.vauchelles.com/" + num ,
+                                  link.getUrl() );
+
+                    --num;
+                }
+            }
+
+            assertEquals( "All links should have been read" ,
+                          -1 ,
+                          num );
+        }
+    }
+
+    /**
+     * Test search all with pages fetched in parallel.
+     */
+    @Test
+    public void testSearchAllParallel()
+    {
+        // Create
+        DateTime t = new DateTime();
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            clientAuth.createOrUpdateLink( t ,
+                                           "http://fabien.vauchelles.com/" + i ,
+                                           "Blog de Fabien Vauchelles n°" + i ,
+                                           "du java quoi! #" + i ,
+                                           null ,
+                                           false );
+
+            t = t.plusSeconds( 1 );
+        }
+
+        clientUnauth.setLinksByPage( 3 );
+
+        final Set<String> urls = Collections.synchronizedSet( new HashSet<String>() );
+        final int count = clientUnauth.searchAllParallel( new ShaarliLinkVisitor()
+        {
+            @Override
+            public void visit( final ShaarliLink link )
+            {
+                urls.add( link.getUrl() );
+            }
+        } );
+
+        assertEquals( "All links should have been visited" ,
+                      10 ,
+                      count );
+
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            assertTrue( "Each link should be visited" ,
+                        urls.contains( "http://fabien.vauchelles.com/" + i ) );
+        }
+    }
+
+    /**
+     * Test search all in streaming mode gives the same links.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSearchAllStreaming()
+        throws Exception
+    {
+        // Create
+        DateTime t = new DateTime();
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            final ShaarliLink link = new ShaarliLink( null ,
+                                                      null ,
+                                                      "Blog de Fabien Vauchelles n°" + i ,
+                                                      "du java quoi! #" + i ,
+                                                      "http://fabien.vauchelles.com/" + i ,
+                                                      i % 2 == 0 );
+            link.addTag( "java" );
+            link.addTag( "tag" + i );
+
+            clientAuth.createOrUpdateLink( t ,
+                                           link.getUrl() ,
+                                           link.getTitle() ,
+                                           link.getDescription() ,
+                                           link.getTags() ,
+                                           link.isRestricted() );
+
+            t = t.plusSeconds( 1 );
+        }
+
+        final ShaarliSettings settings = new ShaarliSettings();
+        settings.setStreaming( true );
+
+        try( final ShaarliClient client = new ShaarliClient( settings ,
+                                                             templates ,
+                                                             config.getString( "shaarli.endpoint" ) ) )
+        {
+            assertTrue( "Login should work" ,
+                        client.login( config.getString( "shaarli.login" ) ,
+                                      config.getString( "shaarli.password" ) ) );
+
+            final List<ShaarliLink> expected = new ArrayList<>();
+            try( final ShaarliIterator<ShaarliLink> it = clientAuth.searchAllIterator() )
+            {
+                while ( it.hasNext() )
+                {
+                    expected.add( it.next() );
+                }
+            }
+
+            final List<ShaarliLink> actual = new ArrayList<>();
+            try( final ShaarliIterator<ShaarliLink> it = client.searchAllIterator() )
+            {
+                while ( it.hasNext() )
+                {
+                    actual.add( it.next() );
+                }
+            }
+
+            assertEquals( "Streaming mode should find the same links" ,
+                          expected ,
+                          actual );
+        }
+    }
+
+    /**
+     * Test the export gives the same links as pages.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExportAll()
+        throws Exception
+    {
+        // Create
+        DateTime t = new DateTime();
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            final Set<String> tags = new TreeSet<>();
+            tags.add( "java" );
+            tags.add( "tag" + i );
+
+            clientAuth.createOrUpdateLink( t ,
+                                           "http://fabien.vauchelles.com/" + i ,
+                                           "Blog de Fabien Vauchelles n°" + i ,
+                                           "du java quoi! #" + i ,
+                                           tags ,
+                                           i % 2 == 0 );
+
+            t = t.plusSeconds( 1 );
+        }
+
+        final ShaarliSettings settings = new ShaarliSettings();
+        settings.setExportScans( false );
+
+        try( final ShaarliClient client = new ShaarliClient( settings ,
+                                                             templates ,
+                                                             config.getString( "shaarli.endpoint" ) ) )
+        {
+            assertTrue( "Login should work" ,
+                        client.login( config.getString( "shaarli.login" ) ,
+                                      config.getString( "shaarli.password" ) ) );
+
+            final List<ShaarliLink> expected = new ArrayList<>();
+            try( final ShaarliIterator<ShaarliLink> it = client.searchAllIterator() )
+            {
+                while ( it.hasNext() )
+                {
+                    expected.add( it.next() );
+                }
+            }
+
+            final List<ShaarliLink> actual = new ArrayList<>();
+            try( final ShaarliIterator<ShaarliLink> it = clientAuth.exportAll() )
+            {
+                while ( it.hasNext() )
+                {
+                    actual.add( it.next() );
+                }
+            }
+
+            assertEquals( "Export should have all links" ,
+                          expected.size() ,
+                          actual.size() );
+
+            for ( int i = 0 ; i < expected.size() ; i++ )
+            {
+                final ShaarliLink e = expected.get( i );
+                final ShaarliLink a = actual.get( i );
+
+                assertEquals( "ID should be the same" ,
+                              e.getID() ,
+                              a.getID() );
+                assertEquals( "URL should be the same" ,
+                              e.getUrl() ,
+                              a.getUrl() );
+                assertEquals( "Title should be the same" ,
+                              e.getTitle() ,
+                              a.getTitle() );
+                assertEquals( "Tags should be the same" ,
+                              e.getTags() ,
+                              a.getTags() );
+                assertEquals( "Restriction should be the same" ,
+                              e.isRestricted() ,
+                              a.isRestricted() );
+            }
+        }
+    }
+
+    /**
+     * Test the local mirror follows creations and deletions.
+     */
+    @Test
+    public void testMirror()
+    {
+        final List<String> IDs = new ArrayList<>();
+        DateTime t = new DateTime().minusMinutes( 1 );
+        for ( int i = 0 ; i < 5 ; i++ )
+        {
+            final Set<String> tags = new TreeSet<>();
+            tags.add( "mirror" );
+
+            IDs.add( clientAuth.createOrUpdateLink( t ,
+                                                    "http://fabien.vauchelles.com/" + i ,
+                                                    "Blog de Fabien Vauchelles n°" + i ,
+                                                    "du java quoi! #" + i ,
+                                                    tags ,
+                                                    false ) );
+
+            t = t.plusSeconds( 1 );
+        }
+
+        try( final ShaarliMirror mirror = new ShaarliMirror( clientAuth ) )
+        {
+            assertEquals( "Mirror should load all links" ,
+                          5 ,
+                          mirror.reload() );
+
+            // Creations
+            clientAuth.createLink( "http://fabien.vauchelles.com/new" ,
+                                   "New" ,
+                                   "du java quoi!" ,
+                                   null ,
+                                   false );
+
+            assertEquals( "Sync should find the new link" ,
+                          1 ,
+                          mirror.sync() );
+            assertEquals( "Sync should not find twice the same link" ,
+                          0 ,
+                          mirror.sync() );
+
+            // Deletions
+            assertTrue( "Link should be deleted" ,
+                        clientAuth.delete( IDs.get( 0 ) ) );
+
+            assertEquals( "Reconcile should remove the deleted link" ,
+                          1 ,
+                          mirror.reconcile() );
+            assertNull( "Deleted link should be removed" ,
+                        mirror.getLink( IDs.get( 0 ) ) );
+
+            assertEquals( "Mirror should have 5 links" ,
+                          5 ,
+                          mirror.getLinksCount() );
+            assertEquals( "Tag count should be updated" ,
+                          Integer.valueOf( 4 ) ,
+                          mirror.getTags().get( "mirror" ) );
+            assertEquals( "Search should be local" ,
+                          1 ,
+                          mirror.searchTerm( "NEW" ).size() );
+            assertEquals( "Search by tags should be local" ,
+                          4 ,
+                          mirror.searchTags( "mirror" ).size() );
+        }
+    }
+
+    /**
+     * Test search all reverse, with pages fetched in parallel: links come oldest first, across pages.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSearchAllReverseParallel()
+        throws Exception
+    {
+        // Create
+        DateTime t = new DateTime();
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            clientAuth.createOrUpdateLink( t ,
+                                           "http://fabien.vauchelles.com/" + i ,
+                                           "Blog de Fabien Vauchelles n°" + i ,
+                                           "du java quoi! #" + i ,
+                                           null ,
+                                           false );
+
+            t = t.plusSeconds( 1 );
+        }
+
+        final ShaarliSettings settings = new ShaarliSettings();
+        settings.setParallelism( 4 );
+
+        try( final ShaarliClient client = new ShaarliClient( settings ,
+                                                             templates ,
+                                                             config.getString( "shaarli.endpoint" ) ) )
+        {
+            // 4 pages: the last one is not full
+            client.setLinksByPage( 3 );
+
+            int num = 0;
+            try( final ShaarliIterator<ShaarliLink> it = client.searchAllReverseIterator() )
+            {
+                while ( it.hasNext() )
+                {
+                    final ShaarliLink link = it.next();
+
+                    assertEquals( "Links must be in the reverse order" ,
+                                  "http://fabien.vauchelles.com/" + num ,
+                                  link.getUrl() );
+
+                    ++num;
+                }
+            }
+
+            assertEquals( "All links should have been read" ,
+                          10 ,
+                          num );
+        }
+    }
+
     /**
      * Test search all reverse.
      */
@@ -540,7 +1051,187 @@ public class ShaarliClientTest
 
     }
 
+    /**
+     * Test concurrent creations, searches and deletions with a shared client.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentAccess()
+        throws Exception
+    {
+        final int threads = 8;
+        final int linksByThread = 5;
+
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            // Create (each thread has its own IDs range)
+            final DateTime t = new DateTime();
+            final List<Future<List<String>>> creations = new ArrayList<>();
+            for ( int i = 0 ; i < threads ; i++ )
+            {
+                final int threadNum = i;
+                creations.add( executor.submit( new Callable<List<String>>()
+                {
+                    @Override
+                    public List<String> call()
+                        throws Exception
+                    {
+                        final List<String> IDs = new ArrayList<>();
+                        for ( int j = 0 ; j < linksByThread ; j++ )
+                        {
+                            final int num = threadNum * linksByThread + j;
+
+                            final TreeSet<String> tags = new TreeSet<>();
+                            tags.add( "thread" + threadNum );
+
+                            IDs.add( clientAuth.createOrUpdateLink( t.plusSeconds( num ) ,
+                                                                    "http://fabien.vauchelles.com/" + num ,
+                                                                    "Blog de Fabien Vauchelles n°" + num ,
+                                                                    "du java quoi! #" + num ,
+                                                                    tags ,
+                                                                    false ) );
+                        }
+
+                        return IDs;
+                    }
+                } ) );
+            }
+
+            final Set<String> IDs = new HashSet<>();
+            for ( final Future<List<String>> creation : creations )
+            {
+                for ( final String ID : creation.get() )
+                {
+                    assertNotNull( "ID should be assigned" ,
+                                   ID );
+
+                    IDs.add( ID );
+                }
+            }
+
+            assertEquals( "All links should have been created" ,
+                          threads * linksByThread ,
+                          clientAuth.getLinksCount() );
+
+            // Search
+            final List<Future<Integer>> searches = new ArrayList<>();
+            for ( int i = 0 ; i < threads ; i++ )
+            {
+                final int threadNum = i;
+                searches.add( executor.submit( new Callable<Integer>()
+                {
+                    @Override
+                    public Integer call()
+                        throws Exception
+                    {
+                        int count = 0;
+
+                        final Iterator<ShaarliLink> it = clientAuth.searchTagsIterator( "thread" + threadNum );
+                        while ( it.hasNext() )
+                        {
+                            it.next();
+                            ++count;
+                        }
+
+                        return count;
+                    }
+                } ) );
+            }
+
+            for ( final Future<Integer> search : searches )
+            {
+                assertEquals( "Each search should find the thread's links" ,
+                              linksByThread ,
+                              (int) search.get() );
+            }
+
+            // Delete
+            final List<Future<Boolean>> deletions = new ArrayList<>();
+            for ( final String ID : IDs )
+            {
+                deletions.add( executor.submit( new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call()
+                        throws Exception
+                    {
+                        return clientAuth.delete( ID );
+                    }
+                } ) );
+            }
+
+            for ( final Future<Boolean> deletion : deletions )
+            {
+                assertTrue( "Link should be deleted" ,
+                            deletion.get() );
+            }
+
+            assertEquals( "All links should have been deleted" ,
+                          0 ,
+                          clientAuth.getLinksCount() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test writes with pooled tokens.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTokenPool()
+        throws Exception
+    {
+        final ShaarliSettings settings = new ShaarliSettings();
+        settings.setTokenPoolSize( 3 );
+
+        try( final ShaarliClient client = new ShaarliClient( settings ,
+                                                             templates ,
+                                                             config.getString( "shaarli.endpoint" ) ) )
+        {
+            assertTrue( "Login should work" ,
+                        client.login( config.getString( "shaarli.login" ) ,
+                                      config.getString( "shaarli.password" ) ) );
+
+            // Create more links than pooled tokens
+            final List<String> IDs = new ArrayList<>();
+            DateTime t = new DateTime();
+            for ( int i = 0 ; i < 5 ; i++ )
+            {
+                IDs.add( client.createOrUpdateLink( t ,
+                                                    "http://fabien.vauchelles.com/" + i ,
+                                                    "Blog de Fabien Vauchelles n°" + i ,
+                                                    "du java quoi! #" + i ,
+                                                    null ,
+                                                    false ) );
+
+                t = t.plusSeconds( 1 );
+            }
+
+            assertEquals( "5 links should have been created" ,
+                          5 ,
+                          client.getLinksCount() );
+
+            for ( final String ID : IDs )
+            {
+                assertTrue( "Link should be deleted" ,
+                            client.delete( ID ) );
+            }
+
+            assertEquals( "All links should have been deleted" ,
+                          0 ,
+                          client.getLinksCount() );
+        }
+    }
+
     // PRIVATE
+    private XMLConfiguration config;
+    private ShaarliTemplates templates;
     private ShaarliClient clientUnauth;
     private ShaarliClient clientAuth;
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliIDAllocator
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliIDAllocatorTest
+{
+    // PUBLIC
+    public ShaarliIDAllocatorTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test concurrent allocations never return the same second.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentAllocations()
+        throws Exception
+    {
+        final ShaarliIDAllocator allocator = new ShaarliIDAllocator();
+        final Set<Long> seconds = new ConcurrentSkipListSet<>();
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for ( int i = 0 ; i < 8 ; i++ )
+            {
+                results.add( executor.submit( new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call()
+                        throws Exception
+                    {
+                        boolean unique = true;
+                        for ( int j = 0 ; j < 1000 ; j++ )
+                        {
+                            final long first = allocator.allocate( 3 );
+                            for ( long second = first ; second < first + 3L ; second++ )
+                            {
+                                unique &= seconds.add( second );
+                            }
+                        }
+
+                        return unique;
+                    }
+                } ) );
+            }
+
+            for ( final Future<Boolean> result : results )
+            {
+                assertTrue( "Seconds must be allocated once" ,
+                            result.get() );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals( "All seconds must be allocated" ,
+                      8 * 1000 * 3 ,
+                      seconds.size() );
+    }
+
+    /**
+     * Test blocks never start in the past (Shaarli overwrites links with the same ID).
+     */
+    @Test
+    public void testNoPastSeconds()
+    {
+        final ShaarliIDAllocator allocator = new ShaarliIDAllocator();
+
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            final long now = System.currentTimeMillis() / 1000L;
+
+            assertTrue( "Block must start now or later" ,
+                        allocator.allocate( 50 ) >= now );
+        }
+    }
+
+    /**
+     * Test IDs observed during allocations are never allocated.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentObserve()
+        throws Exception
+    {
+        final ShaarliIDAllocator allocator = new ShaarliIDAllocator();
+        final Set<Long> allocated = new ConcurrentSkipListSet<>();
+        final Set<Long> reserved = new ConcurrentSkipListSet<>();
+
+        final long now = System.currentTimeMillis() / 1000L;
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            final List<Future<?>> results = new ArrayList<>();
+            for ( int i = 0 ; i < 2 ; i++ )
+            {
+                results.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws Exception
+                    {
+                        for ( int j = 0 ; j < 5000 ; j++ )
+                        {
+                            allocated.add( allocator.allocate( 1 ) );
+                        }
+
+                        return null;
+                    }
+                } ) );
+
+                final long offset = i;
+                results.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws Exception
+                    {
+                        for ( long second = now + offset ; second < now + 10000L ; second += 2L )
+                        {
+                            if ( allocator.observe( second ) )
+                            {
+                                reserved.add( second );
+                            }
+                        }
+
+                        return null;
+                    }
+                } ) );
+            }
+
+            for ( final Future<?> result : results )
+            {
+                result.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        for ( final Long second : reserved )
+        {
+            assertFalse( "Reserved IDs must not be allocated" ,
+                         allocated.contains( second ) );
+        }
+    }
+
+    /**
+     * Test known IDs are skipped.
+     */
+    @Test
+    public void testObserve()
+    {
+        final ShaarliIDAllocator allocator = new ShaarliIDAllocator();
+
+        final long now = System.currentTimeMillis() / 1000L;
+        allocator.observe( now + 10L );
+        allocator.observe( now + 11L );
+
+        for ( int i = 0 ; i < 20 ; i++ )
+        {
+            final long second = allocator.allocate( 1 );
+
+            assertTrue( "Known IDs must not be allocated" ,
+                        second != now + 10L && second != now + 11L );
+        }
+    }
+}
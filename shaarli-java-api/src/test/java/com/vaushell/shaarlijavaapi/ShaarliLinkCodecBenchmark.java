@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timing of the links codec against Java serialization. Not a unit test: run it with
+ * <code>mvn test-compile exec:java -Dexec.mainClass=com.vaushell.shaarlijavaapi.ShaarliLinkCodecBenchmark
+ * -Dexec.classpathScope=test</code>.
+ *
+ * Each measure is the best of several rounds, after warm-up rounds.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public final class ShaarliLinkCodecBenchmark
+{
+    // PUBLIC
+    /**
+     * Main class.
+     *
+     * @param args Links count (default 100000)
+     * @throws Exception
+     */
+    public static void main( final String... args )
+        throws Exception
+    {
+        final int count = args.length > 0 ? Integer.parseInt( args[0] ) : 100000;
+
+        final List<ShaarliLink> links = createLinks( count );
+
+        final byte[] serialized = serialize( links );
+        final ByteBuffer encoded = ShaarliLinkCodec.encode( links );
+
+        LOGGER.info( "[" + ShaarliLinkCodecBenchmark.class.getSimpleName() + "] links=" + count + " / serialization=" + serialized.length + " bytes / codec=" + encoded.remaining() + " bytes" );
+
+        for ( int i = 0 ; i < WARMUP_ROUNDS ; ++i )
+        {
+            serialize( links );
+            deserialize( serialized );
+            ShaarliLinkCodec.encode( links );
+            ShaarliLinkCodec.decode( encoded.duplicate() );
+        }
+
+        long serializeNanos = Long.MAX_VALUE;
+        long deserializeNanos = Long.MAX_VALUE;
+        long encodeNanos = Long.MAX_VALUE;
+        long decodeNanos = Long.MAX_VALUE;
+        for ( int i = 0 ; i < ROUNDS ; ++i )
+        {
+            long start = System.nanoTime();
+            serialize( links );
+            serializeNanos = Math.min( serializeNanos ,
+                                       System.nanoTime() - start );
+
+            start = System.nanoTime();
+            deserialize( serialized );
+            deserializeNanos = Math.min( deserializeNanos ,
+                                         System.nanoTime() - start );
+
+            start = System.nanoTime();
+            ShaarliLinkCodec.encode( links );
+            encodeNanos = Math.min( encodeNanos ,
+                                    System.nanoTime() - start );
+
+            start = System.nanoTime();
+            ShaarliLinkCodec.decode( encoded.duplicate() );
+            decodeNanos = Math.min( decodeNanos ,
+                                    System.nanoTime() - start );
+        }
+
+        LOGGER.info( "[" + ShaarliLinkCodecBenchmark.class.getSimpleName() + "] serialize=" + serializeNanos / 1000000L + " ms / deserialize=" + deserializeNanos / 1000000L + " ms" );
+        LOGGER.info( "[" + ShaarliLinkCodecBenchmark.class.getSimpleName() + "] encode=" + encodeNanos / 1000000L + " ms / decode=" + decodeNanos / 1000000L + " ms" );
+    }
+
+    // PRIVATE
+    private static final Logger LOGGER = LoggerFactory.getLogger( ShaarliLinkCodecBenchmark.class );
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private ShaarliLinkCodecBenchmark()
+    {
+        // Nothing
+    }
+
+    /**
+     * Links like a real Shaarli: unique IDs, URLs and titles, 3 tags out of 200.
+     */
+    private static List<ShaarliLink> createLinks( final int count )
+    {
+        final List<ShaarliLink> links = new ArrayList<>( count );
+        for ( int i = 0 ; i < count ; ++i )
+        {
+            final ShaarliLink link = new ShaarliLink( ShaarliBinary.unpackID( 20130101000000L + i ) ,
+                                                      "perma" + i ,
+                                                      "Blog de Fabien Vauchelles n°" + i ,
+                                                      "du java quoi! #" + i ,
+                                                      "http://fabien.vauchelles.com/" + i ,
+                                                      i % 2 == 0 );
+            link.addTag( "tag" + i % 200 );
+            link.addTag( "tag" + ( i + 1 ) % 200 );
+            link.addTag( "java" );
+            links.add( link );
+        }
+
+        return links;
+    }
+
+    private static byte[] serialize( final List<ShaarliLink> links )
+        throws IOException
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try( final ObjectOutputStream oos = new ObjectOutputStream( bos ) )
+        {
+            oos.writeObject( links );
+        }
+
+        return bos.toByteArray();
+    }
+
+    private static Object deserialize( final byte[] serialized )
+        throws IOException , ClassNotFoundException
+    {
+        try( final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( serialized ) ) )
+        {
+            return ois.readObject();
+        }
+    }
+}
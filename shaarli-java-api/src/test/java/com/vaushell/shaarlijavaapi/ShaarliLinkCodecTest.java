@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliLinkCodec
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliLinkCodecTest
+{
+    // PUBLIC
+    public ShaarliLinkCodecTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test links are decoded as they were encoded.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testBuffer()
+        throws IOException
+    {
+        final ShaarliLink link1 = new ShaarliLink( "20131110_210900" ,
+                                                   "AbCdEf" ,
+                                                   "Été à Paris" ,
+                                                   null ,
+                                                   "http://fabien.vauchelles.com/" ,
+                                                   true );
+        link1.addTag( "java" );
+        link1.addTag( "web" );
+
+        final ShaarliLink link2 = new ShaarliLink( null ,
+                                                   null ,
+                                                   "" ,
+                                                   "description" ,
+                                                   "http://www.google.com/" ,
+                                                   false );
+        link2.addTag( "web" );
+
+        final List<ShaarliLink> links = Arrays.asList( link1 ,
+                                                       link2 );
+
+        assertEquals( "Links should be decoded" ,
+                      links ,
+                      ShaarliLinkCodec.decode( ShaarliLinkCodec.encode( links ) ) );
+    }
+
+    /**
+     * Test streams larger than the buffers, through channels.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testChannel()
+        throws IOException
+    {
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0 ; i < 100000 ; ++i )
+        {
+            sb.append( 'é' );
+        }
+
+        final List<ShaarliLink> links = new ArrayList<>();
+        for ( int i = 0 ; i < 5000 ; ++i )
+        {
+            final ShaarliLink link = new ShaarliLink( String.format( "20131110_%06d" ,
+                                                                     i ) ,
+                                                      "perma" + i ,
+                                                      "title " + i ,
+                                                      i == 100 ? sb.toString() : "description " + i ,
+                                                      "http://fabien.vauchelles.com/" + i ,
+                                                      i % 2 == 0 );
+            link.addTag( "tag" + i % 10 );
+            links.add( link );
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try( final ShaarliLinkCodec.Writer writer = new ShaarliLinkCodec.Writer( Channels.newChannel( bos ) ) )
+        {
+            assertEquals( "All links should be written" ,
+                          links.size() ,
+                          writer.write( links.iterator() ) );
+        }
+
+        final List<ShaarliLink> read = new ArrayList<>();
+        try( final ShaarliLinkCodec.Reader reader = new ShaarliLinkCodec.Reader( Channels.newChannel( new ByteArrayInputStream( bos.toByteArray() ) ) ) )
+        {
+            while ( reader.hasNext() )
+            {
+                read.add( reader.next() );
+            }
+
+            assertTrue( "End marker should be read" ,
+                        reader.isComplete() );
+        }
+
+        assertEquals( "Links should be read" ,
+                      links ,
+                      read );
+
+        // Compare with Java serialization
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try( final ObjectOutputStream oos = new ObjectOutputStream( serialized ) )
+        {
+            oos.writeObject( links );
+        }
+
+        assertTrue( "Codec should be smaller than serialization" ,
+                    bos.size() < serialized.size() );
+    }
+
+    /**
+     * Test a truncated stream is detected.
+     */
+    @Test
+    public void testTruncated()
+    {
+        final ByteBuffer buffer = ShaarliLinkCodec.encode( Arrays.asList( new ShaarliLink( "20131110_210900" ,
+                                                                                           null ,
+                                                                                           "title" ,
+                                                                                           null ,
+                                                                                           "http://fabien.vauchelles.com/" ,
+                                                                                           false ) ) );
+        buffer.limit( buffer.limit() - 3 );
+
+        try
+        {
+            ShaarliLinkCodec.decode( buffer );
+            fail( "Truncated stream should be detected" );
+        }
+        catch( final IOException ex )
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Test the error of a corrupted stream is reported.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testCorrupted()
+        throws IOException
+    {
+        // Header of an empty stream
+        final ByteBuffer header = ShaarliLinkCodec.encode( Collections.<ShaarliLink>emptyList() );
+        header.limit( header.limit() - 1 );
+
+        final ByteBuffer unknown = ByteBuffer.allocate( 16 );
+        unknown.put( header.duplicate() ).put( (byte) 7 ).flip();
+        try
+        {
+            ShaarliLinkCodec.decode( unknown );
+            fail( "Unknown record should be detected" );
+        }
+        catch( final IOException ex )
+        {
+            assertEquals( "Error should be the cause" ,
+                          "Unknown record: 7" ,
+                          ex.getMessage() );
+        }
+
+        // A link with a 2 GB permalink ID
+        final ByteBuffer huge = ByteBuffer.allocate( 16 );
+        huge.put( header.duplicate() ).put( (byte) 1 ).put( (byte) 0 );
+        ShaarliBinary.putVarint( huge ,
+                                 Integer.MAX_VALUE );
+        huge.flip();
+        try
+        {
+            ShaarliLinkCodec.decode( huge );
+            fail( "String longer than the buffer should be detected" );
+        }
+        catch( final EOFException ex )
+        {
+            // Expected, without allocating it
+        }
+    }
+
+    /**
+     * Test an invalid ID is rejected before the record is written.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testInvalidID()
+        throws IOException
+    {
+        final ShaarliLink link = new ShaarliLink( "20131110_210900" ,
+                                                  null ,
+                                                  "title" ,
+                                                  null ,
+                                                  "http://fabien.vauchelles.com/" ,
+                                                  false );
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try( final ShaarliLinkCodec.Writer writer = new ShaarliLinkCodec.Writer( Channels.newChannel( bos ) ) )
+        {
+            writer.write( link );
+
+            try
+            {
+                writer.write( new ShaarliLink( "not an ID" ,
+                                               null ,
+                                               "title" ,
+                                               null ,
+                                               "http://www.google.com/" ,
+                                               false ) );
+                fail( "Invalid ID should be rejected" );
+            }
+            catch( final IllegalArgumentException ex )
+            {
+                // Expected
+            }
+        }
+
+        assertEquals( "Stream should stay readable" ,
+                      Arrays.asList( link ) ,
+                      ShaarliLinkCodec.decode( ByteBuffer.wrap( bos.toByteArray() ) ) );
+    }
+
+    /**
+     * Test the end marker isn't written after a failed write.
+     */
+    @Test
+    public void testFailedWrite()
+    {
+        final List<ShaarliLink> links = Arrays.asList( new ShaarliLink( "20131110_210900" ,
+                                                                        null ,
+                                                                        "title" ,
+                                                                        null ,
+                                                                        "http://fabien.vauchelles.com/" ,
+                                                                        false ) ,
+                                                       null );
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try( final ShaarliLinkCodec.Writer writer = new ShaarliLinkCodec.Writer( Channels.newChannel( bos ) ) )
+        {
+            writer.write( links.iterator() );
+            fail( "Null link should be rejected" );
+        }
+        catch( final IOException | IllegalArgumentException ex )
+        {
+            // Expected
+        }
+
+        try
+        {
+            ShaarliLinkCodec.decode( ByteBuffer.wrap( bos.toByteArray() ) );
+            fail( "Stream of a failed write should be truncated" );
+        }
+        catch( final IOException ex )
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Test a null buffer is rejected.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testNullBuffer()
+        throws IOException
+    {
+        try
+        {
+            new ShaarliLinkCodec.Reader( (ByteBuffer) null );
+            fail( "Null buffer should be rejected" );
+        }
+        catch( final IllegalArgumentException ex )
+        {
+            // Expected
+        }
+    }
+}
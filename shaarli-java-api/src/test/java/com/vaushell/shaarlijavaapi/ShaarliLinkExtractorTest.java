@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.vaushell.shaarlijavaapi.ShaarliTemplates.Key;
+import java.util.ArrayList;
+import java.util.List;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliLinkExtractor
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliLinkExtractorTest
+{
+    // PUBLIC
+    public ShaarliLinkExtractorTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test the extractor finds the same fields as one selection per field.
+     */
+    @Test
+    public void testExtract()
+    {
+        final Document doc = Jsoup.parse( "<ul>"
+                                          + "<li class=\"private\"><a id=\"AbCdEf\" name=\"AbCdEf\"></a>"
+                                          + "<span class=\"linktitle\"><a href=\"#\">Blog</a></span>"
+                                          + "<div class=\"linkdescription\">du java quoi!</div>"
+                                          + "<span class=\"linkdate\">Permalink - Sun Nov 10 21:09:00 2013 - </span>"
+                                          + "<div class=\"linktaglist\"><a>java</a> <a>Blog</a></div>"
+                                          + "<span class=\"linkurl\">http://fabien.vauchelles.com/</span></li>"
+                                          + "<li><span class=\"linktitle\">Empty</span></li>"
+                                          + "</ul>" );
+
+        final ShaarliTemplates.Compiled compiled = new ShaarliTemplates().compile();
+        final ShaarliLinkExtractor extractor = new ShaarliLinkExtractor( compiled );
+
+        final Key[] keys =
+        {
+            Key.LINKS_PRIVATE , Key.LINKS_ID , Key.LINKS_PERMALINK_ID , Key.LINKS_TITLE , Key.LINKS_DESCRIPTION , Key.LINKS_URL
+        };
+
+        for ( final Element elt : compiled.get( Key.LINKS ).select( doc ) )
+        {
+            final ShaarliLinkExtractor.Result result = extractor.extract( elt );
+
+            for ( int i = 0 ; i < keys.length ; ++i )
+            {
+                assertEquals( "Field should be the same for " + keys[i] ,
+                              compiled.get( keys[i] ).extract( elt ) ,
+                              result.values[i] );
+            }
+
+            final List<String> tags = new ArrayList<>();
+            for ( final Element eltTag : compiled.get( Key.TAGS ).select( elt ) )
+            {
+                tags.add( compiled.get( Key.TAGS_TAG ).extract( eltTag ) );
+            }
+
+            assertEquals( "Tags should be the same" ,
+                          tags ,
+                          result.tags );
+        }
+
+        final ShaarliLinkExtractor.Result first = extractor.extract( compiled.get( Key.LINKS ).select( doc ).first() );
+
+        assertEquals( "Title should be found" ,
+                      "Blog" ,
+                      first.values[ShaarliLinkExtractor.TITLE] );
+        assertNotNull( "Link should be private" ,
+                       first.values[ShaarliLinkExtractor.PRIVATE] );
+        assertEquals( "2 tags should be found" ,
+                      2 ,
+                      first.tags.size() );
+    }
+}
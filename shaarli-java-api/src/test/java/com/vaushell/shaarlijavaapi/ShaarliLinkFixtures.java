@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Links shared by the unit tests.
+ *
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+final class ShaarliLinkFixtures
+{
+    // DEFAULT
+    /**
+     * Create a public link without permalink ID nor tags.
+     *
+     * @param ID the link ID
+     * @param title the title
+     * @param description the description
+     * @return the link
+     */
+    static ShaarliLink createLink( final String ID ,
+                                   final String title ,
+                                   final String description )
+    {
+        return createLink( ID ,
+                           null ,
+                           title ,
+                           description ,
+                           false );
+    }
+
+    /**
+     * Create a public link titled "title", without permalink ID nor description.
+     *
+     * @param ID the link ID
+     * @param tags the tags
+     * @return the link
+     */
+    static ShaarliLink createTaggedLink( final String ID ,
+                                         final String... tags )
+    {
+        return createLink( ID ,
+                           null ,
+                           "title" ,
+                           null ,
+                           false ,
+                           tags );
+    }
+
+    /**
+     * Create a private link, tagged "java" and "été", without description.
+     *
+     * @param ID the link ID
+     * @param title the title
+     * @return the link
+     */
+    static ShaarliLink createPrivateLink( final String ID ,
+                                          final String title )
+    {
+        return createLink( ID ,
+                           "AbCdEf" ,
+                           title ,
+                           null ,
+                           true ,
+                           "java" ,
+                           "été" );
+    }
+
+    /**
+     * Create a link to http://fabien.vauchelles.com/.
+     *
+     * @param ID the link ID
+     * @param permaID the permalink ID
+     * @param title the title
+     * @param description the description
+     * @param restricted Is the link private ?
+     * @param tags the tags
+     * @return the link
+     */
+    static ShaarliLink createLink( final String ID ,
+                                   final String permaID ,
+                                   final String title ,
+                                   final String description ,
+                                   final boolean restricted ,
+                                   final String... tags )
+    {
+        final ShaarliLink link = new ShaarliLink( ID ,
+                                                  permaID ,
+                                                  title ,
+                                                  description ,
+                                                  "http://fabien.vauchelles.com/" ,
+                                                  restricted );
+        for ( final String tag : tags )
+        {
+            link.addTag( tag );
+        }
+
+        return link;
+    }
+
+    /**
+     * Return the IDs of links.
+     *
+     * @param links the links
+     * @return the IDs, in the same order
+     */
+    static List<String> IDs( final List<ShaarliLink> links )
+    {
+        final List<String> IDs = new ArrayList<>();
+        for ( final ShaarliLink link : links )
+        {
+            IDs.add( link.getID() );
+        }
+
+        return IDs;
+    }
+
+    // PRIVATE
+    private ShaarliLinkFixtures()
+    {
+        // Nothing
+    }
+}
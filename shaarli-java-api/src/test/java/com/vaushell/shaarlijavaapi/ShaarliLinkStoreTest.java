@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static com.vaushell.shaarlijavaapi.ShaarliLinkFixtures.*;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliLinkStore
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliLinkStoreTest
+{
+    // PUBLIC
+    public ShaarliLinkStoreTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test put, get, delete and reopen.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPersistence()
+        throws IOException
+    {
+        final File file = File.createTempFile( "shaarli" ,
+                                               ".store" );
+        file.deleteOnExit();
+
+        try( final ShaarliLinkStore store = new ShaarliLinkStore( file ) )
+        {
+            store.put( createPrivateLink( "20131110_210900" ,
+                                          "first" ) );
+            store.put( createPrivateLink( "20131110_211000" ,
+                                          "second" ) );
+            store.put( createPrivateLink( "20131110_210900" ,
+                                          "first updated" ) );
+
+            assertTrue( "Link should be deleted" ,
+                        store.delete( "20131110_211000" ) );
+            assertFalse( "Link shouldn't be deleted twice" ,
+                         store.delete( "20131110_211000" ) );
+        }
+
+        try( final ShaarliLinkStore store = new ShaarliLinkStore( file ) )
+        {
+            assertEquals( "Store should contain 1 link" ,
+                          1 ,
+                          store.size() );
+            assertNull( "Deleted link should stay deleted" ,
+                        store.get( "20131110_211000" ) );
+
+            final ShaarliLink link = store.get( "20131110_210900" );
+            assertEquals( "Last version should be read" ,
+                          "first updated" ,
+                          link.getTitle() );
+            assertNull( "Null description should be kept" ,
+                        link.getDescription() );
+            assertTrue( "Restricted should be kept" ,
+                        link.isRestricted() );
+            assertEquals( "Tags should be kept" ,
+                          2 ,
+                          link.getTags().size() );
+            assertTrue( "Tags should be kept" ,
+                        link.getTags().contains( "été" ) );
+        }
+    }
+
+    /**
+     * Test compaction and growth.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testCompact()
+        throws IOException
+    {
+        final File file = File.createTempFile( "shaarli" ,
+                                               ".store" );
+        file.deleteOnExit();
+
+        try( final ShaarliLinkStore store = new ShaarliLinkStore( file ) )
+        {
+            // Enough updates to grow the mapping
+            for ( int i = 0 ; i < 20000 ; ++i )
+            {
+                store.put( createPrivateLink( String.format( "20131110_%06d" ,
+                                                             i % 100 ) ,
+                                              "title " + i ) );
+            }
+
+            assertTrue( "Replaced records should be garbage" ,
+                        store.getGarbage() > 0L );
+
+            store.compact();
+
+            assertEquals( "Compaction should remove garbage" ,
+                          0L ,
+                          store.getGarbage() );
+            assertEquals( "Compaction should keep links" ,
+                          100 ,
+                          store.size() );
+
+            final List<ShaarliLink> links = store.getLinks();
+            assertEquals( "Newest link should be first" ,
+                          "20131110_000099" ,
+                          links.get( 0 ).getID() );
+            assertEquals( "Last version should be kept" ,
+                          "title 19999" ,
+                          links.get( 0 ).getTitle() );
+
+            store.put( createPrivateLink( "20131111_000000" ,
+                                          "after compaction" ) );
+        }
+
+        try( final ShaarliLinkStore store = new ShaarliLinkStore( file ) )
+        {
+            assertEquals( "Compacted store should reopen" ,
+                          101 ,
+                          store.size() );
+        }
+    }
+
+    /**
+     * Test readers during growth and compaction: they never fail and never see an empty store.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentReads()
+        throws Exception
+    {
+        final File file = File.createTempFile( "shaarli" ,
+                                               ".store" );
+        file.deleteOnExit();
+
+        try( final ShaarliLinkStore store = new ShaarliLinkStore( file ) )
+        {
+            for ( int i = 0 ; i < 100 ; ++i )
+            {
+                store.put( createPrivateLink( String.format( "20131110_%06d" ,
+                                                             i ) ,
+                                              "title " + i ) );
+            }
+
+            final AtomicBoolean done = new AtomicBoolean( false );
+
+            final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+            try
+            {
+                final List<Future<?>> readers = new ArrayList<>();
+                for ( int i = 0 ; i < 3 ; i++ )
+                {
+                    readers.add( executor.submit( new Callable<Void>()
+                    {
+                        @Override
+                        public Void call()
+                            throws Exception
+                        {
+                            while ( !done.get() )
+                            {
+                                assertTrue( "Readers should see all links" ,
+                                            store.getLinks().size() >= 100 );
+                                assertTrue( "Readers should see all IDs" ,
+                                            store.getIDs().size() >= 100 );
+                                assertNotNull( "Readers should see a link" ,
+                                               store.get( "20131110_000050" ) );
+                            }
+
+                            return null;
+                        }
+                    } ) );
+                }
+
+                try
+                {
+                    // Enough updates to grow the mapping several times
+                    for ( int i = 0 ; i < 30000 ; ++i )
+                    {
+                        store.put( createPrivateLink( String.format( "20131110_%06d" ,
+                                                                     i % 200 ) ,
+                                                      "title " + i ) );
+
+                        if ( i % 5000 == 0 )
+                        {
+                            store.compact();
+                        }
+                    }
+                }
+                finally
+                {
+                    done.set( true );
+                }
+
+                for ( final Future<?> reader : readers )
+                {
+                    reader.get();
+                }
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+
+            assertEquals( "Store should have all links" ,
+                          200 ,
+                          store.size() );
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliLinkTable
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliLinkTableTest
+{
+    // PUBLIC
+    public ShaarliLinkTableTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test rows are read back as the added links.
+     */
+    @Test
+    public void testRows()
+    {
+        final ShaarliLinkTable table = new ShaarliLinkTable( 1 );
+
+        final ShaarliLink link1 = new ShaarliLink( "20131110_210900" ,
+                                                   "AbCdEf" ,
+                                                   "Été à Paris" ,
+                                                   null ,
+                                                   "http://fabien.vauchelles.com/" ,
+                                                   true );
+        link1.addTag( "java" );
+        link1.addTag( "web" );
+
+        // Not logged: no ID
+        final ShaarliLink link2 = new ShaarliLink( null ,
+                                                   "GhIjKl" ,
+                                                   "" ,
+                                                   "description" ,
+                                                   "http://www.google.com/" ,
+                                                   false );
+
+        assertEquals( "Rows should be appended" ,
+                      0 ,
+                      table.add( link1 ) );
+        assertEquals( "Rows should be appended" ,
+                      1 ,
+                      table.add( link2 ) );
+
+        assertEquals( "Link should be rebuilt" ,
+                      link1 ,
+                      table.get( 0 ) );
+        assertEquals( "Link should be rebuilt" ,
+                      link2 ,
+                      table.get( 1 ) );
+        assertEquals( "Column should be read" ,
+                      "Été à Paris" ,
+                      table.getTitle( 0 ) );
+        assertEquals( "Column should be read" ,
+                      "AbCdEf" ,
+                      table.getPermaID( 0 ) );
+        assertNull( "Null column should be read" ,
+                    table.getDescription( 0 ) );
+        assertEquals( "Column should be read" ,
+                      "description" ,
+                      table.getDescription( 1 ) );
+        assertTrue( "Column should be read" ,
+                    table.isRestricted( 0 ) );
+        assertNull( "Missing ID should be null" ,
+                    table.getID( 1 ) );
+        assertEquals( "Row should be found" ,
+                      0 ,
+                      table.indexOf( "20131110_210900" ) );
+        assertEquals( "Unknown row shouldn't be found" ,
+                      -1 ,
+                      table.indexOf( "20131110_211000" ) );
+
+        try
+        {
+            table.get( 2 );
+            fail( "Row should be checked" );
+        }
+        catch( final IndexOutOfBoundsException ex )
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Test the table is filled from an iterator and grows.
+     */
+    @Test
+    public void testAddAll()
+    {
+        final List<ShaarliLink> links = new ArrayList<>();
+        for ( int i = 0 ; i < 10000 ; ++i )
+        {
+            final ShaarliLink link = new ShaarliLink( String.format( "20131110_%06d" ,
+                                                                     i ) ,
+                                                      "perma" + i ,
+                                                      "title " + i ,
+                                                      "description " + i ,
+                                                      "http://fabien.vauchelles.com/" + i ,
+                                                      i % 2 == 0 );
+            link.addTag( "tag" + i % 10 );
+            links.add( link );
+        }
+
+        final ShaarliLinkTable table = new ShaarliLinkTable();
+        assertEquals( "All links should be added" ,
+                      links.size() ,
+                      table.addAll( links.iterator() ) );
+
+        table.trimToSize();
+
+        final List<ShaarliLink> read = new ArrayList<>();
+        for ( final ShaarliLink link : table )
+        {
+            read.add( link );
+        }
+
+        assertEquals( "Links should be read in order" ,
+                      links ,
+                      read );
+        assertEquals( "All rows should be found" ,
+                      9999 ,
+                      table.indexOf( "20131110_009999" ) );
+        assertEquals( "First row should be found" ,
+                      0 ,
+                      table.indexOf( "20131110_000000" ) );
+        assertTrue( "Columns should be compact" ,
+                    table.getByteSize() < 150L * links.size() );
+
+        table.add( links.get( 0 ) );
+        assertEquals( "First row of a duplicate should be found" ,
+                      0 ,
+                      table.indexOf( "20131110_000000" ) );
+        assertEquals( "Unknown row shouldn't be found" ,
+                      -1 ,
+                      table.indexOf( "20131110_010000" ) );
+    }
+}
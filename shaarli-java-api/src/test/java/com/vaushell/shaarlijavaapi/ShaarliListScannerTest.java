@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliListScanner
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliListScannerTest
+{
+    // PUBLIC
+    public ShaarliListScannerTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test items are cut at their closing tag.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testItems()
+        throws IOException
+    {
+        final List<String> items = scan( "<html><body><!-- <li>comment</li> -->"
+                                         + "<script>var s = '<li>script</li>';</script>"
+                                         + "<ul><LI class=\"private\">A <b>bold</b></LI>\n"
+                                         + "<li>B<ul><li>B1</li></ul></li></ul></body></html>" );
+
+        assertEquals( "2 items should be found" ,
+                      2 ,
+                      items.size() );
+        assertEquals( "First item should be complete" ,
+                      "<LI class=\"private\">A <b>bold</b></LI>" ,
+                      items.get( 0 ) );
+        assertEquals( "Nested lists should stay in their item" ,
+                      "<li>B<ul><li>B1</li></ul></li>" ,
+                      items.get( 1 ) );
+    }
+
+    /**
+     * Test items without closing tag.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testImplicitEnd()
+        throws IOException
+    {
+        final List<String> items = scan( "<ul><li>A<li>B</ul><p>after</p><ol><li>C" );
+
+        assertEquals( "3 items should be found" ,
+                      3 ,
+                      items.size() );
+        assertEquals( "Next item should end the first one" ,
+                      "<li>A" ,
+                      items.get( 0 ) );
+        assertEquals( "End of list should end the second one" ,
+                      "<li>B" ,
+                      items.get( 1 ) );
+        assertEquals( "End of stream should end the last one" ,
+                      "<li>C" ,
+                      items.get( 2 ) );
+    }
+
+    /**
+     * Test bookmarks of a Netscape export.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testExport()
+        throws IOException
+    {
+        final ShaarliListScanner scanner = new ShaarliListScanner( new StringReader( "<!DOCTYPE NETSCAPE-Bookmark-file-1>\n"
+                                                                                     + "<TITLE>Bookmarks</TITLE>\n"
+                                                                                     + "<H1>Bookmarks</H1>\n"
+                                                                                     + "<DL><p>\n"
+                                                                                     + "<DT><A HREF=\"http://a\" ADD_DATE=\"1384117740\">A</A>\n"
+                                                                                     + "<DD>line 1\nline 2\n"
+                                                                                     + "<DT><A HREF=\"http://b\">B</A>\n"
+                                                                                     + "</DL><p>\n" ) ,
+                                                                   "dt" ,
+                                                                   "dl" );
+
+        assertEquals( "First bookmark should keep its description" ,
+                      "<DT><A HREF=\"http://a\" ADD_DATE=\"1384117740\">A</A>\n<DD>line 1\nline 2\n" ,
+                      scanner.next() );
+        assertEquals( "Second bookmark should end with the list" ,
+                      "<DT><A HREF=\"http://b\">B</A>\n" ,
+                      scanner.next() );
+        assertNull( "No more bookmark" ,
+                    scanner.next() );
+    }
+
+    /**
+     * Test items outside the lists are skipped.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testOtherLists()
+        throws IOException
+    {
+        final ShaarliListScanner scanner = new ShaarliListScanner( new StringReader( "<li>alone</li>"
+                                                                                     + "<ul><li>menu</li></ul>"
+                                                                                     + "<ol><li>A</li></ol>" ) ,
+                                                                   "li" ,
+                                                                   "ol" );
+
+        assertEquals( "Only the items of the lists should be found" ,
+                      "<li>A</li>" ,
+                      scanner.next() );
+        assertNull( "No more item" ,
+                    scanner.next() );
+    }
+
+    /**
+     * Test streaming and DOM modes find the same links, with the links template. The IDs scan finds their IDs.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStreamingLikeDOM()
+        throws Exception
+    {
+        final byte[] body = ( "<html><body>"
+                              + "<ul class=\"menu\"><li>Menu</li></ul>"
+                              + "<div id=\"links\"><ol>"
+                              + "<li class=\"private\"><a name=\"AbCdEf\" id=\"AbCdEf\"></a>"
+                              + "<span class=\"linktitle\">First</span>"
+                              + "<span class=\"linkdate\">Sun Nov 10 21:09:00 2013 - permalink</span>"
+                              + "<div class=\"linkdescription\">du java quoi!</div>"
+                              + "<span class=\"linkurl\">http://fabien.vauchelles.com/</span>"
+                              + "<div class=\"linktaglist\"><a>java</a><a>blog</a></div></li>"
+                              + "<li><a name=\"GhIjKl\" id=\"GhIjKl\"></a>"
+                              + "<span class=\"linktitle\">Second</span>"
+                              + "<span class=\"linkdate\">Sun Nov 10 21:10:00 2013 - permalink</span>"
+                              + "<span class=\"linkurl\">http://www.vauchelles.com/</span></li>"
+                              + "</ol></div>"
+                              + "</body></html>" ).getBytes( "UTF-8" );
+
+        final HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1" ,
+                                                                            0 ) ,
+                                                     0 );
+        server.createContext( "/" ,
+                              new HttpHandler()
+        {
+            @Override
+            public void handle( final HttpExchange exchange )
+                throws IOException
+            {
+                exchange.sendResponseHeaders( 200 ,
+                                              body.length );
+                try( final OutputStream os = exchange.getResponseBody() )
+                {
+                    os.write( body );
+                }
+            }
+        } );
+        server.start();
+
+        try
+        {
+            final String endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+
+            final ShaarliTemplates templates = new ShaarliTemplates();
+            templates.add( "links" ,
+                           "div#links ol > li" ,
+                           "" ,
+                           "" );
+
+            final List<ShaarliLink> expected;
+            final List<String> IDs = new ArrayList<>();
+            try( final ShaarliClient client = new ShaarliClient( templates ,
+                                                                 endpoint ) )
+            {
+                expected = client.searchAll( 1 );
+
+                try( final ShaarliIterator<String> it = client.searchAllIDsIterator() )
+                {
+                    while ( it.hasNext() )
+                    {
+                        IDs.add( it.next() );
+                    }
+                }
+            }
+
+            final ShaarliSettings settings = new ShaarliSettings();
+            settings.setStreaming( true );
+
+            final List<ShaarliLink> actual;
+            try( final ShaarliClient client = new ShaarliClient( settings ,
+                                                                 templates ,
+                                                                 endpoint ) )
+            {
+                actual = client.searchAll( 1 );
+            }
+
+            assertEquals( "DOM mode should find 2 links" ,
+                          2 ,
+                          expected.size() );
+            assertEquals( "IDs scan should find the same IDs" ,
+                          Arrays.asList( expected.get( 0 ).getID() ,
+                                         expected.get( 1 ).getID() ) ,
+                          IDs );
+            assertEquals( "Streaming mode should find the same links" ,
+                          expected.size() ,
+                          actual.size() );
+            for ( int i = 0 ; i < expected.size() ; i++ )
+            {
+                final ShaarliLink e = expected.get( i );
+                final ShaarliLink a = actual.get( i );
+
+                assertEquals( "ID should be the same" ,
+                              e.getID() ,
+                              a.getID() );
+                assertEquals( "Permalink ID should be the same" ,
+                              e.getPermaID() ,
+                              a.getPermaID() );
+                assertEquals( "Title should be the same" ,
+                              e.getTitle() ,
+                              a.getTitle() );
+                assertEquals( "Description should be the same" ,
+                              e.getDescription() ,
+                              a.getDescription() );
+                assertEquals( "URL should be the same" ,
+                              e.getUrl() ,
+                              a.getUrl() );
+                assertEquals( "Restriction should be the same" ,
+                              e.isRestricted() ,
+                              a.isRestricted() );
+                assertEquals( "Tags should be the same" ,
+                              e.getTags() ,
+                              a.getTags() );
+            }
+        }
+        finally
+        {
+            server.stop( 0 );
+        }
+    }
+
+    // PRIVATE
+    private static List<String> scan( final String html )
+        throws IOException
+    {
+        final ShaarliListScanner scanner = new ShaarliListScanner( new StringReader( html ) ,
+                                                                 "li" ,
+                                                                 "ul" ,
+                                                                 "ol" );
+
+        final List<String> items = new ArrayList<>();
+
+        String item;
+        while ( ( item = scanner.next() ) != null )
+        {
+            items.add( item );
+        }
+
+        return items;
+    }
+}
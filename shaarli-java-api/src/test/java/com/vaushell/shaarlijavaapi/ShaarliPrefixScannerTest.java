@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.vaushell.shaarlijavaapi.ShaarliTemplates.Key;
+import java.io.IOException;
+import java.io.StringReader;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliPrefixScanner
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliPrefixScannerTest
+{
+    // PUBLIC
+    public ShaarliPrefixScannerTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test the scan stops after the value.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testStopEarly()
+        throws IOException
+    {
+        final ShaarliTemplates.Compiled compiled = new ShaarliTemplates().compile();
+
+        final ShaarliPrefixScanner scanner = new ShaarliPrefixScanner( compiled.get( Key.TOKEN ) ,
+                                                                       64 );
+        final String value = scanner.scan( new StringReader( page() ) ,
+                                           "http://localhost/" );
+
+        assertEquals( "Token should be found" ,
+                      "20119241badf78a3dcfa55ae58eab429a5d24bad" ,
+                      value );
+        assertFalse( "Page should not be fully read" ,
+                     scanner.isFullyRead() );
+    }
+
+    /**
+     * Test a value cut by a chunk is read completely.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testCutValue()
+        throws IOException
+    {
+        final ShaarliTemplates.Compiled compiled = new ShaarliTemplates().compile();
+
+        for ( int chunk = 1 ; chunk < 200 ; chunk += 7 )
+        {
+            final ShaarliPrefixScanner scanner = new ShaarliPrefixScanner( compiled.get( Key.LINKS_COUNT ) ,
+                                                                           chunk );
+
+            assertEquals( "Count should be complete with chunk=" + chunk ,
+                          "1234" ,
+                          scanner.scan( new StringReader( page() ) ,
+                                        "http://localhost/" ) );
+        }
+    }
+
+    /**
+     * Test a missing value reads the whole page.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testNotFound()
+        throws IOException
+    {
+        final ShaarliTemplates.Compiled compiled = new ShaarliTemplates().compile();
+
+        final ShaarliPrefixScanner scanner = new ShaarliPrefixScanner( compiled.get( Key.PAGE_MAX ) ,
+                                                                       64 );
+
+        assertNull( "Value should not be found" ,
+                    scanner.scan( new StringReader( page() ) ,
+                                  "http://localhost/" ) );
+        assertTrue( "Page should be fully read" ,
+                    scanner.isFullyRead() );
+    }
+
+    // PRIVATE
+    private static String page()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "<html><head><title>Shaarli</title></head><body>" );
+        sb.append( "<div id=\"pageheader\"><div class=\"nomobile\">Shaare your links... 1234 links</div>" );
+        sb.append( "<form><input type=\"hidden\" name=\"token\" value=\"20119241badf78a3dcfa55ae58eab429a5d24bad\">" );
+        sb.append( "</form></div><ul>" );
+        for ( int i = 0 ; i < 1000 ; i++ )
+        {
+            sb.append( "<li><span class=\"linktitle\">Link " ).append( i ).append( "</span></li>" );
+        }
+        sb.append( "</ul></body></html>" );
+
+        return sb.toString();
+    }
+}
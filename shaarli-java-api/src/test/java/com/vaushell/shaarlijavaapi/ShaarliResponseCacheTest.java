@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliResponseCache
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliResponseCacheTest
+{
+    // PUBLIC
+    public ShaarliResponseCacheTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test the least recently used entry is evicted.
+     */
+    @Test
+    public void testEviction()
+    {
+        final ShaarliResponseCache cache = new ShaarliResponseCache( 2 );
+
+        cache.put( "a" ,
+                   new ShaarliResponseCache.Entry( "\"1\"" ,
+                                                   null ,
+                                                   "A" ) );
+        cache.put( "b" ,
+                   new ShaarliResponseCache.Entry( null ,
+                                                   "Sun, 10 Nov 2013 21:09:00 GMT" ,
+                                                   "B" ) );
+
+        // "a" becomes the most recently used
+        assertEquals( "Entry should be cached" ,
+                      "A" ,
+                      cache.get( "a" ).value );
+
+        cache.put( "c" ,
+                   new ShaarliResponseCache.Entry( "\"3\"" ,
+                                                   null ,
+                                                   "C" ) );
+
+        assertEquals( "Cache should be bounded" ,
+                      2 ,
+                      cache.size() );
+        assertNull( "Least recently used entry should be evicted" ,
+                    cache.get( "b" ) );
+        assertNotNull( "Recently used entry should be kept" ,
+                       cache.get( "a" ) );
+
+        cache.clear();
+
+        assertEquals( "Cache should be empty" ,
+                      0 ,
+                      cache.size() );
+    }
+
+    /**
+     * Test values of several kinds read on the same page are cached apart, through the conditional requests.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConditionalGet()
+        throws Exception
+    {
+        final AtomicInteger notModified = new AtomicInteger();
+        final List<String> pages = new CopyOnWriteArrayList<>();
+
+        final HttpServer server = HttpServer.create( new InetSocketAddress( "127.0.0.1" ,
+                                                                            0 ) ,
+                                                     0 );
+        server.createContext( "/" ,
+                              new HttpHandler()
+        {
+            @Override
+            public void handle( final HttpExchange exchange )
+                throws IOException
+            {
+                final String query = exchange.getRequestURI().getQuery();
+                if ( query != null )
+                {
+                    pages.add( query );
+                }
+
+                if ( "\"v1\"".equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ) ) )
+                {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders( 304 ,
+                                                  -1 );
+                    exchange.close();
+
+                    return;
+                }
+
+                final byte[] body = ( "<html><body>"
+                                      + "<div id=\"pageheader\"><div class=\"nomobile\">42 links</div></div>"
+                                      + "<ul></ul>"
+                                      + "<div id=\"paging_current\">1 / 3</div>"
+                                      + "</body></html>" ).getBytes( "UTF-8" );
+
+                exchange.getResponseHeaders().add( "ETag" ,
+                                                   "\"v1\"" );
+                exchange.sendResponseHeaders( 200 ,
+                                              body.length );
+                try( final OutputStream os = exchange.getResponseBody() )
+                {
+                    os.write( body );
+                }
+            }
+        } );
+        server.start();
+
+        try
+        {
+            final ShaarliSettings settings = new ShaarliSettings();
+            settings.setResponseCacheSize( 16 );
+
+            try( final ShaarliClient client = new ShaarliClient( settings ,
+                                                                 new ShaarliTemplates() ,
+                                                                 "http://127.0.0.1:" + server.getAddress().getPort() ) )
+            {
+                assertEquals( "Count should be read" ,
+                              42 ,
+                              client.getLinksCount() );
+                assertEquals( "Count should be revalidated" ,
+                              42 ,
+                              client.getLinksCount() );
+                assertEquals( "Page should be revalidated" ,
+                              1 ,
+                              notModified.get() );
+
+                // The max page is read on the same page: the cached count must not be reused
+                try( final ShaarliIterator<ShaarliLink> it = client.searchAllReverseIterator() )
+                {
+                    assertFalse( "Pages have no link" ,
+                                 it.hasNext() );
+                }
+
+                // Pages are read in parallel, from the last one
+                int lastPage = 0;
+                for ( final String page : pages )
+                {
+                    lastPage = Math.max( lastPage ,
+                                         Integer.parseInt( page.substring( "page=".length() ) ) );
+                }
+                assertEquals( "Max page should be read" ,
+                              3 ,
+                              lastPage );
+            }
+        }
+        finally
+        {
+            server.stop( 0 );
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.Arrays;
+import static com.vaushell.shaarlijavaapi.ShaarliLinkFixtures.*;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliSearchIndex
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliSearchIndexTest
+{
+    // PUBLIC
+    public ShaarliSearchIndexTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test words splitting.
+     */
+    @Test
+    public void testTokenize()
+    {
+        assertEquals( "Words should be lower-cased without accents" ,
+                      Arrays.asList( "ete" ,
+                                     "java" ,
+                                     "http" ,
+                                     "fabien" ,
+                                     "vauchelles" ,
+                                     "com" ,
+                                     "sha*" ) ,
+                      ShaarliSearchIndex.tokenize( "Été, JAVA: http://fabien.vauchelles.com sha*" ) );
+    }
+
+    /**
+     * Test boolean and ranked queries.
+     */
+    @Test
+    public void testSearch()
+    {
+        final ShaarliSearchIndex index = new ShaarliSearchIndex();
+
+        index.add( createLink( "20131110_210900" ,
+                               "Java API" ,
+                               "A client for Shaarli" ) );
+        index.add( createLink( "20131110_211000" ,
+                               "Shaarli" ,
+                               "Shaarli is a bookmark manager in PHP" ) );
+        index.add( createLink( "20131110_211100" ,
+                               "Cooking" ,
+                               "Nothing about java" ) );
+
+        assertEquals( "All words should match" ,
+                      Arrays.asList( "20131110_210900" ) ,
+                      IDs( index.searchAll( "shaarli JAVA" ) ) );
+        assertEquals( "Any word should match, newest first" ,
+                      Arrays.asList( "20131110_211100" ,
+                                     "20131110_211000" ,
+                                     "20131110_210900" ) ,
+                      IDs( index.searchAny( "java bookmark" ) ) );
+        assertEquals( "Prefix should match" ,
+                      Arrays.asList( "20131110_211000" ,
+                                     "20131110_210900" ) ,
+                      IDs( index.searchAll( "shaa*" ) ) );
+        assertEquals( "Best match should be first" ,
+                      "20131110_211000" ,
+                      index.search( "shaarli" ,
+                                    10 ).get( 0 ).getID() );
+        assertEquals( "Results should be limited" ,
+                      1 ,
+                      index.search( "java" ,
+                                    1 ).size() );
+
+        // Update and delete
+        index.add( createLink( "20131110_211100" ,
+                               "Cooking" ,
+                               "Nothing about programming" ) );
+        assertTrue( "Link should be removed" ,
+                    index.remove( "20131110_210900" ) );
+
+        assertTrue( "Updated and deleted links shouldn't match" ,
+                    index.searchAny( "java" ).isEmpty() );
+        assertEquals( "Index should contain 2 links" ,
+                      2 ,
+                      index.size() );
+    }
+
+    /**
+     * Test only the best matches are kept, best first, newest first on ties.
+     */
+    @Test
+    public void testRanking()
+    {
+        final ShaarliSearchIndex index = new ShaarliSearchIndex();
+
+        for ( int i = 0 ; i < 100 ; ++i )
+        {
+            index.add( createLink( String.format( "20131110_%06d" ,
+                                                  i ) ,
+                                   "Cooking" ,
+                                   i % 10 == 0 ? "java java" : "java" ) );
+        }
+
+        assertEquals( "Best matches should be first, newest first on ties" ,
+                      Arrays.asList( "20131110_000090" ,
+                                     "20131110_000080" ,
+                                     "20131110_000070" ,
+                                     "20131110_000060" ,
+                                     "20131110_000050" ,
+                                     "20131110_000040" ,
+                                     "20131110_000030" ,
+                                     "20131110_000020" ,
+                                     "20131110_000010" ,
+                                     "20131110_000000" ,
+                                     "20131110_000099" ,
+                                     "20131110_000098" ) ,
+                      IDs( index.search( "java" ,
+                                         12 ) ) );
+        assertEquals( "All matches should be returned under the limit" ,
+                      100 ,
+                      index.search( "java" ,
+                                    1000 ).size() );
+        assertTrue( "No match should be returned without a limit" ,
+                    index.search( "java" ,
+                                  0 ).isEmpty() );
+        assertTrue( "Unknown word shouldn't match" ,
+                    index.search( "php" ,
+                                  10 ).isEmpty() );
+    }
+
+    /**
+     * Test many updates (documents are renumbered).
+     */
+    @Test
+    public void testUpdates()
+    {
+        final ShaarliSearchIndex index = new ShaarliSearchIndex();
+
+        for ( int i = 0 ; i < 10000 ; ++i )
+        {
+            index.add( createLink( String.format( "20131110_%06d" ,
+                                                  i % 10 ) ,
+                                   "title" ,
+                                   "version" + i ) );
+        }
+
+        assertEquals( "Index should contain 10 links" ,
+                      10 ,
+                      index.size() );
+        assertEquals( "All links should match" ,
+                      10 ,
+                      index.searchAll( "title" ).size() );
+        assertEquals( "Last version should match" ,
+                      Arrays.asList( "20131110_000009" ) ,
+                      IDs( index.searchAll( "version9999" ) ) );
+        assertTrue( "Old version shouldn't match" ,
+                    index.searchAll( "version9" ).isEmpty() );
+    }
+}
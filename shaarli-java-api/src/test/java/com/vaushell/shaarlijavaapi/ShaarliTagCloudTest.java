@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliTagCloud
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliTagCloudTest
+{
+    // PUBLIC
+    public ShaarliTagCloudTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test counts are updated by known changes, without fetching again.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testUpdates()
+        throws IOException
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+        final ShaarliTagCloud cloud = new ShaarliTagCloud( 3600000L ,
+                                                           fetcher( fetches ) ,
+                                                           DIRECT );
+
+        assertEquals( "Tag cloud should be fetched" ,
+                      Integer.valueOf( 2 ) ,
+                      cloud.get().get( "java" ) );
+
+        cloud.begin();
+        cloud.update( "20131110_210900" ,
+                      Arrays.asList( "Java" ,
+                                     "web" ) ,
+                      true );
+        cloud.begin();
+        cloud.update( "20131110_210900" ,
+                      Arrays.asList( "web" ) ,
+                      false );
+        cloud.begin();
+        cloud.update( "20131110_211000" ,
+                      Arrays.asList( "php" ) ,
+                      true );
+        cloud.begin();
+        cloud.delete( "20131110_211000" );
+
+        final Map<String , Integer> tags = cloud.get();
+        assertEquals( "Diff should keep count" ,
+                      Integer.valueOf( 2 ) ,
+                      tags.get( "java" ) );
+        assertEquals( "New tag should be counted" ,
+                      Integer.valueOf( 1 ) ,
+                      tags.get( "web" ) );
+        assertNull( "Deleted tag should be removed" ,
+                    tags.get( "php" ) );
+        assertEquals( "Known changes shouldn't fetch" ,
+                      1 ,
+                      fetches.get() );
+    }
+
+    /**
+     * Test unknown changes revalidate the cache.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testRevalidation()
+        throws IOException
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+        final ShaarliTagCloud cloud = new ShaarliTagCloud( 3600000L ,
+                                                           fetcher( fetches ) ,
+                                                           DIRECT );
+
+        cloud.get();
+
+        // Unknown link
+        cloud.begin();
+        cloud.update( "20131110_210900" ,
+                      Arrays.asList( "web" ) ,
+                      false );
+
+        assertEquals( "Stale counts should be returned" ,
+                      Integer.valueOf( 2 ) ,
+                      cloud.get().get( "java" ) );
+        assertEquals( "Stale cache should be revalidated" ,
+                      2 ,
+                      fetches.get() );
+
+        cloud.get();
+        assertEquals( "Revalidated cache should be fresh" ,
+                      2 ,
+                      fetches.get() );
+
+        cloud.clear();
+        cloud.get();
+        assertEquals( "Cleared cache should be fetched" ,
+                      3 ,
+                      fetches.get() );
+    }
+
+    /**
+     * Test a fetch during a post leaves the cache stale.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testFetchDuringPost()
+        throws IOException
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+        final ShaarliTagCloud cloud = new ShaarliTagCloud( 3600000L ,
+                                                           fetcher( fetches ) ,
+                                                           DIRECT );
+
+        // The fetch may see the posted link or not
+        cloud.begin();
+        cloud.get();
+        cloud.update( "20131110_210900" ,
+                      Arrays.asList( "java" ) ,
+                      true );
+
+        cloud.get();
+        assertEquals( "Counts fetched during a post should be revalidated" ,
+                      2 ,
+                      fetches.get() );
+        assertEquals( "Revalidated counts should be Shaarli's" ,
+                      Integer.valueOf( 2 ) ,
+                      cloud.get().get( "java" ) );
+
+        cloud.begin();
+        cloud.abort();
+        cloud.get();
+        assertEquals( "Failed post should revalidate" ,
+                      3 ,
+                      fetches.get() );
+    }
+
+    /**
+     * Test the tags of old changes are forgotten.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testKnownEviction()
+        throws IOException
+    {
+        final AtomicInteger fetches = new AtomicInteger();
+        final ShaarliTagCloud cloud = new ShaarliTagCloud( 3600000L ,
+                                                           fetcher( fetches ) ,
+                                                           DIRECT );
+
+        cloud.get();
+
+        for ( int i = 0 ; i <= 10000 ; i++ )
+        {
+            cloud.begin();
+            cloud.update( "link" + i ,
+                          Arrays.asList( "web" ) ,
+                          true );
+        }
+
+        // The first link is evicted: its modification can't be counted
+        cloud.begin();
+        cloud.update( "link0" ,
+                      Arrays.asList( "php" ) ,
+                      false );
+        cloud.get();
+        assertEquals( "Evicted link should revalidate" ,
+                      2 ,
+                      fetches.get() );
+    }
+
+    /**
+     * Test a change must be announced.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testUnannouncedChange()
+        throws IOException
+    {
+        final ShaarliTagCloud cloud = new ShaarliTagCloud( 3600000L ,
+                                                           fetcher( new AtomicInteger() ) ,
+                                                           DIRECT );
+
+        try
+        {
+            cloud.delete( "20131110_210900" );
+            fail( "Change without begin() should be refused" );
+        }
+        catch( final IllegalStateException ex )
+        {
+            // Expected
+        }
+
+        cloud.begin();
+        cloud.abort();
+        try
+        {
+            cloud.abort();
+            fail( "Change shouldn't be ended twice" );
+        }
+        catch( final IllegalStateException ex )
+        {
+            // Expected
+        }
+    }
+
+    // PRIVATE
+    private static final Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute( final Runnable command )
+        {
+            command.run();
+        }
+    };
+
+    private static Callable<Map<String , Integer>> fetcher( final AtomicInteger fetches )
+    {
+        return new Callable<Map<String , Integer>>()
+        {
+            @Override
+            public Map<String , Integer> call()
+                throws Exception
+            {
+                fetches.incrementAndGet();
+
+                final Map<String , Integer> tags = new HashMap<>();
+                tags.put( "java" ,
+                          2 );
+
+                return tags;
+            }
+        };
+    }
+}
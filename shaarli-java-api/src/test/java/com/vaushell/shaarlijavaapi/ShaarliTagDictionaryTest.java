@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliTagDictionary
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliTagDictionaryTest
+{
+    // PUBLIC
+    public ShaarliTagDictionaryTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test names are interned.
+     */
+    @Test
+    public void testIntern()
+    {
+        final ShaarliTagDictionary dictionary = ShaarliTagDictionary.getDefault();
+
+        final int code = dictionary.intern( new String( "dictionary-test" ) );
+
+        assertEquals( "Same name should get the same code" ,
+                      code ,
+                      dictionary.intern( new String( "dictionary-test" ) ) );
+        assertEquals( "Lookup should find the code" ,
+                      code ,
+                      dictionary.lookup( "dictionary-test" ) );
+        assertEquals( "Unknown name shouldn't be added" ,
+                      -1 ,
+                      dictionary.lookup( "dictionary-unknown" ) );
+        assertSame( "Name should be shared" ,
+                    dictionary.getName( code ) ,
+                    dictionary.getName( dictionary.intern( new String( "dictionary-test" ) ) ) );
+    }
+
+    /**
+     * Test the tags view of a link.
+     */
+    @Test
+    public void testLinkTags()
+    {
+        final ShaarliLink link = new ShaarliLink();
+        link.addTag( "web" );
+        link.addTag( "java" );
+        link.addTag( "java" );
+
+        final Set<String> tags = link.getTags();
+        assertEquals( "Tags should be a set" ,
+                      2 ,
+                      tags.size() );
+        assertEquals( "Tags should be sorted by name" ,
+                      Arrays.asList( "java" ,
+                                     "web" ) ,
+                      Arrays.asList( tags.toArray() ) );
+        assertEquals( "Tags should equal a set of names" ,
+                      new TreeSet<>( Arrays.asList( "java" ,
+                                                    "web" ) ) ,
+                      tags );
+        assertTrue( "Tags should contain a name" ,
+                    tags.contains( "web" ) );
+        assertEquals( "Codes should be sorted" ,
+                      2 ,
+                      link.getTagCodes().length );
+        assertTrue( "Codes should be sorted" ,
+                    link.getTagCodes()[0] < link.getTagCodes()[1] );
+
+        tags.add( "php" );
+        assertTrue( "View should write through" ,
+                    link.getTags().contains( "php" ) );
+
+        final Iterator<String> it = link.getTags().iterator();
+        it.next();
+        it.remove();
+        assertEquals( "Iterator should remove" ,
+                      Arrays.asList( "php" ,
+                                     "web" ) ,
+                      Arrays.asList( link.getTags().toArray() ) );
+
+        final ShaarliLink other = new ShaarliLink();
+        other.setTags( new TreeSet<>( Arrays.asList( "web" ,
+                                                     "php" ) ) );
+        assertEquals( "Links with the same tags should be equal" ,
+                      other ,
+                      link );
+        assertEquals( "Links with the same tags should have the same hash" ,
+                      other.hashCode() ,
+                      link.hashCode() );
+    }
+
+    /**
+     * Test the serialized form keeps tag names.
+     *
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @Test
+    public void testSerialization()
+        throws IOException , ClassNotFoundException
+    {
+        final ShaarliLink link = new ShaarliLink( "20131110_210900" ,
+                                                  "AbCdEf" ,
+                                                  "title" ,
+                                                  null ,
+                                                  "http://fabien.vauchelles.com/" ,
+                                                  true );
+        link.addTag( "java" );
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try( final ObjectOutputStream oos = new ObjectOutputStream( bos ) )
+        {
+            oos.writeObject( link );
+        }
+
+        try( final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bos.toByteArray() ) ) )
+        {
+            assertEquals( "Link should be deserialized" ,
+                          link ,
+                          ois.readObject() );
+        }
+    }
+
+    /**
+     * Test links serialized before the tag dictionary (tags in a set of names) are deserialized.
+     *
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @Test
+    public void testPreviousSerialization()
+        throws IOException , ClassNotFoundException
+    {
+        final ShaarliLink expected = new ShaarliLink( "20131110_210900" ,
+                                                      "AbCdEf" ,
+                                                      "Blog de Fabien Vauchelles" ,
+                                                      null ,
+                                                      "http://fabien.vauchelles.com/" ,
+                                                      true );
+        expected.addTag( "java" );
+        expected.addTag( "web" );
+
+        try( final InputStream is = getClass().getResourceAsStream( "/ShaarliLink-before-dictionary.ser" ) )
+        {
+            assertNotNull( "Fixture should exist" ,
+                           is );
+
+            try( final ObjectInputStream ois = new ObjectInputStream( is ) )
+            {
+                assertEquals( "Previous link should be deserialized" ,
+                              expected ,
+                              ois.readObject() );
+            }
+        }
+    }
+
+    /**
+     * Test links with different dictionaries are compared by tag names.
+     */
+    @Test
+    public void testDictionaries()
+    {
+        final ShaarliTagDictionary dictionary = new ShaarliTagDictionary();
+        // Codes differ from the default dictionary
+        dictionary.intern( "dictionaries-test" );
+
+        final ShaarliLink link = new ShaarliLink( "20131110_210900" ,
+                                                  null ,
+                                                  "title" ,
+                                                  null ,
+                                                  "http://fabien.vauchelles.com/" ,
+                                                  false ,
+                                                  dictionary );
+        link.addTag( "java" );
+        link.addTag( "web" );
+
+        final ShaarliLink other = new ShaarliLink( "20131110_210900" ,
+                                                   null ,
+                                                   "title" ,
+                                                   null ,
+                                                   "http://fabien.vauchelles.com/" ,
+                                                   false );
+        other.addTag( "web" );
+        other.addTag( "java" );
+
+        assertEquals( "Links with the same tag names should be equal" ,
+                      other ,
+                      link );
+        assertEquals( "Links with the same tag names should have the same hash" ,
+                      other.hashCode() ,
+                      link.hashCode() );
+        assertEquals( "Tags should be read from the link's dictionary" ,
+                      2 ,
+                      dictionary.size() - 1 );
+
+        other.addTag( "php" );
+        assertFalse( "Links with other tags shouldn't be equal" ,
+                     link.equals( other ) );
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import static com.vaushell.shaarlijavaapi.ShaarliLinkFixtures.*;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliTagIndex
+ * @see ShaarliBitmap
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliTagIndexTest
+{
+    // PUBLIC
+    public ShaarliTagIndexTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test bitmap operations against sets, with sparse and dense groups.
+     */
+    @Test
+    public void testBitmap()
+    {
+        final ShaarliBitmap a = new ShaarliBitmap();
+        final ShaarliBitmap b = new ShaarliBitmap();
+        final TreeSet<Integer> sa = new TreeSet<>();
+        final TreeSet<Integer> sb = new TreeSet<>();
+
+        for ( int i = 0 ; i < 200000 ; i += 3 )
+        {
+            a.add( i );
+            sa.add( i );
+        }
+        for ( int i = 0 ; i < 200000 ; i += 50 )
+        {
+            b.add( i );
+            sb.add( i );
+        }
+        for ( int i = 0 ; i < 200000 ; i += 6 )
+        {
+            a.remove( i );
+            sa.remove( i );
+        }
+
+        assertEquals( "Cardinality should match" ,
+                      sa.size() ,
+                      a.cardinality() );
+        assertTrue( "Value should be contained" ,
+                    a.contains( 3 ) );
+        assertFalse( "Removed value shouldn't be contained" ,
+                     a.contains( 6 ) );
+
+        final TreeSet<Integer> and = new TreeSet<>( sa );
+        and.retainAll( sb );
+        assertEquals( "AND should match" ,
+                      and ,
+                      toSet( ShaarliBitmap.and( a ,
+                                                b ).toArray() ) );
+        assertEquals( "AND cardinality should match" ,
+                      and.size() ,
+                      ShaarliBitmap.andCardinality( a ,
+                                                    b ) );
+
+        final TreeSet<Integer> or = new TreeSet<>( sa );
+        or.addAll( sb );
+        assertEquals( "OR should match" ,
+                      or ,
+                      toSet( ShaarliBitmap.or( a ,
+                                               b ).toArray() ) );
+
+        final TreeSet<Integer> andNot = new TreeSet<>( sa );
+        andNot.removeAll( sb );
+        assertEquals( "AND NOT should match" ,
+                      andNot ,
+                      toSet( ShaarliBitmap.andNot( a ,
+                                                   b ).toArray() ) );
+
+        final int[] range = a.reverseRange( 2 ,
+                                            3 );
+        final List<Integer> expected = new ArrayList<>( sa.descendingSet() ).subList( 2 ,
+                                                                                     5 );
+        assertEquals( "Reverse range should match" ,
+                      expected ,
+                      toList( range ) );
+    }
+
+    /**
+     * Test tags combinations, pagination and facets.
+     */
+    @Test
+    public void testSearch()
+    {
+        final ShaarliTagIndex index = new ShaarliTagIndex();
+
+        // Not in ID order
+        index.add( createTaggedLink( "20131110_210300" ,
+                                     "java" ,
+                                     "web" ) );
+        index.add( createTaggedLink( "20131110_210100" ,
+                                     "java" ) );
+        index.add( createTaggedLink( "20131110_210200" ,
+                                     "php" ,
+                                     "web" ) );
+        index.add( createTaggedLink( "20131110_210400" ,
+                                     "Java" ,
+                                     "test" ) );
+
+        assertEquals( "AND should match, newest first" ,
+                      Arrays.asList( "20131110_210300" ) ,
+                      IDs( index.searchTags( 1 ,
+                                             10 ,
+                                             "JAVA" ,
+                                             "web" ) ) );
+        assertEquals( "Count should match" ,
+                      3 ,
+                      index.countTags( "java" ) );
+        assertEquals( "Pages should be newest first" ,
+                      Arrays.asList( "20131110_210300" ) ,
+                      IDs( index.searchTags( 2 ,
+                                             1 ,
+                                             "java" ) ) );
+        assertEquals( "OR and NOT should match" ,
+                      Arrays.asList( "20131110_210400" ,
+                                     "20131110_210200" ) ,
+                      IDs( index.search( null ,
+                                         Arrays.asList( "test" ,
+                                                        "php" ) ,
+                                         Arrays.asList( "web2" ) ,
+                                         1 ,
+                                         10 ) ) );
+        assertEquals( "NOT should exclude" ,
+                      Arrays.asList( "20131110_210400" ,
+                                     "20131110_210100" ) ,
+                      IDs( index.search( Arrays.asList( "java" ) ,
+                                         null ,
+                                         Arrays.asList( "web" ) ,
+                                         1 ,
+                                         10 ) ) );
+
+        final Map<String , Integer> facets = index.getFacets( "web" );
+        assertEquals( "Facets should count co-occurring tags" ,
+                      Integer.valueOf( 1 ) ,
+                      facets.get( "java" ) );
+        assertEquals( "Facets should count co-occurring tags" ,
+                      Integer.valueOf( 2 ) ,
+                      facets.get( "web" ) );
+        assertNull( "Facets should ignore other tags" ,
+                    facets.get( "test" ) );
+
+        // Update and delete
+        index.add( createTaggedLink( "20131110_210300" ,
+                                     "php" ) );
+        assertTrue( "Link should be removed" ,
+                    index.remove( "20131110_210100" ) );
+
+        assertEquals( "Count should follow updates" ,
+                      1 ,
+                      index.countTags( "java" ) );
+        assertEquals( "Count should follow updates" ,
+                      2 ,
+                      index.countTags( "php" ) );
+        assertEquals( "Unknown tag should match nothing" ,
+                      0 ,
+                      index.countTags( "unknown" ) );
+    }
+
+    // PRIVATE
+    private static TreeSet<Integer> toSet( final int[] values )
+    {
+        return new TreeSet<>( toList( values ) );
+    }
+
+    private static List<Integer> toList( final int[] values )
+    {
+        final List<Integer> list = new ArrayList<>( values.length );
+        for ( final int value : values )
+        {
+            list.add( value );
+        }
+
+        return list;
+    }
+}
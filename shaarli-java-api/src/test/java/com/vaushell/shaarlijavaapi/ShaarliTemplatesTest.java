@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import com.vaushell.shaarlijavaapi.ShaarliTemplates.Key;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliTemplates
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliTemplatesTest
+{
+    // PUBLIC
+    public ShaarliTemplatesTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test compiled templates match the same elements as Jsoup selectors.
+     */
+    @Test
+    public void testSelect()
+    {
+        final Document doc = Jsoup.parse( "<ul>"
+                                          + "<li class=\"private\"><span class=\"linktitle\">A</span>"
+                                          + "<div class=\"linktaglist\"><a>java</a><a>blog</a></div></li>"
+                                          + "<li><span class=\"linktitle\">B</span></li>"
+                                          + "</ul>" );
+
+        final ShaarliTemplates templates = new ShaarliTemplates();
+        final ShaarliTemplates.Compiled compiled = templates.compile();
+
+        for ( final Key key : new Key[]
+        {
+            Key.LINKS , Key.LINKS_PRIVATE , Key.LINKS_TITLE , Key.TAGS
+        } )
+        {
+            final ShaarliTemplates.Template template = compiled.get( key );
+
+            assertEquals( "Selection must be the same for " + key ,
+                          doc.select( template.cssPath ) ,
+                          template.select( doc ) );
+        }
+
+        assertEquals( "2 links should be found" ,
+                      2 ,
+                      compiled.get( Key.LINKS ).select( doc ).size() );
+    }
+
+    /**
+     * Test compiled templates use overrides.
+     */
+    @Test
+    public void testCompile()
+    {
+        final ShaarliTemplates templates = new ShaarliTemplates();
+        templates.add( "links-count" ,
+                       "#count" ,
+                       "" ,
+                       "\\d+" );
+
+        final ShaarliTemplates.Template template = templates.compile().get( Key.LINKS_COUNT );
+
+        assertEquals( "Template should be overriden" ,
+                      "#count" ,
+                      template.cssPath );
+        assertNotNull( "Regex should be compiled" ,
+                       template.pattern );
+        assertNull( "Date formats have no regex" ,
+                    templates.compile().get( Key.ID_DATEFORMAT ).pattern );
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 Fabien Vauchelles (fabien_AT_vauchelles_DOT_com).
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3, 29 June 2007, of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+package com.vaushell.shaarlijavaapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import static org.testng.AssertJUnit.*;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test.
+ *
+ * @see ShaarliTraffic
+ * @author Fabien Vauchelles (fabien_AT_vauchelles_DOT_com)
+ */
+public class ShaarliTrafficTest
+{
+    // PUBLIC
+    public ShaarliTrafficTest()
+    {
+        // Nothing
+    }
+
+    /**
+     * Test wire and decoded bytes are counted around the decompression.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompressedResponse()
+        throws Exception
+    {
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0 ; i < 1000 ; i++ )
+        {
+            sb.append( "<li><span class=\"linktitle\">Link " ).append( i ).append( "</span></li>\n" );
+        }
+        final byte[] raw = sb.toString().getBytes( "UTF-8" );
+        final byte[] compressed = gzip( raw );
+
+        final HttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1 ,
+                                                             200 ,
+                                                             "OK" );
+        final ByteArrayEntity entity = new ByteArrayEntity( compressed );
+        entity.setContentEncoding( "gzip" );
+        response.setEntity( entity );
+
+        final ShaarliTraffic traffic = new ShaarliTraffic();
+        process( response ,
+                 traffic );
+
+        assertEquals( "Body should be decompressed" ,
+                      sb.toString() ,
+                      EntityUtils.toString( response.getEntity() ,
+                                            "UTF-8" ) );
+        assertEquals( "Wire bytes should be the compressed size" ,
+                      compressed.length ,
+                      traffic.getWireBytes() );
+        assertEquals( "Decoded bytes should be the raw size" ,
+                      raw.length ,
+                      traffic.getDecodedBytes() );
+        assertTrue( "Compression should reduce the transfer" ,
+                    traffic.getWireBytes() * 5L < traffic.getDecodedBytes() );
+
+        traffic.reset();
+
+        assertEquals( "Counters should be reset" ,
+                      0L ,
+                      traffic.getWireBytes() + traffic.getDecodedBytes() );
+    }
+
+    // PRIVATE
+    private static void process( final HttpResponse response ,
+                                 final ShaarliTraffic traffic )
+        throws HttpException , IOException
+    {
+        // Same order as the client's interceptors
+        final HttpContext context = new BasicHttpContext();
+        traffic.wireCounter().process( response ,
+                                       context );
+        new ResponseContentEncoding().process( response ,
+                                               context );
+        traffic.decodedCounter().process( response ,
+                                          context );
+    }
+
+    private static byte[] gzip( final byte[] raw )
+        throws IOException
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try( final GZIPOutputStream gos = new GZIPOutputStream( bos ) )
+        {
+            gos.write( raw );
+        }
+
+        return bos.toByteArray();
+    }
+}